@@ -15,35 +15,58 @@
  */
 package org.springframework.samples.petclinic.api;
 
+import io.github.resilience4j.bulkhead.BulkheadFullException;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.timelimiter.TimeLimiterConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
 import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
 import org.springframework.cloud.client.circuitbreaker.Customizer;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
 import org.springframework.context.annotation.Bean;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
-import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.api.boundary.web.IndexPage;
+import org.springframework.samples.petclinic.api.system.CoalescingProperties;
+import org.springframework.samples.petclinic.api.system.ConcurrencyLimitProperties;
+import org.springframework.samples.petclinic.api.system.DeadlineProperties;
+import org.springframework.samples.petclinic.api.system.DownstreamServicesProperties;
+import org.springframework.samples.petclinic.api.system.ETagProperties;
+import org.springframework.samples.petclinic.api.system.GatewayLoadBalancerConfiguration;
+import org.springframework.samples.petclinic.api.system.EventLoopMonitorProperties;
+import org.springframework.samples.petclinic.api.system.HedgingProperties;
+import org.springframework.samples.petclinic.api.system.LatencySloProperties;
+import org.springframework.samples.petclinic.api.system.OutlierDetectionProperties;
+import org.springframework.samples.petclinic.api.system.OwnerDetailsCacheProperties;
+import org.springframework.samples.petclinic.api.system.PeerCacheProperties;
+import org.springframework.samples.petclinic.api.system.RateLimiterProperties;
+import org.springframework.samples.petclinic.api.system.RetryBudgetProperties;
+import org.springframework.samples.petclinic.api.system.ServerTimingProperties;
+import org.springframework.samples.petclinic.api.system.StaleVisitsProperties;
+import org.springframework.samples.petclinic.api.system.UnixSocketProperties;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.server.RequestPredicates;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerResponse;
-
-import java.time.Duration;
-
+import org.springframework.web.reactive.resource.ResourceUrlProvider;
 
 /**
  * @author Maciej Szarlinski
  */
 @EnableDiscoveryClient
 @SpringBootApplication
+@EnableConfigurationProperties({OwnerDetailsCacheProperties.class, CoalescingProperties.class, DownstreamServicesProperties.class,
+    HedgingProperties.class, ETagProperties.class, ConcurrencyLimitProperties.class, LatencySloProperties.class,
+    RateLimiterProperties.class, StaleVisitsProperties.class, OutlierDetectionProperties.class,
+    RetryBudgetProperties.class, DeadlineProperties.class, ServerTimingProperties.class,
+    UnixSocketProperties.class, EventLoopMonitorProperties.class, PeerCacheProperties.class})
+@LoadBalancerClients(defaultConfiguration = GatewayLoadBalancerConfiguration.class)
 public class ApiGatewayApplication {
 
     public static void main(String[] args) {
@@ -70,21 +93,22 @@ public class ApiGatewayApplication {
      * @see <a href="https://github.com/spring-projects/spring-boot/issues/9785">#9785</a>
      */
     @Bean
-    RouterFunction<?> routerFunction() {
-        RouterFunction router = RouterFunctions.resources("/**", new ClassPathResource("static/"))
-            .andRoute(RequestPredicates.GET("/"),
-                request -> ServerResponse.ok().contentType(MediaType.TEXT_HTML).bodyValue(indexHtml));
-        return router;
+    RouterFunction<ServerResponse> routerFunction(ResourceUrlProvider resourceUrlProvider) {
+        IndexPage indexPage = new IndexPage(indexHtml, resourceUrlProvider);
+        return RouterFunctions.route(RequestPredicates.GET("/"), indexPage::render);
     }
 
     /**
-     * Default Resilience4j circuit breaker configuration
+     * Default Resilience4j circuit breaker configuration. A full bulkhead is not a failure of the
+     * service, it only goes to the fallback. The time limit is the deadline sent to the services.
      */
     @Bean
-    public Customizer<ReactiveResilience4JCircuitBreakerFactory> defaultCustomizer() {
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> defaultCustomizer(DeadlineProperties deadlineProperties) {
         return factory -> factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
-            .circuitBreakerConfig(CircuitBreakerConfig.ofDefaults())
-            .timeLimiterConfig(TimeLimiterConfig.custom().timeoutDuration(Duration.ofSeconds(10)).build())
+            .circuitBreakerConfig(CircuitBreakerConfig.custom()
+                .ignoreExceptions(BulkheadFullException.class)
+                .build())
+            .timeLimiterConfig(TimeLimiterConfig.custom().timeoutDuration(deadlineProperties.timeout()).build())
             .build());
     }
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.api.system.ConcurrencyLimitProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive concurrency limits of the gateway routes and of the downstream service clients.
+ * <p>
+ * Each limit follows the observed round trip time with a gradient algorithm: while the latency of
+ * recent requests stays close to the long-term latency the limit grows, when requests start to queue
+ * up downstream and the latency rises the limit shrinks in proportion. Failed and timed out requests
+ * back the limit off. Requests above the limit are rejected right away instead of waiting in a
+ * connection pool queue until they time out.
+ * <p>
+ * The limit, the requests in flight and the rejections are published as the
+ * {@code gateway.concurrency.limit}, {@code gateway.concurrency.inflight} and
+ * {@code gateway.concurrency.rejected} meters, tagged with the scope and name of the limit.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    public static final String ROUTE = "route";
+
+    public static final String CLIENT = "client";
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrencyLimitProperties properties;
+
+    public ConcurrencyLimiter(MeterRegistry meterRegistry, ConcurrencyLimitProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+    }
+
+    /**
+     * @param scope {@link #ROUTE} or {@link #CLIENT}
+     * @param name  route id or downstream service name
+     * @return a permit that must be released once the request completed, or nothing when the limit
+     * is reached
+     */
+    public Optional<Permit> tryAcquire(String scope, String name) {
+        Limit limit = limits.computeIfAbsent(scope + " " + name, key -> new Limit(scope, name));
+        if (!limit.tryAcquire()) {
+            limit.rejected.increment();
+            return Optional.empty();
+        }
+        return Optional.of(new Permit(limit));
+    }
+
+    /**
+     * Limits the calls of a {@link org.springframework.web.reactive.function.client.WebClient} to a
+     * downstream service. The round trip is measured until the response headers arrived, so a long
+     * streamed body does not hold on to its permit.
+     */
+    public ExchangeFilterFunction exchangeFilter(String service) {
+        return (request, next) -> Mono.defer(() -> {
+            Optional<Permit> acquired = tryAcquire(CLIENT, service);
+            if (acquired.isEmpty()) {
+                return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Concurrency limit of " + service + " reached"));
+            }
+            Permit permit = acquired.get();
+            return next.exchange(request)
+                .doOnNext(response -> {
+                    if (response.statusCode().is5xxServerError()) {
+                        permit.dropped();
+                    } else {
+                        permit.success();
+                    }
+                })
+                .doOnError(throwable -> permit.dropped())
+                .doFinally(signal -> permit.ignore());
+        });
+    }
+
+    /**
+     * A request admitted by a limit. Only the first of {@link #success()}, {@link #dropped()} and
+     * {@link #ignore()} has an effect.
+     */
+    public static final class Permit {
+
+        private final Limit limit;
+
+        private final long start = System.nanoTime();
+
+        private final int inFlight;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Limit limit) {
+            this.limit = limit;
+            this.inFlight = limit.inFlight.get();
+        }
+
+        /**
+         * The request completed, its round trip time is a valid sample.
+         */
+        public void success() {
+            if (released.compareAndSet(false, true)) {
+                limit.inFlight.decrementAndGet();
+                limit.gradient.update(System.nanoTime() - start, inFlight);
+            }
+        }
+
+        /**
+         * The request failed or timed out, which backs the limit off.
+         */
+        public void dropped() {
+            if (released.compareAndSet(false, true)) {
+                limit.inFlight.decrementAndGet();
+                limit.gradient.backOff();
+            }
+        }
+
+        /**
+         * The request was cancelled, it says nothing about the downstream latency.
+         */
+        public void ignore() {
+            if (released.compareAndSet(false, true)) {
+                limit.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private final class Limit {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final GradientLimit gradient = new GradientLimit(properties);
+
+        private final Counter rejected;
+
+        private Limit(String scope, String name) {
+            Gauge.builder("gateway.concurrency.limit", gradient, GradientLimit::limit)
+                .description("Current adaptive concurrency limit")
+                .tags("scope", scope, "name", name)
+                .register(meterRegistry);
+            Gauge.builder("gateway.concurrency.inflight", inFlight, AtomicInteger::get)
+                .description("Requests currently admitted by the concurrency limit")
+                .tags("scope", scope, "name", name)
+                .register(meterRegistry);
+            this.rejected = Counter.builder("gateway.concurrency.rejected")
+                .description("Requests rejected because the concurrency limit was reached")
+                .tags("scope", scope, "name", name)
+                .register(meterRegistry);
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (properties.enabled() && current >= gradient.limit()) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gradient of the long-term round trip time, an exponential moving average over about
+     * {@value #LONG_RTT_WINDOW} samples, to the latest round trip time. A gradient below one means
+     * that requests queue up downstream.
+     * <p>
+     * The new limit is {@code limit * gradient + sqrt(limit)}: the square root is the queue allowed to
+     * build up, which lets the limit grow while the latency is stable.
+     */
+    static final class GradientLimit {
+
+        private static final int LONG_RTT_WINDOW = 100;
+
+        private final int minLimit;
+
+        private final int maxLimit;
+
+        private final double tolerance;
+
+        private final double smoothing;
+
+        private final double backoffRatio;
+
+        private double estimatedLimit;
+
+        private double longRttNanos;
+
+        private volatile int limit;
+
+        GradientLimit(ConcurrencyLimitProperties properties) {
+            this.minLimit = Math.max(1, properties.minLimit());
+            this.maxLimit = Math.max(minLimit, properties.maxLimit());
+            this.tolerance = properties.tolerance();
+            this.smoothing = properties.smoothing();
+            this.backoffRatio = properties.backoffRatio();
+            this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, properties.initialLimit()));
+            this.limit = (int) estimatedLimit;
+        }
+
+        int limit() {
+            return limit;
+        }
+
+        /**
+         * @param rttNanos round trip time of a successful request
+         * @param inFlight requests in flight when it was sent
+         */
+        synchronized void update(long rttNanos, int inFlight) {
+            if (rttNanos <= 0) {
+                return;
+            }
+            if (longRttNanos == 0) {
+                longRttNanos = rttNanos;
+            } else {
+                longRttNanos += (rttNanos - longRttNanos) / LONG_RTT_WINDOW;
+            }
+            // after a period of high latency the average lags behind, pull it down so that it does
+            // not hide the next overload
+            if (longRttNanos > 2 * rttNanos) {
+                longRttNanos *= 0.95;
+            }
+            // far below the limit the latency says nothing about a higher concurrency
+            if (inFlight < estimatedLimit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            setEstimatedLimit(estimatedLimit * (1 - smoothing) + newLimit * smoothing);
+        }
+
+        synchronized void backOff() {
+            setEstimatedLimit(estimatedLimit * backoffRatio);
+        }
+
+        private void setEstimatedLimit(double value) {
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, value));
+            limit = (int) estimatedLimit;
+        }
+    }
+}
@@ -15,9 +15,13 @@
  */
 package org.springframework.samples.petclinic.api.application;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -26,16 +30,34 @@ import reactor.core.publisher.Mono;
 @Component
 public class CustomersServiceClient {
 
-    private final WebClient.Builder webClientBuilder;
+    private final WebClient webClient;
 
-    public CustomersServiceClient(WebClient.Builder webClientBuilder) {
-        this.webClientBuilder = webClientBuilder;
+    private final RequestHedger requestHedger;
+
+    private final RetryBudget retryBudget;
+
+    public CustomersServiceClient(@Qualifier("customersServiceWebClient") WebClient webClient, RequestHedger requestHedger,
+              RetryBudget retryBudget) {
+        this.webClient = webClient;
+        this.requestHedger = requestHedger;
+        this.retryBudget = retryBudget;
     }
 
     public Mono<OwnerDetails> getOwner(final int ownerId) {
-        return webClientBuilder.build().get()
+        return retryBudget.retry("customers-service", requestHedger.hedge("customers-service.getOwner", () -> webClient.get()
             .uri("http://customers-service/owners/{ownerId}", ownerId)
             .retrieve()
-            .bodyToMono(OwnerDetails.class);
+            .bodyToMono(OwnerDetails.class)));
+    }
+
+    /**
+     * Raw NDJSON stream of all owners, relayed buffer by buffer without being decoded.
+     */
+    public Flux<DataBuffer> streamOwners() {
+        return webClient.get()
+            .uri("http://customers-service/owners/stream")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .retrieve()
+            .bodyToFlux(DataBuffer.class);
     }
 }
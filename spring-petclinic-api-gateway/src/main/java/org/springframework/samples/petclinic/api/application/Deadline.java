@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Point in time after which nobody waits for the response of a request anymore, sent to the services
+ * in the {@value #HEADER} header as epoch milliseconds so that they stop working on abandoned
+ * requests. The deadline of the current request is available in the Reactor context under
+ * {@link #KEY}.
+ * <p>
+ * An absolute time also accounts for the time the request waits in the queues of the service, at the
+ * cost of relying on synchronized clocks.
+ */
+public record Deadline(long epochMillis) {
+
+    public static final String HEADER = "X-Request-Deadline";
+
+    public static final String KEY = Deadline.class.getName();
+
+    /**
+     * Sends the deadline of the current request with the calls of a
+     * {@link org.springframework.web.reactive.function.client.WebClient}.
+     */
+    public static ExchangeFilterFunction exchangeFilter() {
+        return (request, next) -> Mono.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(KEY, null);
+            if (deadline == null) {
+                return next.exchange(request);
+            }
+            return next.exchange(ClientRequest.from(request)
+                .headers(headers -> headers.set(HEADER, String.valueOf(deadline.epochMillis())))
+                .build());
+        });
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * Time a request spent waiting on downstream services.
+ * <p>
+ * Overlapping calls, such as a hedged call and its duplicate, count once: the timer measures how
+ * long at least one call was in flight. The timer of the current request is available in the Reactor
+ * context under {@link #KEY}.
+ */
+public final class DownstreamTimer {
+
+    public static final String KEY = DownstreamTimer.class.getName();
+
+    private int inFlight;
+
+    private long busySince;
+
+    private long busyNanos;
+
+    public synchronized void start() {
+        if (inFlight++ == 0) {
+            busySince = System.nanoTime();
+        }
+    }
+
+    public synchronized void stop() {
+        if (inFlight > 0 && --inFlight == 0) {
+            busyNanos += System.nanoTime() - busySince;
+        }
+    }
+
+    public synchronized long elapsedNanos() {
+        return inFlight > 0 ? busyNanos + System.nanoTime() - busySince : busyNanos;
+    }
+
+    /**
+     * Times the calls of a {@link org.springframework.web.reactive.function.client.WebClient} made
+     * on behalf of a request, until the response headers arrived.
+     */
+    public static ExchangeFilterFunction exchangeFilter() {
+        return (request, next) -> Mono.deferContextual(context -> {
+            DownstreamTimer timer = current(context);
+            if (timer == null) {
+                return next.exchange(request);
+            }
+            timer.start();
+            return next.exchange(request).doFinally(signal -> timer.stop());
+        });
+    }
+
+    private static DownstreamTimer current(ContextView context) {
+        return context.getOrDefault(KEY, null);
+    }
+}
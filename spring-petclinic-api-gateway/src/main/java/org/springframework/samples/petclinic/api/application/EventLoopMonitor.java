@@ -0,0 +1,299 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.samples.petclinic.api.system.EventLoopMonitorProperties;
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.LoopResources;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Samples the Netty event loops of the gateway, shared by its server and its clients, to find the
+ * blocking calls made on them. Off by default: the tests catch those calls with BlockHound instead,
+ * see the {@code blockhound} Maven profile, while this is cheap enough to run in production.
+ * <p>
+ * Every {@code sampleInterval}, each event loop is sent a probe task and its thread is inspected. A
+ * thread that is blocked, waiting or sleeping outside the wait of the event loop for its next task or
+ * I/O event, or reading a file or resolving a host name, is blocked by the task it runs: the sample is counted by the {@code gateway.eventloop.blocked} counter, tagged
+ * with the blocking operation, and logged with the stack trace of the thread at most once per
+ * {@code logInterval} for each call site.
+ * <p>
+ * Each event loop also gets two gauges: {@code gateway.eventloop.pending.tasks}, its task queue, and
+ * {@code gateway.eventloop.latency}, the time its last probe waited before it ran, or the time the
+ * current one has been waiting when it is longer.
+ */
+@Component
+public class EventLoopMonitor implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLoopMonitor.class);
+
+    private static final String APPLICATION_PACKAGE = "org.springframework.samples.petclinic.";
+
+    // native methods reading files or sockets, or resolving host names, in the calling thread
+    private static final List<String> BLOCKING_NATIVE_CLASSES = List.of(
+        "java.io.", "java.net.", "sun.nio.ch.FileDispatcherImpl", "sun.nio.ch.UnixFileDispatcherImpl", "sun.nio.fs.");
+
+    private static final List<String> JDK_PACKAGES = List.of("java.", "jdk.", "sun.");
+
+    // Netty methods an idle event loop waits in for its next task or I/O event, through JDK frames
+    private static final List<String> IDLE_METHODS = List.of(
+        "io.netty.util.concurrent.SingleThreadEventExecutor.takeTask",
+        "io.netty.channel.nio.SelectedSelectionKeySetSelector.select",
+        "io.netty.channel.nio.NioEventLoop.select",
+        "io.netty.channel.epoll.Native.epollWait",
+        "io.netty.channel.epoll.EpollEventLoop.epollWait",
+        "io.netty.channel.kqueue.KQueueEventLoop.kqueueWait");
+
+    private final MeterRegistry meterRegistry;
+
+    private final EventLoopMonitorProperties properties;
+
+    private final Supplier<EventLoopGroup> eventLoopGroup;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Long> lastLogged = new HashMap<>();
+
+    private final List<MonitoredLoop> loops = new ArrayList<>();
+
+    private ScheduledExecutorService sampler;
+
+    @Autowired
+    public EventLoopMonitor(MeterRegistry meterRegistry, EventLoopMonitorProperties properties,
+                            ReactorResourceFactory resourceFactory) {
+        this(meterRegistry, properties, () -> resourceFactory.getLoopResources().onServer(LoopResources.DEFAULT_NATIVE));
+    }
+
+    EventLoopMonitor(MeterRegistry meterRegistry, EventLoopMonitorProperties properties,
+                     Supplier<EventLoopGroup> eventLoopGroup) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!properties.enabled() || sampler != null) {
+            return;
+        }
+        int index = 0;
+        for (EventExecutor executor : eventLoopGroup.get()) {
+            loops.add(new MonitoredLoop(String.valueOf(index++), executor));
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "event-loop-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = properties.sampleInterval().toNanos();
+        sampler.scheduleAtFixedRate(this::sample, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        log.info("Sampling {} event loops every {}", loops.size(), properties.sampleInterval());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return sampler != null;
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            for (MonitoredLoop loop : loops) {
+                loop.inspect(now);
+                loop.probe(now);
+            }
+        } catch (RuntimeException e) {
+            // an exception would cancel the sampling
+            log.warn("Cannot sample the event loops", e);
+        }
+    }
+
+    /**
+     * @return whether a thread in this state, with this stack, is blocked by the code it runs rather
+     * than waiting for its next task or I/O event
+     */
+    static boolean isBlocking(Thread.State state, StackTraceElement[] stack) {
+        if (stack.length == 0) {
+            return false;
+        }
+        return switch (state) {
+            case BLOCKED, WAITING, TIMED_WAITING -> !isIdle(stack);
+            case RUNNABLE -> stack[0].isNativeMethod()
+                && BLOCKING_NATIVE_CLASSES.stream().anyMatch(stack[0].getClassName()::startsWith);
+            default -> false;
+        };
+    }
+
+    /**
+     * @return whether the first frame below the JDK is one of the {@link #IDLE_METHODS}; a thread
+     * waiting in JDK code only, e.g. a bare {@code LockSupport.park}, is not idle
+     */
+    private static boolean isIdle(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            if (JDK_PACKAGES.stream().noneMatch(frame.getClassName()::startsWith)) {
+                return IDLE_METHODS.contains(frame.getClassName() + "." + frame.getMethodName());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the first frame of the gateway code in the stack, the top one when there is none
+     */
+    static StackTraceElement callSite(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().startsWith(APPLICATION_PACKAGE)) {
+                return frame;
+            }
+        }
+        return stack[0];
+    }
+
+    private final class MonitoredLoop {
+
+        private final String name;
+
+        private final EventExecutor executor;
+
+        private final Map<String, Counter> blocked = new HashMap<>();
+
+        // known once the first probe ran
+        private volatile Thread thread;
+
+        private volatile boolean probing;
+
+        private volatile long probeSubmitted;
+
+        private volatile long latencyNanos;
+
+        private MonitoredLoop(String name, EventExecutor executor) {
+            this.name = name;
+            this.executor = executor;
+            if (executor instanceof SingleThreadEventExecutor singleThreadExecutor) {
+                Gauge.builder("gateway.eventloop.pending.tasks", singleThreadExecutor, SingleThreadEventExecutor::pendingTasks)
+                    .description("Tasks waiting in the queue of the event loop")
+                    .tag("loop", name)
+                    .register(meterRegistry);
+            }
+            TimeGauge.builder("gateway.eventloop.latency", this, TimeUnit.NANOSECONDS, MonitoredLoop::latency)
+                .description("Time a task waits before the event loop runs it")
+                .tag("loop", name)
+                .register(meterRegistry);
+        }
+
+        private void probe(long now) {
+            if (probing) {
+                return;
+            }
+            probing = true;
+            probeSubmitted = now;
+            try {
+                executor.execute(this::probed);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                probing = false;
+            }
+        }
+
+        private void probed() {
+            thread = Thread.currentThread();
+            latencyNanos = System.nanoTime() - probeSubmitted;
+            probing = false;
+        }
+
+        private double latency() {
+            long latency = latencyNanos;
+            return probing ? Math.max(latency, System.nanoTime() - probeSubmitted) : latency;
+        }
+
+        private void inspect(long now) {
+            Thread current = thread;
+            if (current == null) {
+                return;
+            }
+            // state and stack of the same instant, unlike the ones of the Thread
+            ThreadInfo info = threads.getThreadInfo(current.getId(), Integer.MAX_VALUE);
+            if (info == null) {
+                return;
+            }
+            Thread.State state = info.getThreadState();
+            StackTraceElement[] stack = info.getStackTrace();
+            if (!isBlocking(state, stack)) {
+                return;
+            }
+            // BlockHound renames the native methods it wraps, when the tests run with it
+            String operation = stack[0].getClassName() + "." + stack[0].getMethodName().replace("$$BlockHound$$_", "");
+            blocked.computeIfAbsent(operation, key -> Counter.builder("gateway.eventloop.blocked")
+                    .description("Samples finding the event loop blocked by the task it runs")
+                    .tag("loop", name)
+                    .tag("operation", key)
+                    .register(meterRegistry))
+                .increment();
+
+            StackTraceElement callSite = callSite(stack);
+            String key = operation + " " + callSite;
+            Long logged = lastLogged.get(key);
+            if (logged == null || now - logged >= properties.logInterval().toNanos()) {
+                lastLogged.put(key, now);
+                log.warn("Event loop {} is blocked in {} called by {}, {}",
+                    current.getName(), operation, callSite, state, new BlockingCall(stack));
+            }
+        }
+    }
+
+    /**
+     * Carries the stack trace of a blocked event loop thread to the log.
+     */
+    private static final class BlockingCall extends RuntimeException {
+
+        private BlockingCall(StackTraceElement[] stack) {
+            super("Blocking call on an event loop", null, false, true);
+            setStackTrace(stack);
+        }
+    }
+}
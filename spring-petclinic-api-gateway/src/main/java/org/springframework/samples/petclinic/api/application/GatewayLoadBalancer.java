@@ -0,0 +1,61 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats;
+import org.springframework.samples.petclinic.commons.loadbalancer.PeakEwmaLoadBalancer;
+import reactor.util.context.ContextView;
+
+import java.util.List;
+
+/**
+ * The {@link PeakEwmaLoadBalancer} of the gateway. Instances ejected by the {@link OutlierDetector}
+ * are not candidates, and neither are the {@link TriedInstances} of a hedged call while others remain.
+ * The picked instance is registered with the {@link UnixSockets}.
+ */
+public class GatewayLoadBalancer extends PeakEwmaLoadBalancer {
+
+    private final OutlierDetector outlierDetector;
+
+    private final UnixSockets unixSockets;
+
+    public GatewayLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+                               String serviceId, LoadBalancerStats stats, OutlierDetector outlierDetector,
+                               UnixSockets unixSockets) {
+        super(serviceInstanceListSupplierProvider, serviceId, stats);
+        this.outlierDetector = outlierDetector;
+        this.unixSockets = unixSockets;
+    }
+
+    @Override
+    protected List<ServiceInstance> candidates(List<ServiceInstance> instances, ContextView context) {
+        List<ServiceInstance> eligible = outlierDetector.eligible(getServiceId(), instances);
+        TriedInstances tried = context.getOrDefault(TriedInstances.KEY, null);
+        return tried != null ? tried.untried(eligible) : eligible;
+    }
+
+    @Override
+    protected void chosen(ServiceInstance instance, ContextView context) {
+        TriedInstances tried = context.getOrDefault(TriedInstances.KEY, null);
+        if (tried != null) {
+            tried.add(instance);
+        }
+        unixSockets.register(instance);
+    }
+}
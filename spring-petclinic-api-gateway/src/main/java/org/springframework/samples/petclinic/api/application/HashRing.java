@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of keys over a set of nodes, ketama style: each node is placed at several points
+ * of a 32-bit ring, and a key belongs to the first node found clockwise from its own hash.
+ * <p>
+ * Adding or removing a node only moves the keys of the ring segments it takes or gives back, about
+ * one key out of the number of nodes, and all the nodes agree on the owner of a key as long as they
+ * see the same nodes.
+ */
+final class HashRing {
+
+    private final int[] points;
+
+    private final String[] nodes;
+
+    /**
+     * @param nodes         distinct node names
+     * @param virtualNodes  points per node, the more the more even the spread of the keys
+     */
+    HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        // ties between points are broken by node name, so that every node builds the same ring
+        TreeMap<Integer, String> ring = new TreeMap<>();
+        for (String node : nodes) {
+            // one MD5 digest gives four points
+            for (int i = 0; i < (virtualNodes + 3) / 4; i++) {
+                byte[] digest = md5(node + "-" + i);
+                for (int j = 0; j < 4; j++) {
+                    ring.merge(point(digest, j), node, (current, other) -> current.compareTo(other) <= 0 ? current : other);
+                }
+            }
+        }
+        this.points = new int[ring.size()];
+        this.nodes = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            this.nodes[i++] = point.getValue();
+        }
+    }
+
+    String node(String key) {
+        int index = Arrays.binarySearch(points, point(md5(key), 0));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return nodes[index == points.length ? 0 : index];
+    }
+
+    private static int point(byte[] digest, int index) {
+        return (digest[3 + index * 4] & 0xFF) << 24
+            | (digest[2 + index * 4] & 0xFF) << 16
+            | (digest[1 + index * 4] & 0xFF) << 8
+            | digest[index * 4] & 0xFF;
+    }
+
+    private static byte[] md5(String value) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not available", ex);
+        }
+    }
+}
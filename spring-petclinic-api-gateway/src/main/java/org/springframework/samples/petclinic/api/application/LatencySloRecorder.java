@@ -0,0 +1,232 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.actuate.metrics.http.Outcome;
+import org.springframework.samples.petclinic.api.system.LatencySloProperties;
+import org.springframework.samples.petclinic.api.system.LatencySloProperties.Objective;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Latency and error budget metrics of the gateway routes and endpoints.
+ * <p>
+ * Each route or endpoint publishes three timers with percentile histograms and the configured SLO
+ * buckets, so that Prometheus can compute route-level percentiles:
+ * <ul>
+ *     <li>{@code gateway.requests}: whole request, tagged with its outcome, {@value #CANCELLED} when the
+ *     client went away before the response completed</li>
+ *     <li>{@code gateway.requests.downstream}: time spent waiting on downstream services</li>
+ *     <li>{@code gateway.requests.overhead}: the rest, time spent inside the gateway</li>
+ * </ul>
+ * The {@code gateway.slo.burn.rate} gauge tells, for each configured window, how fast the error
+ * budget is consumed: 1 means that it lasts exactly as long as the SLO period, 14.4 over an hour is
+ * the usual paging threshold of a 30 days period.
+ */
+@Component
+public class LatencySloRecorder {
+
+    public static final String ROUTE = "route";
+
+    public static final String ENDPOINT = "endpoint";
+
+    public static final String CANCELLED = "CANCELLED";
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final LatencySloProperties properties;
+
+    public LatencySloRecorder(MeterRegistry meterRegistry, LatencySloProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+    }
+
+    /**
+     * @param scope           {@link #ROUTE} or {@link #ENDPOINT}
+     * @param name            route id or endpoint method name
+     * @param status          HTTP status of the response
+     * @param totalNanos      duration of the whole request
+     * @param downstreamNanos part of it spent waiting on downstream services
+     */
+    public void record(String scope, String name, int status, long totalNanos, long downstreamNanos) {
+        Outcome outcome = Outcome.forStatus(status);
+        record(scope, name, outcome.name(), outcome == Outcome.SERVER_ERROR, totalNanos, downstreamNanos);
+    }
+
+    /**
+     * Records a request cancelled by its client. It only spends the error budget when the client had
+     * already waited longer than the objective.
+     *
+     * @see #record(String, String, int, long, long)
+     */
+    public void recordCancelled(String scope, String name, long totalNanos, long downstreamNanos) {
+        record(scope, name, CANCELLED, false, totalNanos, downstreamNanos);
+    }
+
+    private void record(String scope, String name, String outcome, boolean failed, long totalNanos, long downstreamNanos) {
+        Series target = series.computeIfAbsent(scope + " " + name, key -> new Series(scope, name));
+        target.total(outcome).record(totalNanos, TimeUnit.NANOSECONDS);
+        target.downstream.record(Math.min(downstreamNanos, totalNanos), TimeUnit.NANOSECONDS);
+        target.overhead.record(Math.max(0, totalNanos - downstreamNanos), TimeUnit.NANOSECONDS);
+        boolean good = !failed && totalNanos <= target.objective.latency().toNanos();
+        long now = System.nanoTime();
+        for (SlidingWindow window : target.windows) {
+            window.record(now, good);
+        }
+    }
+
+    private final class Series {
+
+        private final String scope;
+
+        private final String name;
+
+        private final Objective objective;
+
+        private final Duration[] buckets;
+
+        private final Map<String, Timer> totals = new ConcurrentHashMap<>();
+
+        private final Timer downstream;
+
+        private final Timer overhead;
+
+        private final List<SlidingWindow> windows = new ArrayList<>();
+
+        private Series(String scope, String name) {
+            this.scope = scope;
+            this.name = name;
+            this.objective = properties.objective(name);
+            this.buckets = Stream.concat(properties.buckets().stream(), Stream.of(objective.latency()))
+                .distinct()
+                .sorted()
+                .toArray(Duration[]::new);
+            this.downstream = timer("gateway.requests.downstream", "Time requests spent waiting on downstream services")
+                .register(meterRegistry);
+            this.overhead = timer("gateway.requests.overhead", "Time requests spent inside the gateway")
+                .register(meterRegistry);
+            double errorBudget = 1 - objective.target();
+            for (Duration length : properties.burnRateWindows()) {
+                SlidingWindow window = new SlidingWindow(length);
+                windows.add(window);
+                Gauge.builder("gateway.slo.burn.rate", window, it -> it.badRatio(System.nanoTime()) / errorBudget)
+                    .description("Rate at which the latency error budget is consumed, 1 spends it over the SLO period")
+                    .tags("scope", scope, "name", name, "window", format(length))
+                    .register(meterRegistry);
+            }
+        }
+
+        private Timer total(String outcome) {
+            return totals.computeIfAbsent(outcome, it -> timer("gateway.requests", "Duration of gateway requests")
+                .tag("outcome", it)
+                .register(meterRegistry));
+        }
+
+        private Timer.Builder timer(String metric, String description) {
+            return Timer.builder(metric)
+                .description(description)
+                .tags("scope", scope, "name", name)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(buckets);
+        }
+    }
+
+    private static String format(Duration duration) {
+        if (duration.toSeconds() % 3600 == 0) {
+            return duration.toHours() + "h";
+        }
+        if (duration.toSeconds() % 60 == 0) {
+            return duration.toMinutes() + "m";
+        }
+        return duration.toSeconds() + "s";
+    }
+
+    /**
+     * Good and bad request counts over a sliding window, kept in {@value #BUCKETS} buckets that are
+     * recycled as time goes by.
+     */
+    static final class SlidingWindow {
+
+        private static final int BUCKETS = 30;
+
+        private final long bucketNanos;
+
+        private final Bucket[] buckets = new Bucket[BUCKETS];
+
+        SlidingWindow(Duration length) {
+            this.bucketNanos = Math.max(1, length.toNanos() / BUCKETS);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        void record(long nanoTime, boolean good) {
+            long epoch = nanoTime / bucketNanos;
+            Bucket bucket = buckets[(int) Math.floorMod(epoch, (long) BUCKETS)];
+            if (bucket.epoch != epoch) {
+                synchronized (bucket) {
+                    if (bucket.epoch != epoch) {
+                        bucket.total.set(0);
+                        bucket.bad.set(0);
+                        bucket.epoch = epoch;
+                    }
+                }
+            }
+            bucket.total.incrementAndGet();
+            if (!good) {
+                bucket.bad.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return share of bad requests in the window, 0 without any request
+         */
+        double badRatio(long nanoTime) {
+            long epoch = nanoTime / bucketNanos;
+            long total = 0;
+            long bad = 0;
+            for (Bucket bucket : buckets) {
+                if (epoch - bucket.epoch < BUCKETS) {
+                    total += bucket.total.get();
+                    bad += bucket.bad.get();
+                }
+            }
+            return total == 0 ? 0 : (double) bad / total;
+        }
+
+        private static final class Bucket {
+
+            private volatile long epoch = Long.MIN_VALUE;
+
+            private final AtomicLong total = new AtomicLong();
+
+            private final AtomicLong bad = new AtomicLong();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.samples.petclinic.api.system.RateLimiterProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory token bucket {@link org.springframework.cloud.gateway.filter.ratelimit.RateLimiter} for
+ * the {@code RequestRateLimiter} route filter, so that routes can be throttled without Redis. Each
+ * gateway instance enforces the rate on its own.
+ * <pre>
+ * filters:
+ *   - name: RequestRateLimiter
+ *     args:
+ *       local-rate-limiter.replenish-rate: 10
+ *       local-rate-limiter.replenish-period: 1m
+ *       local-rate-limiter.burst-capacity: 5
+ *       key-resolver: "#{&#64;rateLimitKeys.header('X-User-Id')}"
+ * </pre>
+ * The buckets of the clients are kept in a bounded cache that forgets idle clients. A bucket is a
+ * single {@link AtomicLong} updated with compare-and-set, so concurrent requests never block.
+ */
+@Component
+public class LocalRateLimiter extends AbstractRateLimiter<LocalRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "local-rate-limiter";
+
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+
+    public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    public static final String REQUESTED_TOKENS_HEADER = "X-RateLimit-Requested-Tokens";
+
+    static final String CACHE_NAME = "rateLimiterBuckets";
+
+    private final Cache<String, TokenBucket> buckets;
+
+    private final Map<String, Counter> rejectedCounters = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    public LocalRateLimiter(ConfigurationService configurationService, MeterRegistry meterRegistry,
+                            RateLimiterProperties properties) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.meterRegistry = meterRegistry;
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(properties.maxKeys())
+            .expireAfterAccess(properties.idleTimeout())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, CACHE_NAME);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = loadConfiguration(routeId);
+        TokenBucket bucket = buckets.get(routeId + " " + id, key -> new TokenBucket());
+        Decision decision = bucket.tryConsume(System.nanoTime(), config);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(REMAINING_HEADER, String.valueOf(decision.remaining()));
+        headers.put(REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()));
+        headers.put(BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()));
+        headers.put(REQUESTED_TOKENS_HEADER, String.valueOf(config.getRequestedTokens()));
+        if (!decision.allowed()) {
+            rejectedCounter(routeId).increment();
+            long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(decision.retryAfterNanos() + 999_999_999));
+            headers.put(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        return Mono.just(new Response(decision.allowed(), headers));
+    }
+
+    private Config loadConfiguration(String routeId) {
+        Config config = getConfig().get(routeId);
+        if (config == null) {
+            config = getConfig().get(RouteDefinitionRouteLocator.DEFAULT_FILTERS);
+        }
+        return config != null ? config : new Config();
+    }
+
+    private Counter rejectedCounter(String routeId) {
+        return rejectedCounters.computeIfAbsent(routeId, it -> Counter.builder("gateway.ratelimit.rejected")
+            .description("Requests rejected by the in-memory rate limiter")
+            .tag("route", it)
+            .register(meterRegistry));
+    }
+
+    record Decision(boolean allowed, long remaining, long retryAfterNanos) {
+    }
+
+    /**
+     * Token bucket implemented with the generic cell rate algorithm: instead of a token count, the
+     * bucket stores the theoretical time at which it would be full again. Consuming {@code n} tokens
+     * moves that time forward by {@code n} emission intervals, which is allowed as long as it stays
+     * within {@code burstCapacity} intervals of now.
+     */
+    static final class TokenBucket {
+
+        private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+        Decision tryConsume(long now, Config config) {
+            long interval = Math.max(1, config.getReplenishPeriod().toNanos() / config.getReplenishRate());
+            long increment = interval * config.getRequestedTokens();
+            long capacity = interval * config.getBurstCapacity();
+            while (true) {
+                long current = fullAt.get();
+                long base = Math.max(current, now);
+                long next = base + increment;
+                if (next - now > capacity) {
+                    return new Decision(false, (capacity - (base - now)) / interval, next - now - capacity);
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return new Decision(true, (capacity - (next - now)) / interval, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rate limit of a route.
+     */
+    public static class Config {
+
+        private int replenishRate = 1;
+
+        private Duration replenishPeriod = Duration.ofSeconds(1);
+
+        private int burstCapacity = 1;
+
+        private int requestedTokens = 1;
+
+        /**
+         * @return tokens added to the bucket every {@link #getReplenishPeriod() replenish period}
+         */
+        public int getReplenishRate() {
+            return replenishRate;
+        }
+
+        public Config setReplenishRate(int replenishRate) {
+            Assert.isTrue(replenishRate > 0, "replenishRate must be positive");
+            this.replenishRate = replenishRate;
+            return this;
+        }
+
+        public Duration getReplenishPeriod() {
+            return replenishPeriod;
+        }
+
+        public Config setReplenishPeriod(Duration replenishPeriod) {
+            Assert.isTrue(replenishPeriod != null && !replenishPeriod.isNegative() && !replenishPeriod.isZero(),
+                "replenishPeriod must be positive");
+            this.replenishPeriod = replenishPeriod;
+            return this;
+        }
+
+        /**
+         * @return maximum number of tokens in the bucket, 0 blocks every request
+         */
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public Config setBurstCapacity(int burstCapacity) {
+            Assert.isTrue(burstCapacity >= 0, "burstCapacity must not be negative");
+            this.burstCapacity = burstCapacity;
+            return this;
+        }
+
+        /**
+         * @return tokens consumed by one request
+         */
+        public int getRequestedTokens() {
+            return requestedTokens;
+        }
+
+        public Config setRequestedTokens(int requestedTokens) {
+            Assert.isTrue(requestedTokens > 0, "requestedTokens must be positive");
+            this.requestedTokens = requestedTokens;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Config{replenishRate=" + replenishRate + ", replenishPeriod=" + replenishPeriod
+                + ", burstCapacity=" + burstCapacity + ", requestedTokens=" + requestedTokens + "}";
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.samples.petclinic.api.system.OutlierDetectionProperties;
+import org.springframework.samples.petclinic.commons.loadbalancer.CallOutcomeListener;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Passive health checking of the downstream service instances, fed with the outcome of the requests
+ * tracked by {@link LoadBalancerStats}. Eureka only drops an instance once its lease expired, minutes
+ * after it died, and never drops a running instance answering errors.
+ * <p>
+ * An instance failing {@code consecutiveFailures} requests in a row, or {@code failureRateThreshold}
+ * percent of its requests within an interval, is ejected from the candidates of the
+ * {@link GatewayLoadBalancer}. The ejection lasts {@code baseEjectionTime}, doubled each time the
+ * instance is ejected again, up to {@code maxEjectionTime}. At most {@code maxEjectionPercent} of the
+ * instances of a service are ejected at the same time, so that a failure of the whole service does
+ * not leave it without any instance.
+ */
+@Component
+public class OutlierDetector implements CallOutcomeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(OutlierDetector.class);
+
+    private final Cache<String, Outlier> instances = Caffeine.newBuilder()
+        .expireAfterAccess(Duration.ofMinutes(10))
+        .build();
+
+    private final Map<String, Service> services = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final OutlierDetectionProperties properties;
+
+    private final long intervalNanos;
+
+    private final long baseEjectionNanos;
+
+    private final long maxEjectionNanos;
+
+    public OutlierDetector(MeterRegistry meterRegistry, OutlierDetectionProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.intervalNanos = properties.interval().toNanos();
+        this.baseEjectionNanos = properties.baseEjectionTime().toNanos();
+        this.maxEjectionNanos = properties.maxEjectionTime().toNanos();
+    }
+
+    /**
+     * Records the outcome of a request sent to an instance, failed when it ended with a 5xx status
+     * or an error such as a timeout.
+     */
+    @Override
+    public void record(ServiceInstance instance, boolean failed) {
+        record(instance, failed, System.nanoTime());
+    }
+
+    void record(ServiceInstance instance, boolean failed, long now) {
+        if (properties.enabled()) {
+            of(instance).record(failed, now);
+        }
+    }
+
+    /**
+     * @return the candidates that are not ejected, after ejecting the outliers among them
+     */
+    public List<ServiceInstance> eligible(String serviceId, List<ServiceInstance> candidates) {
+        return eligible(serviceId, candidates, System.nanoTime());
+    }
+
+    List<ServiceInstance> eligible(String serviceId, List<ServiceInstance> candidates, long now) {
+        if (!properties.enabled() || candidates.size() * properties.maxEjectionPercent() / 100 == 0) {
+            return candidates;
+        }
+        for (ServiceInstance candidate : candidates) {
+            Outlier outlier = of(candidate);
+            if (outlier.suspect || outlier.ejected) {
+                return services.computeIfAbsent(serviceId, Service::new).eligible(candidates, now);
+            }
+        }
+        return candidates;
+    }
+
+    private Outlier of(ServiceInstance instance) {
+        return instances.get(instance.getHost() + ":" + instance.getPort(), key -> new Outlier());
+    }
+
+    private final class Service {
+
+        private final String serviceId;
+
+        private final Counter ejections;
+
+        private volatile int ejected;
+
+        private Service(String serviceId) {
+            this.serviceId = serviceId;
+            this.ejections = Counter.builder("gateway.loadbalancer.ejections")
+                .description("Instances ejected from load balancing because their requests kept failing")
+                .tag("service", serviceId)
+                .register(meterRegistry);
+            Gauge.builder("gateway.loadbalancer.ejected", this, service -> service.ejected)
+                .description("Instances currently ejected from load balancing")
+                .tag("service", serviceId)
+                .register(meterRegistry);
+        }
+
+        private synchronized List<ServiceInstance> eligible(List<ServiceInstance> candidates, long now) {
+            int maxEjected = candidates.size() * properties.maxEjectionPercent() / 100;
+            int ejectedCount = 0;
+            List<ServiceInstance> eligible = new ArrayList<>(candidates.size());
+            List<ServiceInstance> suspects = new ArrayList<>();
+            for (ServiceInstance candidate : candidates) {
+                Outlier outlier = of(candidate);
+                if (outlier.isEjected(now, candidate)) {
+                    ejectedCount++;
+                } else {
+                    eligible.add(candidate);
+                    if (outlier.suspect) {
+                        suspects.add(candidate);
+                    }
+                }
+            }
+            for (ServiceInstance suspect : suspects) {
+                if (ejectedCount >= maxEjected) {
+                    break;
+                }
+                of(suspect).eject(now, suspect);
+                eligible.remove(suspect);
+                ejections.increment();
+                ejectedCount++;
+            }
+            ejected = ejectedCount;
+            return eligible;
+        }
+    }
+
+    private final class Outlier {
+
+        private volatile boolean suspect;
+
+        private volatile boolean ejected;
+
+        private long ejectedUntil;
+
+        private int ejections;
+
+        private int consecutiveFailures;
+
+        private long windowStart = System.nanoTime();
+
+        private int requests;
+
+        private int failures;
+
+        private synchronized void record(boolean failed, long now) {
+            if (ejected) {
+                // responses of requests sent before the ejection
+                return;
+            }
+            long elapsed = now - windowStart;
+            if (elapsed >= intervalNanos) {
+                if (failures == 0) {
+                    ejections -= (int) Math.min(elapsed / intervalNanos, ejections);
+                }
+                windowStart = now;
+                requests = 0;
+                failures = 0;
+            }
+            requests++;
+            if (failed) {
+                failures++;
+                consecutiveFailures++;
+            } else {
+                consecutiveFailures = 0;
+            }
+            suspect = consecutiveFailures >= properties.consecutiveFailures()
+                || requests >= properties.minimumRequests()
+                && failures * 100L >= (long) properties.failureRateThreshold() * requests;
+        }
+
+        private synchronized void eject(long now, ServiceInstance instance) {
+            ejections++;
+            long duration = baseEjectionNanos;
+            for (int i = 1; i < ejections && duration < maxEjectionNanos; i++) {
+                duration *= 2;
+            }
+            duration = Math.min(duration, maxEjectionNanos);
+            log.warn("Ejecting {} instance {} for {}s: {} consecutive failures, {} of {} requests failed",
+                instance.getServiceId(), instance.getUri(), duration / 1_000_000_000, consecutiveFailures,
+                failures, requests);
+            ejected = true;
+            ejectedUntil = now + duration;
+            suspect = false;
+        }
+
+        private synchronized boolean isEjected(long now, ServiceInstance instance) {
+            if (ejected && now - ejectedUntil >= 0) {
+                log.info("Returning {} instance {} to load balancing", instance.getServiceId(), instance.getUri());
+                ejected = false;
+                consecutiveFailures = 0;
+                windowStart = now;
+                requests = 0;
+                failures = 0;
+            }
+            return ejected;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.system.OwnerDetailsCacheProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of aggregated owner details.
+ * <p>
+ * Entries are invalidated when a write for the owner goes through the gateway. A load that
+ * started before an invalidation is not stored, so a slow read cannot resurrect stale data.
+ * Hit, miss and eviction statistics are published under the {@code cache} meters.
+ * <p>
+ * The owner of every cached pet is indexed, so that the visits of a pet invalidate its owner without
+ * scanning the cache. The index follows each entry as it is stored, replaced, invalidated or evicted.
+ */
+@Component
+public class OwnerDetailsCache implements MeterBinder {
+
+    static final String CACHE_NAME = "ownerDetails";
+
+    private final Cache<Integer, OwnerDetails> cache;
+
+    private final Map<Integer, Integer> petOwners = new ConcurrentHashMap<>();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public OwnerDetailsCache(OwnerDetailsCacheProperties properties) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.maximumSize())
+            .expireAfterWrite(properties.expireAfterWrite())
+            // called within the eviction of the entry, unlike a removal listener
+            .<Integer, OwnerDetails>evictionListener((ownerId, ownerDetails, cause) -> unindex(ownerId, ownerDetails))
+            .recordStats()
+            .build();
+    }
+
+    public Mono<OwnerDetails> get(int ownerId) {
+        return Mono.fromSupplier(() -> cache.getIfPresent(ownerId));
+    }
+
+    /**
+     * @return a token to hand back to {@link #put(int, OwnerDetails, long)} once the load completes
+     */
+    public long startLoad() {
+        return invalidations.get();
+    }
+
+    public void put(int ownerId, OwnerDetails ownerDetails, long loadToken) {
+        if (invalidations.get() != loadToken) {
+            return;
+        }
+        cache.asMap().compute(ownerId, (id, previous) -> {
+            unindex(id, previous);
+            index(id, ownerDetails);
+            return ownerDetails;
+        });
+        if (invalidations.get() != loadToken) {
+            // an invalidation raced with this put
+            remove(ownerId);
+        }
+    }
+
+    public void invalidate(int ownerId) {
+        invalidations.incrementAndGet();
+        remove(ownerId);
+    }
+
+    /**
+     * @return the owners cached with the pet, whose details include its visits
+     */
+    public List<Integer> ownersOfPet(int petId) {
+        Integer ownerId = petOwners.get(petId);
+        return ownerId != null ? List.of(ownerId) : List.of();
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+        petOwners.clear();
+    }
+
+    private void remove(int ownerId) {
+        cache.asMap().computeIfPresent(ownerId, (id, previous) -> {
+            unindex(id, previous);
+            return null;
+        });
+    }
+
+    private void index(int ownerId, OwnerDetails ownerDetails) {
+        if (ownerDetails.pets() != null) {
+            ownerDetails.getPetIds().forEach(petId -> petOwners.put(petId, ownerId));
+        }
+    }
+
+    private void unindex(Integer ownerId, OwnerDetails ownerDetails) {
+        if (ownerDetails != null && ownerDetails.pets() != null) {
+            ownerDetails.getPetIds().forEach(petId -> petOwners.remove(petId, ownerId));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.samples.petclinic.api.system.PeerCacheProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cache of whole responses shared by the gateway replicas, in the manner of groupcache: the capacity
+ * of the cache grows with the number of replicas instead of each replica caching the same responses.
+ * <p>
+ * Every key, the path and query of a request, is owned by one replica, chosen by consistent hashing
+ * over the instances of the gateway registered in Eureka, see {@link HashRing}. The owner caches the
+ * responses of its keys. Another replica asks the owner, marking its request with the
+ * {@value #PEER_HEADER} header so that the owner serves it itself, and only loads the response on its
+ * own when the owner does not answer. Popular keys would overload their owner: a replica keeps a
+ * short-lived copy of a fraction of the responses it fetched, which the hot keys soon get.
+ * <p>
+ * The {@value #PEER_HEADER} header and the invalidations are only honoured from the addresses of the
+ * replicas registered, resolved when the ring is rebuilt, see {@link #isPeer}.
+ * <p>
+ * Only successful JSON responses are cached, except those marked {@code no-store}. A key invalidated
+ * on any replica is invalidated on its owner. The ring is rebuilt whenever the Eureka client fetched
+ * the registry. When the replicas change, only the keys whose owner changed are dropped: a key moving
+ * away is no longer invalidated here, and one moving back may have been invalidated on another owner
+ * meanwhile. The keys this replica kept owning stay cached.
+ * <p>
+ * Requests are counted by {@code gateway.peer.cache.requests}, tagged with their {@code result}:
+ * {@code hit} or {@code miss} on the owner, {@code hot} when served from a copy, {@code peer} when
+ * fetched from the owner and {@code fallback} when the owner did not answer.
+ */
+@Component
+public class PeerCache implements DisposableBean {
+
+    public static final String PEER_HEADER = "X-Peer-Cache";
+
+    public static final String INVALIDATE_PATH = "/internal/peer-cache";
+
+    private static final Logger log = LoggerFactory.getLogger(PeerCache.class);
+
+    // set again by the replica writing the response to its own client
+    private static final Set<String> UNRELAYED_HEADERS = Set.of(HttpHeaders.CONTENT_LENGTH, HttpHeaders.TRANSFER_ENCODING,
+        HttpHeaders.CONNECTION, HttpHeaders.DATE, HttpHeaders.ETAG, ServerTiming.HEADER);
+
+    private final PeerCacheProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final RequestCoalescer requestCoalescer;
+
+    private final Supplier<? extends ServiceInstance> self;
+
+    private final Function<String, List<ServiceInstance>> instances;
+
+    private final Cache<String, CapturedResponse> cache;
+
+    private final Cache<String, CapturedResponse> hotCache;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Map<String, Counter> requestCounters = new ConcurrentHashMap<>();
+
+    private final ConnectionProvider connectionProvider;
+
+    private final WebClient webClient;
+
+    private volatile Membership membership;
+
+    @Autowired
+    public PeerCache(PeerCacheProperties properties, MeterRegistry meterRegistry, RequestCoalescer requestCoalescer,
+                     ObjectProvider<Registration> registration, ObjectProvider<DiscoveryClient> discoveryClient) {
+        this(properties, meterRegistry, requestCoalescer, registration::getIfAvailable, serviceId -> {
+            DiscoveryClient client = discoveryClient.getIfAvailable();
+            return client != null ? client.getInstances(serviceId) : List.of();
+        });
+    }
+
+    PeerCache(PeerCacheProperties properties, MeterRegistry meterRegistry, RequestCoalescer requestCoalescer,
+              Supplier<? extends ServiceInstance> self, Function<String, List<ServiceInstance>> instances) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.requestCoalescer = requestCoalescer;
+        this.self = self;
+        this.instances = instances;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(properties.maximumSize().toBytes())
+            .weigher((String key, CapturedResponse response) -> response.body().length)
+            .expireAfterWrite(properties.expireAfterWrite())
+            .recordStats()
+            .build();
+        this.hotCache = Caffeine.newBuilder()
+            .maximumWeight(properties.hotMaximumSize().toBytes())
+            .weigher((String key, CapturedResponse response) -> response.body().length)
+            .expireAfterWrite(properties.hotExpireAfterWrite())
+            .recordStats()
+            .build();
+        this.connectionProvider = ConnectionProvider.builder("peer-cache")
+            .maxIdleTime(Duration.ofSeconds(15))
+            .metrics(true)
+            .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.timeout().toMillis())
+            .responseTimeout(properties.timeout());
+        this.webClient = WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "peerCache");
+        CaffeineCacheMetrics.monitor(meterRegistry, hotCache, "peerHotCache");
+        Gauge.builder("gateway.peer.cache.replicas", this, it -> it.membership != null ? it.membership.peers().size() : 0)
+            .description("Gateway replicas sharing their cache, this one included")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Rebuilds the ring from the gateway instances registered in Eureka.
+     */
+    @EventListener({ApplicationReadyEvent.class, HeartbeatEvent.class})
+    public void refresh() {
+        if (!properties.enabled()) {
+            return;
+        }
+        ServiceInstance instance = self.get();
+        if (instance == null) {
+            return;
+        }
+        Map<String, URI> peers = new TreeMap<>();
+        for (ServiceInstance peer : instances.apply(properties.serviceId())) {
+            peers.put(node(peer), peer.getUri());
+        }
+        // the registry fetched may not list this replica yet
+        peers.put(node(instance), instance.getUri());
+        Membership current = membership;
+        if (current != null && current.peers().equals(peers)) {
+            return;
+        }
+        Membership next = new Membership(node(instance), peers, addresses(peers.values()),
+            new HashRing(peers.keySet(), properties.virtualNodes()));
+        membership = next;
+        if (current != null) {
+            invalidations.incrementAndGet();
+            cache.asMap().keySet().removeIf(key -> !current.owns(key) || !next.owns(key));
+        }
+        log.info("Sharing the cache with the gateway replicas {}", peers.keySet());
+    }
+
+    /**
+     * @return whether the cache is shared, otherwise requests should go through as usual
+     */
+    public boolean isActive() {
+        return membership != null;
+    }
+
+    /**
+     * @param remoteAddress address a request came from
+     * @return whether it came from a replica sharing the cache, whose {@value #PEER_HEADER} header and
+     * invalidations can be trusted
+     */
+    public boolean isPeer(InetSocketAddress remoteAddress) {
+        Membership current = membership;
+        return current != null && remoteAddress != null && remoteAddress.getAddress() != null
+            && current.addresses().contains(remoteAddress.getAddress());
+    }
+
+    /**
+     * @param key  path and query of the request
+     * @param load produces the response on this replica
+     */
+    public Mono<CapturedResponse> get(String key, Supplier<Mono<CapturedResponse>> load) {
+        URI owner = owner(key);
+        if (owner == null) {
+            return getLocally(key, load);
+        }
+        CapturedResponse hot = hotCache.getIfPresent(key);
+        if (hot != null) {
+            count("hot");
+            return Mono.just(hot);
+        }
+        return requestCoalescer.coalesce("peerCache", "peer " + key, () -> fetch(owner, key))
+            .doOnNext(response -> count("peer"))
+            .onErrorResume(ex -> {
+                log.debug("Loading {} locally, the owner {} did not answer: {}", key, owner, ex.toString());
+                count("fallback");
+                return load.get();
+            });
+    }
+
+    /**
+     * Serves a key owned by this replica, or asked by a replica taking this one for its owner.
+     */
+    public Mono<CapturedResponse> getLocally(String key, Supplier<Mono<CapturedResponse>> load) {
+        CapturedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            count("hit");
+            return Mono.just(cached);
+        }
+        count("miss");
+        long loadToken = invalidations.get();
+        return load.get()
+            .doOnNext(response -> {
+                if (isCacheable(response) && invalidations.get() == loadToken) {
+                    cache.put(key, response);
+                    if (invalidations.get() != loadToken) {
+                        // an invalidation raced with this put
+                        cache.invalidate(key);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Invalidates the key on this replica and on its owner.
+     */
+    public void invalidate(String key) {
+        invalidateLocally(key);
+        URI owner = owner(key);
+        if (owner == null) {
+            return;
+        }
+        webClient.delete()
+            .uri(owner + INVALIDATE_PATH + "?key={key}", key)
+            .header(PEER_HEADER, "true")
+            .retrieve()
+            .toBodilessEntity()
+            .subscribe(null, ex -> log.warn("Could not invalidate {} on its owner {}: {}", key, owner, ex.toString()));
+    }
+
+    public void invalidateLocally(String key) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key);
+        hotCache.invalidate(key);
+    }
+
+    /**
+     * @return the replica owning the key, {@code null} when it is this one
+     */
+    URI owner(String key) {
+        Membership current = membership;
+        if (current == null) {
+            return null;
+        }
+        return current.owns(key) ? null : current.peers().get(current.ring().node(key));
+    }
+
+    private Mono<CapturedResponse> fetch(URI owner, String key) {
+        return webClient.get()
+            .uri(owner.resolve(key))
+            .header(PEER_HEADER, "true")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchangeToMono(response -> response.toEntity(byte[].class))
+            .timeout(properties.timeout())
+            .flatMap(entity -> entity.getStatusCode().is5xxServerError()
+                ? Mono.error(new IllegalStateException("The owner answered " + entity.getStatusCode()))
+                : Mono.just(relayed(entity)))
+            .doOnNext(response -> {
+                if (isCacheable(response) && ThreadLocalRandom.current().nextDouble() < properties.hotRatio()) {
+                    hotCache.put(key, response);
+                }
+            });
+    }
+
+    private static CapturedResponse relayed(ResponseEntity<byte[]> entity) {
+        HttpHeaders headers = new HttpHeaders();
+        entity.getHeaders().forEach((name, values) -> {
+            if (UNRELAYED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                headers.put(name, values);
+            }
+        });
+        byte[] body = entity.getBody() != null ? entity.getBody() : new byte[0];
+        return new CapturedResponse(entity.getStatusCode(), HttpHeaders.readOnlyHttpHeaders(headers), body);
+    }
+
+    static boolean isCacheable(CapturedResponse response) {
+        MediaType contentType = response.headers().getContentType();
+        String cacheControl = response.headers().getCacheControl();
+        return HttpStatus.OK.equals(response.status())
+            && contentType != null && contentType.isCompatibleWith(MediaType.APPLICATION_JSON)
+            && (cacheControl == null || !cacheControl.contains(CacheControl.noStore().getHeaderValue()));
+    }
+
+    private void count(String result) {
+        requestCounters.computeIfAbsent(result, it -> Counter.builder("gateway.peer.cache.requests")
+            .description("Requests for responses cached by the gateway replicas")
+            .tag("result", it)
+            .register(meterRegistry)).increment();
+    }
+
+    // resolved on the Eureka client's thread, so that checking a request never blocks
+    private static Set<InetAddress> addresses(Collection<URI> peers) {
+        Set<InetAddress> addresses = new HashSet<>();
+        for (URI peer : peers) {
+            try {
+                addresses.addAll(List.of(InetAddress.getAllByName(peer.getHost())));
+            } catch (UnknownHostException ex) {
+                log.warn("Could not resolve the gateway replica {}, its requests are not trusted: {}", peer, ex.toString());
+            }
+        }
+        return Set.copyOf(addresses);
+    }
+
+    private static String node(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    @Override
+    public void destroy() {
+        connectionProvider.dispose();
+    }
+
+    private record Membership(String self, Map<String, URI> peers, Set<InetAddress> addresses, HashRing ring) {
+
+        boolean owns(String key) {
+            return ring.node(key).equals(self);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.samples.petclinic.api.system.CoalescingProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical upstream calls.
+ * <p>
+ * While a call for a given key is in flight, further callers with the same key subscribe to it
+ * instead of issuing their own. The upstream call is only cancelled once every subscriber has
+ * cancelled, so one client going away does not fail the others.
+ */
+@Component
+public class RequestCoalescer {
+
+    private static final String COALESCED_METRIC = "gateway.requests.coalesced";
+
+    private final Map<String, InFlight<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> coalescedCounters = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final int maxFollowers;
+
+    public RequestCoalescer(MeterRegistry meterRegistry, CoalescingProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.maxFollowers = properties.maxFollowers();
+        Gauge.builder("gateway.requests.inflight.keys", inFlight, Map::size)
+            .description("Distinct upstream calls currently shared by coalesced requests")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @param name     low-cardinality name used to tag the coalescing metric
+     * @param key      identity of the call; callers with equal keys share one upstream subscription
+     * @param upstream performs the call, only invoked when no identical call can be joined
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> coalesce(String name, String key, Supplier<Mono<T>> upstream) {
+        return Mono.defer(() -> {
+            InFlight<T> candidate = new InFlight<>(key, upstream);
+            InFlight<?> existing = inFlight.putIfAbsent(key, candidate);
+            if (existing == null) {
+                return candidate.shared;
+            }
+            if (existing.followers.incrementAndGet() > maxFollowers) {
+                existing.followers.decrementAndGet();
+                return upstream.get();
+            }
+            coalescedCounter(name).increment();
+            return ((InFlight<T>) existing).shared
+                .doFinally(signal -> existing.followers.decrementAndGet());
+        });
+    }
+
+    private Counter coalescedCounter(String name) {
+        return coalescedCounters.computeIfAbsent(name, it -> Counter.builder(COALESCED_METRIC)
+            .description("Requests served by joining an identical in-flight upstream call")
+            .tag("name", it)
+            .register(meterRegistry));
+    }
+
+    private final class InFlight<T> {
+
+        private final AtomicInteger followers = new AtomicInteger();
+
+        private final Mono<T> shared;
+
+        private InFlight(String key, Supplier<Mono<T>> upstream) {
+            // replay(1) hands the value to a follower that joins between onNext and onComplete,
+            // refCount(1) cancels the upstream call once the last subscriber is gone
+            this.shared = Mono.defer(upstream)
+                .doFinally(signal -> inFlight.remove(key, this))
+                .flux()
+                .replay(1)
+                .refCount(1)
+                .singleOrEmpty();
+        }
+    }
+}
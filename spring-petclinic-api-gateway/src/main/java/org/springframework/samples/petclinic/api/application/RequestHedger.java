@@ -0,0 +1,199 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.samples.petclinic.api.system.HedgingProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hedged execution of idempotent downstream calls.
+ * <p>
+ * When the first attempt has not answered after the configured latency percentile of the call,
+ * the same request is sent again and the first answer wins. Both attempts share the
+ * {@link TriedInstances} of the call, so the load balancer sends the duplicate to another instance
+ * than the first attempt and a single slow instance no longer drives the tail latency.
+ * Hedges are paid from a budget that is refilled by every call, which caps the extra load.
+ * <p>
+ * A failure of the hedge is ignored; a failure of the first attempt is returned right away,
+ * hedging is meant for slowness, not for errors.
+ */
+@Component
+public class RequestHedger {
+
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, HedgedCall> calls = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final HedgingProperties properties;
+
+    public RequestHedger(MeterRegistry meterRegistry, HedgingProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+    }
+
+    /**
+     * @param name    low-cardinality name of the call, used for its latency and hedge metrics
+     * @param request performs the call; invoked a second time when a hedge is sent
+     */
+    public <T> Mono<T> hedge(String name, Supplier<Mono<T>> request) {
+        return Mono.defer(() -> {
+            HedgedCall call = calls.computeIfAbsent(name, HedgedCall::new);
+            if (!properties.enabled()) {
+                return call.timed(request);
+            }
+            call.budget.deposit();
+            Mono<Attempt<T>> first = call.timed(request).map(value -> new Attempt<>(value, false));
+            Mono<Attempt<T>> hedge = Mono.delay(call.delay())
+                .filter(tick -> call.budget.tryWithdraw())
+                .flatMap(tick -> {
+                    call.sent.increment();
+                    return call.timed(request);
+                })
+                .map(value -> new Attempt<>(value, true))
+                .onErrorResume(throwable -> Mono.never())
+                .switchIfEmpty(Mono.never());
+            return Mono.firstWithSignal(first, hedge)
+                .doOnNext(attempt -> {
+                    if (attempt.hedge()) {
+                        call.won.increment();
+                    }
+                })
+                .map(Attempt::value)
+                .contextWrite(context -> context.put(TriedInstances.KEY, new TriedInstances()));
+        });
+    }
+
+    private record Attempt<T>(T value, boolean hedge) {
+    }
+
+    private final class HedgedCall {
+
+        private final Timer latency;
+
+        private final Counter sent;
+
+        private final Counter won;
+
+        private final HedgeBudget budget = new HedgeBudget(properties.budgetRatio(), properties.budgetBurst());
+
+        private volatile long delayNanos;
+
+        private volatile long delayRefreshedAt;
+
+        private HedgedCall(String name) {
+            this.latency = Timer.builder("gateway.downstream.latency")
+                .description("Latency of successful downstream calls, used to compute the hedge delay")
+                .tag("name", name)
+                .publishPercentiles(properties.percentile())
+                .register(meterRegistry);
+            this.sent = Counter.builder("gateway.hedges.sent")
+                .description("Duplicate requests sent because the first attempt was slow")
+                .tag("name", name)
+                .register(meterRegistry);
+            this.won = Counter.builder("gateway.hedges.won")
+                .description("Hedged requests answered by the duplicate")
+                .tag("name", name)
+                .register(meterRegistry);
+            // computed on the first call
+            this.delayRefreshedAt = System.nanoTime() - DELAY_REFRESH_NANOS;
+        }
+
+        private <T> Mono<T> timed(Supplier<Mono<T>> request) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return request.get()
+                    .doOnSuccess(value -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+            });
+        }
+
+        /**
+         * The percentile is read from a snapshot of the latency histogram, refreshed at most once
+         * per second.
+         */
+        private Duration delay() {
+            long now = System.nanoTime();
+            if (now - delayRefreshedAt >= DELAY_REFRESH_NANOS) {
+                delayRefreshedAt = now;
+                delayNanos = computeDelayNanos();
+            }
+            return Duration.ofNanos(delayNanos);
+        }
+
+        private long computeDelayNanos() {
+            long maxDelay = properties.maxDelay().toNanos();
+            if (latency.count() < properties.minSamples()) {
+                return maxDelay;
+            }
+            for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+                if (percentile.percentile() == properties.percentile()) {
+                    long value = (long) percentile.value(TimeUnit.NANOSECONDS);
+                    return Math.max(properties.minDelay().toNanos(), Math.min(maxDelay, value));
+                }
+            }
+            return maxDelay;
+        }
+    }
+
+    /**
+     * Every call deposits {@code ratio} of a hedge, a hedge withdraws a whole one. The balance is
+     * kept in thousandths of a hedge so that it can be updated lock-free.
+     */
+    static final class HedgeBudget {
+
+        private static final long ONE_HEDGE = 1000;
+
+        private final long deposit;
+
+        private final long maxBalance;
+
+        private final AtomicLong balance = new AtomicLong();
+
+        HedgeBudget(double ratio, int burst) {
+            this.deposit = Math.round(ratio * ONE_HEDGE);
+            this.maxBalance = Math.max(1, burst) * ONE_HEDGE;
+        }
+
+        void deposit() {
+            balance.accumulateAndGet(deposit, (current, amount) -> Math.min(maxBalance, current + amount));
+        }
+
+        boolean tryWithdraw() {
+            while (true) {
+                long current = balance.get();
+                if (current < ONE_HEDGE) {
+                    return false;
+                }
+                if (balance.compareAndSet(current, current - ONE_HEDGE)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.samples.petclinic.api.system.RetryBudgetProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry budgets of the downstream services, shared by the retries of the gateway routes and of the
+ * service clients.
+ * <p>
+ * A fixed number of retries per request multiplies the load of a service that fails every request:
+ * exactly when it is struggling. A budget only lets retries through while they stay below
+ * {@code retryPercent} of the requests of the last window, plus {@code minRetriesPerSecond}, so that
+ * a brownout adds at most that share of load. Granted and denied retries are counted in
+ * {@code gateway.retries} and {@code gateway.retries.exhausted}.
+ */
+@Component
+public class RetryBudget {
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final RetryBudgetProperties properties;
+
+    public RetryBudget(MeterRegistry meterRegistry, RetryBudgetProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+    }
+
+    /**
+     * Records a request, which adds {@code retryPercent} of a retry to the budget.
+     *
+     * @param name budget of the downstream service, which is also the id of its route
+     */
+    public void request(String name) {
+        request(name, System.nanoTime());
+    }
+
+    /**
+     * @return whether a retry may be sent, in which case it is withdrawn from the budget
+     */
+    public boolean tryRetry(String name) {
+        return tryRetry(name, System.nanoTime());
+    }
+
+    /**
+     * Retries an idempotent call of a service client once it failed without a response or with a 503,
+     * up to {@code clientRetries} times and as long as the budget allows.
+     */
+    public <T> Mono<T> retry(String name, Mono<T> call) {
+        Retry retry = Retry.max(properties.clientRetries())
+            .filter(throwable -> isRetryable(throwable) && tryRetry(name));
+        return Mono.defer(() -> {
+            request(name);
+            return call.retryWhen(retry);
+        });
+    }
+
+    void request(String name, long now) {
+        budget(name).window.request(now);
+    }
+
+    boolean tryRetry(String name, long now) {
+        Budget budget = budget(name);
+        if (budget.window.tryRetry(now) || !properties.enabled()) {
+            budget.retries.increment();
+            return true;
+        }
+        budget.exhausted.increment();
+        return false;
+    }
+
+    private Budget budget(String name) {
+        return budgets.computeIfAbsent(name, Budget::new);
+    }
+
+    private static boolean isRetryable(Throwable throwable) {
+        return throwable instanceof WebClientRequestException
+            || throwable instanceof WebClientResponseException.ServiceUnavailable;
+    }
+
+    private final class Budget {
+
+        private final SlidingWindow window = new SlidingWindow(properties.window(), properties.retryPercent(),
+            properties.minRetriesPerSecond());
+
+        private final Counter retries;
+
+        private final Counter exhausted;
+
+        private Budget(String name) {
+            this.retries = Counter.builder("gateway.retries")
+                .description("Retries allowed by the retry budget")
+                .tag("name", name)
+                .register(meterRegistry);
+            this.exhausted = Counter.builder("gateway.retries.exhausted")
+                .description("Retries denied because the retry budget was spent")
+                .tag("name", name)
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Requests and retries over a sliding window, kept in {@value #BUCKETS} buckets that are recycled
+     * as time goes by.
+     */
+    static final class SlidingWindow {
+
+        private static final int BUCKETS = 10;
+
+        private final long bucketNanos;
+
+        private final int retryPercent;
+
+        private final long minRetries;
+
+        private final Bucket[] buckets = new Bucket[BUCKETS];
+
+        SlidingWindow(Duration length, int retryPercent, int minRetriesPerSecond) {
+            this.bucketNanos = Math.max(1, length.toNanos() / BUCKETS);
+            this.retryPercent = retryPercent;
+            this.minRetries = (long) minRetriesPerSecond * Math.max(1, length.toSeconds());
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        void request(long nanoTime) {
+            bucket(nanoTime).requests.incrementAndGet();
+        }
+
+        /**
+         * Retries are rare compared to requests, they are withdrawn under a lock so that concurrent
+         * failures cannot overdraw the budget.
+         */
+        synchronized boolean tryRetry(long nanoTime) {
+            long epoch = nanoTime / bucketNanos;
+            long requests = 0;
+            long retries = 0;
+            for (Bucket bucket : buckets) {
+                if (epoch - bucket.epoch < BUCKETS) {
+                    requests += bucket.requests.get();
+                    retries += bucket.retries.get();
+                }
+            }
+            if ((retries + 1) * 100 > requests * retryPercent + minRetries * 100) {
+                return false;
+            }
+            bucket(nanoTime).retries.incrementAndGet();
+            return true;
+        }
+
+        private Bucket bucket(long nanoTime) {
+            long epoch = nanoTime / bucketNanos;
+            Bucket bucket = buckets[(int) Math.floorMod(epoch, (long) BUCKETS)];
+            if (bucket.epoch != epoch) {
+                synchronized (bucket) {
+                    if (bucket.epoch != epoch) {
+                        bucket.requests.set(0);
+                        bucket.retries.set(0);
+                        bucket.epoch = epoch;
+                    }
+                }
+            }
+            return bucket;
+        }
+
+        private static final class Bucket {
+
+            private volatile long epoch = Long.MIN_VALUE;
+
+            private final AtomicLong requests = new AtomicLong();
+
+            private final AtomicLong retries = new AtomicLong();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Metrics of the {@value #HEADER} response header of a request: the time spent in the gateway and in
+ * each service it called, followed by the phases reported by the service, prefixed with its name,
+ * e.g. {@code visits-service.repository;dur=3.1}.
+ * <p>
+ * The services report their phases when the request carries the {@value #REQUEST_HEADER} header. The
+ * metrics of the current request are available in the Reactor context under {@link #KEY}.
+ */
+public final class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+
+    public static final String REQUEST_HEADER = "X-Server-Timing";
+
+    public static final String KEY = ServerTiming.class.getName();
+
+    private final List<String> metrics = new ArrayList<>();
+
+    public synchronized void add(String name, long nanos) {
+        metrics.add(metric(name, nanos));
+    }
+
+    /**
+     * Adds the metrics reported by a service, prefixed with its name.
+     */
+    public synchronized void addAll(String service, List<String> headerValues) {
+        for (String headerValue : headerValues) {
+            for (String metric : headerValue.split(",")) {
+                if (!metric.isBlank()) {
+                    metrics.add(service + "." + metric.trim());
+                }
+            }
+        }
+    }
+
+    public synchronized List<String> metrics() {
+        return List.copyOf(metrics);
+    }
+
+    static String metric(String name, long nanos) {
+        return String.format(Locale.ROOT, "%s;dur=%.1f", name, nanos / 1e6);
+    }
+
+    /**
+     * Asks a service for its metrics on the calls of a
+     * {@link org.springframework.web.reactive.function.client.WebClient} made for a timed request, and
+     * adds them along with the time the call took until the response headers arrived.
+     */
+    public static ExchangeFilterFunction exchangeFilter(String service) {
+        return (request, next) -> Mono.deferContextual(context -> {
+            ServerTiming serverTiming = context.getOrDefault(KEY, null);
+            if (serverTiming == null) {
+                return next.exchange(request);
+            }
+            long start = System.nanoTime();
+            return next.exchange(ClientRequest.from(request)
+                    .headers(headers -> headers.set(REQUEST_HEADER, "true"))
+                    .build())
+                .doOnNext(response -> {
+                    serverTiming.add(service, System.nanoTime() - start);
+                    serverTiming.addAll(service, response.headers().header(HEADER));
+                });
+        });
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.StaleVisitsProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Last visits successfully fetched for a set of pets, served with their age when visits-service
+ * fails instead of an empty visit history.
+ * <p>
+ * Serving stale visits also revalidates them in the background, once at a time per pet set, so
+ * that the stored visits stay as fresh as visits-service allows during an incident.
+ */
+@Component
+public class StaleVisitsCache implements MeterBinder {
+
+    static final String CACHE_NAME = "staleVisits";
+
+    private final Cache<List<Integer>, StoredVisits> cache;
+
+    private final Set<List<Integer>> revalidating = ConcurrentHashMap.newKeySet();
+
+    public StaleVisitsCache(StaleVisitsProperties properties) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.maximumSize())
+            .expireAfterWrite(properties.maxStale())
+            .recordStats()
+            .build();
+    }
+
+    public void put(Collection<Integer> petIds, Visits visits) {
+        cache.put(key(petIds), new StoredVisits(visits, System.nanoTime()));
+    }
+
+    /**
+     * @param revalidation fetches fresh visits of the pets, subscribed in the background when
+     *                     stale visits are returned
+     * @return the stored visits of exactly these pets, or nothing when there are none
+     */
+    public Mono<StaleVisits> getStale(Collection<Integer> petIds, Supplier<Mono<Visits>> revalidation) {
+        return Mono.fromSupplier(() -> {
+            List<Integer> key = key(petIds);
+            StoredVisits stored = cache.getIfPresent(key);
+            if (stored == null) {
+                return null;
+            }
+            revalidate(key, revalidation);
+            return new StaleVisits(stored.visits(), Duration.ofNanos(System.nanoTime() - stored.fetchedAt()));
+        });
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private void revalidate(List<Integer> key, Supplier<Mono<Visits>> revalidation) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        Mono.defer(revalidation)
+            .doFinally(signal -> revalidating.remove(key))
+            .subscribe(visits -> cache.put(key, new StoredVisits(visits, System.nanoTime())), error -> {
+                // still failing, the stored visits are kept until they expire
+            });
+    }
+
+    private static List<Integer> key(Collection<Integer> petIds) {
+        return List.copyOf(new TreeSet<>(petIds));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    /**
+     * @param age time since the visits were fetched
+     */
+    public record StaleVisits(Visits visits, Duration age) {
+    }
+
+    private record StoredVisits(Visits visits, long fetchedAt) {
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instances already chosen for the attempts of a {@link RequestHedger hedged} call, shared by the
+ * attempts in the Reactor context under {@link #KEY}. The {@link GatewayLoadBalancer} sends the hedge
+ * to an instance the first attempt is not waiting for, unless there is no other one.
+ * <p>
+ * Instances are identified by host and port, like in the
+ * {@link org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats LoadBalancerStats}.
+ */
+public final class TriedInstances {
+
+    public static final String KEY = TriedInstances.class.getName();
+
+    private final Set<String> tried = ConcurrentHashMap.newKeySet();
+
+    void add(ServiceInstance instance) {
+        tried.add(key(instance));
+    }
+
+    /**
+     * @return the instances not tried yet, or all of them when every one was
+     */
+    List<ServiceInstance> untried(List<ServiceInstance> instances) {
+        List<ServiceInstance> untried = instances.stream()
+            .filter(instance -> !tried.contains(key(instance)))
+            .toList();
+        return untried.isEmpty() ? instances : untried;
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+}
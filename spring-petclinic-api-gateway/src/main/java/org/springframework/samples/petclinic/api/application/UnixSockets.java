@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.samples.petclinic.api.system.UnixSocketProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Unix domain sockets of the instances running on the same host as the gateway, which are called
+ * through them instead of TCP loopback.
+ * <p>
+ * An instance listening on a socket advertises its path in the {@value #PATH_METADATA} metadata, and
+ * the host it runs on in {@value #HOST_METADATA}. The socket is used when that host is the one of the
+ * gateway and the path exists here. Instances are registered as the load balancer picks them, and
+ * looked up by the address it resolved them to.
+ */
+@Component
+public class UnixSockets {
+
+    public static final String PATH_METADATA = "unix-socket-path";
+
+    public static final String HOST_METADATA = "unix-socket-host";
+
+    private static final Logger log = LoggerFactory.getLogger(UnixSockets.class);
+
+    private final UnixSocketProperties properties;
+
+    // path advertised by the co-located instances, by address, whether it exists or not
+    private final ConcurrentMap<String, String> advertised = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Path> sockets = new ConcurrentHashMap<>();
+
+    public UnixSockets(UnixSocketProperties properties) {
+        this.properties = properties;
+    }
+
+    public void register(ServiceInstance instance) {
+        if (!properties.enabled()) {
+            return;
+        }
+        String address = address(instance.getHost(), instance.getPort());
+        String path = coLocatedPath(instance);
+        if (Objects.equals(advertised.get(address), path)) {
+            return;
+        }
+        if (path == null) {
+            advertised.remove(address);
+            if (sockets.remove(address) != null) {
+                log.info("Calling {} at {} over TCP again", instance.getServiceId(), address);
+            }
+            return;
+        }
+        advertised.put(address, path);
+        Path socket = Path.of(path);
+        if (Files.exists(socket)) {
+            sockets.put(address, socket);
+            log.info("Calling {} at {} through {}", instance.getServiceId(), address, socket);
+        } else {
+            sockets.remove(address);
+            log.warn("{} at {} listens on {}, which does not exist here: calling it over TCP",
+                instance.getServiceId(), address, socket);
+        }
+    }
+
+    /**
+     * @return the socket of the instance at the given address, {@code null} when it is called over TCP
+     */
+    public Path socket(String host, int port) {
+        return sockets.get(address(host, port));
+    }
+
+    private String coLocatedPath(ServiceInstance instance) {
+        String path = instance.getMetadata().get(PATH_METADATA);
+        if (path == null || path.isBlank() || !properties.host().equals(instance.getMetadata().get(HOST_METADATA))) {
+            return null;
+        }
+        return path;
+    }
+
+    private static String address(String host, int port) {
+        return host + ":" + port;
+    }
+}
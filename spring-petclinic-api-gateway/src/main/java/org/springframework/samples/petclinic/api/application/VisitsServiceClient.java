@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.api.application;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.samples.petclinic.api.dto.Visits;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -33,18 +34,26 @@ public class VisitsServiceClient {
     // Could be changed for testing purpose
     private String hostname = "http://visits-service/";
 
-    private final WebClient.Builder webClientBuilder;
+    private final WebClient webClient;
 
-    public VisitsServiceClient(WebClient.Builder webClientBuilder) {
-        this.webClientBuilder = webClientBuilder;
+    private final RequestHedger requestHedger;
+
+    private final RetryBudget retryBudget;
+
+    public VisitsServiceClient(@Qualifier("visitsServiceWebClient") WebClient webClient, RequestHedger requestHedger,
+              RetryBudget retryBudget) {
+        this.webClient = webClient;
+        this.requestHedger = requestHedger;
+        this.retryBudget = retryBudget;
     }
 
     public Mono<Visits> getVisitsForPets(final List<Integer> petIds) {
-        return webClientBuilder.build()
+        final String joinedIds = joinIds(petIds);
+        return retryBudget.retry("visits-service", requestHedger.hedge("visits-service.getVisitsForPets", () -> webClient
             .get()
-            .uri(hostname + "pets/visits?petId={petId}", joinIds(petIds))
+            .uri(hostname + "pets/visits?petId={petId}&groupBy=petId", joinedIds)
             .retrieve()
-            .bodyToMono(Visits.class);
+            .bodyToMono(Visits.class)));
     }
 
     private String joinIds(List<Integer> petIds) {
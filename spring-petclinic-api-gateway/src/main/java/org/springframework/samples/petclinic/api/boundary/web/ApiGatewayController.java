@@ -17,17 +17,38 @@ package org.springframework.samples.petclinic.api.boundary.web;
 
 import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
 import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.samples.petclinic.api.application.CustomersServiceClient;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.samples.petclinic.api.application.RequestCoalescer;
+import org.springframework.samples.petclinic.api.application.StaleVisitsCache;
+import org.springframework.samples.petclinic.api.application.StaleVisitsCache.StaleVisits;
 import org.springframework.samples.petclinic.api.application.VisitsServiceClient;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.OwnerDetailsBatch;
+import org.springframework.samples.petclinic.api.dto.OwnerDetailsBatch.OwnerFailure;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
 import org.springframework.samples.petclinic.api.dto.Visits;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.function.Function;
 
 /**
@@ -37,47 +58,224 @@ import java.util.function.Function;
 @RequestMapping("/api/gateway")
 public class ApiGatewayController {
 
+    static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Set when visits-service failed and the last known visits are served instead, to their age in
+     * seconds.
+     */
+    static final String STALE_VISITS_AGE_HEADER = "X-Stale-Visits-Age";
+
+    private static final int OWNER_FETCH_CONCURRENCY = 16;
+
     private final CustomersServiceClient customersServiceClient;
 
     private final VisitsServiceClient visitsServiceClient;
 
     private final ReactiveCircuitBreakerFactory cbFactory;
 
+    private final OwnerDetailsCache ownerDetailsCache;
+
+    private final RequestCoalescer requestCoalescer;
+
+    private final StaleVisitsCache staleVisitsCache;
+
     public ApiGatewayController(CustomersServiceClient customersServiceClient,
                                 VisitsServiceClient visitsServiceClient,
-                                ReactiveCircuitBreakerFactory cbFactory) {
+                                ReactiveCircuitBreakerFactory cbFactory,
+                                OwnerDetailsCache ownerDetailsCache,
+                                RequestCoalescer requestCoalescer,
+                                StaleVisitsCache staleVisitsCache) {
         this.customersServiceClient = customersServiceClient;
         this.visitsServiceClient = visitsServiceClient;
         this.cbFactory = cbFactory;
+        this.ownerDetailsCache = ownerDetailsCache;
+        this.requestCoalescer = requestCoalescer;
+        this.staleVisitsCache = staleVisitsCache;
     }
 
     @GetMapping(value = "owners/{ownerId}")
-    public Mono<OwnerDetails> getOwnerDetails(final @PathVariable int ownerId) {
+    public Mono<ResponseEntity<OwnerDetails>> getOwnerDetails(final @PathVariable int ownerId) {
+        return ownerDetailsCache.get(ownerId)
+            .map(owner -> new Loaded<>(owner, null))
+            .switchIfEmpty(requestCoalescer.coalesce("getOwnerDetails", "owner:" + ownerId,
+                () -> loadOwnerDetails(ownerId)))
+            .map(Loaded::toResponse);
+    }
+
+    /**
+     * Only owner details whose visits were actually fetched are cached: the stale or empty visits
+     * served by the circuit breaker fallback must not outlive the visits-service outage.
+     */
+    private Mono<Loaded<OwnerDetails>> loadOwnerDetails(int ownerId) {
+        final long loadToken = ownerDetailsCache.startLoad();
         return customersServiceClient.getOwner(ownerId)
             .flatMap(owner ->
                 visitsServiceClient.getVisitsForPets(owner.getPetIds())
+                    .doOnNext(visits -> staleVisitsCache.put(owner.getPetIds(), visits))
+                    .map(addVisitsToOwner(owner))
+                    .doOnNext(ownerDetails -> ownerDetailsCache.put(ownerId, ownerDetails, loadToken))
+                    .map(ownerDetails -> new Loaded<>(ownerDetails, null))
                     .transform(it -> {
                         ReactiveCircuitBreaker cb = cbFactory.create("getOwnerDetails");
-                        return cb.run(it, throwable -> emptyVisitsForPets());
+                        return cb.run(it, throwable -> fallbackVisitsForPets(owner.getPetIds())
+                            .map(stale -> new Loaded<>(addVisitsToOwner(owner).apply(stale.visits()), stale.age())));
                     })
-                    .map(addVisitsToOwner(owner))
             );
+    }
 
+    /**
+     * Aggregates several owners at once: owners are fetched individually, but the visits of all
+     * their pets are loaded with a single call to the visits service.
+     */
+    @GetMapping(value = "owners", params = "ids")
+    public Mono<ResponseEntity<OwnerDetailsBatch>> getOwnersDetails(final @RequestParam("ids") List<Integer> ownerIds) {
+        final List<Integer> distinctIds = ownerIds.stream().distinct().toList();
+        if (distinctIds.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BATCH_SIZE + " owners can be requested at once");
+        }
+        return requestCoalescer.coalesce("getOwnersDetails", "owners:" + distinctIds,
+                () -> loadOwnersDetails(distinctIds))
+            .map(Loaded::toResponse);
+    }
+
+    private Mono<Loaded<OwnerDetailsBatch>> loadOwnersDetails(List<Integer> distinctIds) {
+        final long loadToken = ownerDetailsCache.startLoad();
+        return Flux.fromIterable(distinctIds)
+            .flatMapSequential(this::lookupOwner, OWNER_FETCH_CONCURRENCY)
+            .collectList()
+            .flatMap(lookups -> {
+                List<OwnerDetails> owners = lookups.stream()
+                    .map(OwnerLookup::owner)
+                    .filter(Objects::nonNull)
+                    .toList();
+                List<OwnerFailure> failures = lookups.stream()
+                    .map(OwnerLookup::failure)
+                    .filter(Objects::nonNull)
+                    .toList();
+                List<OwnerDetails> loadedOwners = lookups.stream()
+                    .filter(lookup -> lookup.owner() != null && !lookup.cached())
+                    .map(OwnerLookup::owner)
+                    .toList();
+                List<Integer> petIds = loadedOwners.stream()
+                    .flatMap(owner -> owner.getPetIds().stream())
+                    .toList();
+                OwnerDetailsBatch batch = new OwnerDetailsBatch(owners, failures);
+                if (petIds.isEmpty()) {
+                    loadedOwners.forEach(owner -> ownerDetailsCache.put(owner.id(), owner, loadToken));
+                    return Mono.just(new Loaded<>(batch, null));
+                }
+                return visitsServiceClient.getVisitsForPets(petIds)
+                    .doOnNext(visits -> {
+                        staleVisitsCache.put(petIds, visits);
+                        addVisitsToOwners(loadedOwners, visits);
+                        loadedOwners.forEach(owner -> ownerDetailsCache.put(owner.id(), owner, loadToken));
+                    })
+                    .map(visits -> new Loaded<>(batch, null))
+                    .transform(it -> {
+                        ReactiveCircuitBreaker cb = cbFactory.create("getOwnerDetails");
+                        return cb.run(it, throwable -> fallbackVisitsForPets(petIds)
+                            .map(stale -> {
+                                addVisitsToOwners(loadedOwners, stale.visits());
+                                return new Loaded<>(batch, stale.age());
+                            }));
+                    });
+            });
+    }
+
+    /**
+     * Owners as newline-delimited JSON, relayed from customers-service as they arrive. Served here
+     * rather than through a route so that the route circuit breaker time limit does not cut
+     * long streams.
+     */
+    @GetMapping(value = "owners/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<DataBuffer> streamOwners() {
+        return customersServiceClient.streamOwners();
+    }
+
+    private Mono<OwnerLookup> lookupOwner(int ownerId) {
+        Mono<OwnerLookup> fetched = customersServiceClient.getOwner(ownerId)
+            .map(owner -> new OwnerLookup(owner, false, null))
+            .defaultIfEmpty(new OwnerLookup(null, false, new OwnerFailure(ownerId, "Owner not found")))
+            .onErrorResume(throwable -> Mono.just(new OwnerLookup(null, false, new OwnerFailure(ownerId, failureReason(throwable)))));
+        return ownerDetailsCache.get(ownerId)
+            .map(owner -> new OwnerLookup(owner, true, null))
+            .switchIfEmpty(fetched);
+    }
+
+    private static String failureReason(Throwable throwable) {
+        if (throwable instanceof WebClientResponseException.NotFound) {
+            return "Owner not found";
+        }
+        return "Owner details are currently unavailable";
     }
 
     private Function<Visits, OwnerDetails> addVisitsToOwner(OwnerDetails owner) {
         return visits -> {
-            owner.pets()
-                .forEach(pet -> pet.visits()
-                    .addAll(visits.items().stream()
-                        .filter(v -> v.petId() == pet.id())
-                        .toList())
-                );
+            addVisitsToOwners(List.of(owner), visits);
             return owner;
         };
     }
 
-    private Mono<Visits> emptyVisitsForPets() {
-        return Mono.just(new Visits(List.of()));
+    /**
+     * Distributes the visits over the pets of the given owners in a single pass: pets are indexed
+     * by id once, then each visit (or each pet group of a grouped response) is looked up directly.
+     */
+    static void addVisitsToOwners(List<OwnerDetails> owners, Visits visits) {
+        int petCount = 0;
+        for (OwnerDetails owner : owners) {
+            petCount += owner.pets().size();
+        }
+        Map<Integer, PetDetails> petsById = new HashMap<>((int) (petCount / 0.75f) + 1);
+        for (OwnerDetails owner : owners) {
+            for (PetDetails pet : owner.pets()) {
+                petsById.put(pet.id(), pet);
+            }
+        }
+        if (visits.byPetId() != null) {
+            visits.byPetId().forEach((petId, petVisits) -> {
+                PetDetails pet = petsById.get(petId);
+                if (pet != null) {
+                    pet.visits().addAll(petVisits);
+                }
+            });
+        } else if (visits.items() != null) {
+            for (VisitDetails visit : visits.items()) {
+                PetDetails pet = petsById.get(visit.petId());
+                if (pet != null) {
+                    pet.visits().add(visit);
+                }
+            }
+        }
+    }
+
+    /**
+     * The last known visits of the pets when there are some, revalidated in the background;
+     * otherwise no visits at all.
+     */
+    private Mono<StaleVisits> fallbackVisitsForPets(List<Integer> petIds) {
+        return staleVisitsCache.getStale(petIds, () -> cbFactory.create("getOwnerDetails")
+                .run(visitsServiceClient.getVisitsForPets(petIds)))
+            .defaultIfEmpty(new StaleVisits(new Visits(List.of()), null));
+    }
+
+    private record OwnerLookup(OwnerDetails owner, boolean cached, OwnerFailure failure) {
+    }
+
+    /**
+     * Responses with stale visits are marked {@code no-store}, so that caches do not keep them.
+     *
+     * @param staleVisitsAge age of the visits when stale ones were served, {@code null} otherwise
+     */
+    private record Loaded<T>(T body, Duration staleVisitsAge) {
+
+        ResponseEntity<T> toResponse() {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (staleVisitsAge != null) {
+                response.header(STALE_VISITS_AGE_HEADER, String.valueOf(staleVisitsAge.toSeconds()))
+                    .cacheControl(CacheControl.noStore());
+            }
+            return response.body(body);
+        }
     }
 }
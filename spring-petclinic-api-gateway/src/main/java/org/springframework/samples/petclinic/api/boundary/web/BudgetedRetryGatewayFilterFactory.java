@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.samples.petclinic.api.application.RetryBudget;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * The {@code Retry} filter, with its retries paid from the {@link RetryBudget} of the route. Takes
+ * the same arguments:
+ * <pre>
+ * default-filters:
+ *   - name: BudgetedRetry
+ *     args:
+ *       retries: 1
+ *       statuses: SERVICE_UNAVAILABLE
+ * </pre>
+ * The budget is checked when the response status or the method would otherwise be retried. A failure
+ * without response is checked before its exception type, so an error that is not retryable also
+ * spends from the budget; with the default {@code IOException} and {@code TimeoutException} there
+ * are hardly any. Requests rejected by the {@link BulkheadFilter} of their route are not retried and
+ * never spend from it.
+ */
+@Component
+public class BudgetedRetryGatewayFilterFactory extends RetryGatewayFilterFactory {
+
+    private final RetryBudget retryBudget;
+
+    public BudgetedRetryGatewayFilterFactory(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
+    @Override
+    public GatewayFilter apply(RetryConfig retryConfig) {
+        GatewayFilter filter = super.apply(retryConfig);
+        String routeId = retryConfig.getRouteId();
+        if (routeId == null) {
+            return filter;
+        }
+        return (exchange, chain) -> {
+            retryBudget.request(routeId);
+            return filter.filter(exchange, chain);
+        };
+    }
+
+    @Override
+    public boolean exceedsMaxIterations(ServerWebExchange exchange, RetryConfig retryConfig) {
+        // the bulkhead runs inside the retries: a full bulkhead fails fast to the fallback, for free
+        if (exchange.getAttributes().containsKey(BulkheadFilter.REJECTED_ATTR)
+            || super.exceedsMaxIterations(exchange, retryConfig)) {
+            return true;
+        }
+        if (retryConfig.getRouteId() == null || !isRetryable(exchange, retryConfig)) {
+            return false;
+        }
+        return !retryBudget.tryRetry(retryConfig.getRouteId());
+    }
+
+    private static boolean isRetryable(ServerWebExchange exchange, RetryConfig retryConfig) {
+        if (!retryConfig.getMethods().contains(exchange.getRequest().getMethod())) {
+            return false;
+        }
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        return status == null
+            || retryConfig.getStatuses().contains(status)
+            || status instanceof HttpStatus httpStatus && retryConfig.getSeries().contains(httpStatus.series());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Isolates the routes from each other with one semaphore bulkhead per route id, so that a slow
+ * service cannot hold all the connections and event loop time of the gateway.
+ * <p>
+ * Bulkheads come from the Resilience4j registry and are configured per route id:
+ * <pre>
+ * resilience4j.bulkhead.instances.genai-service.max-concurrent-calls: 10
+ * </pre>
+ * {@code max-wait-duration} must stay 0: a full bulkhead is reported right away with a
+ * {@link BulkheadFullException}, which the circuit breaker filter of the route turns into its
+ * {@code /fallback} response. Waiting for a permit would block the event loop.
+ * <p>
+ * Resilience4j publishes the available and maximum concurrent calls of each bulkhead as the
+ * {@code resilience4j.bulkhead.*} gauges; rejections are counted in {@code gateway.bulkhead.rejected}
+ * and marked with the {@link #REJECTED_ATTR} exchange attribute, so that neither the
+ * {@link ConcurrencyLimitFilter} takes them for an overloaded service nor the
+ * {@link BudgetedRetryGatewayFilterFactory BudgetedRetry} filter retries them or spends its budget on them.
+ */
+@Component
+public class BulkheadFilter implements GlobalFilter, Ordered {
+
+    public static final String REJECTED_ATTR = BulkheadFilter.class.getName() + ".rejected";
+
+    private static final String CIRCUIT_BREAKER = "CircuitBreaker";
+
+    private final Map<String, Counter> rejectedCounters = new ConcurrentHashMap<>();
+
+    private final BulkheadRegistry bulkheadRegistry;
+
+    private final MeterRegistry meterRegistry;
+
+    private final int order;
+
+    public BulkheadFilter(BulkheadRegistry bulkheadRegistry, MeterRegistry meterRegistry,
+                          GatewayProperties gatewayProperties) {
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.meterRegistry = meterRegistry;
+        this.order = orderInsideCircuitBreakers(gatewayProperties);
+    }
+
+    /**
+     * Route filters that are not ordered themselves take their position in the default filters or in
+     * the filters of their route, from 1, as order, and global filters run outside the route filters
+     * of the same order. The bulkhead gets the order following the innermost {@code CircuitBreaker}
+     * filter, so that it runs inside the circuit breakers of every route whatever their position.
+     *
+     * @throws IllegalStateException when no circuit breaker would turn the rejections into a fallback
+     */
+    static int orderInsideCircuitBreakers(GatewayProperties gatewayProperties) {
+        List<List<FilterDefinition>> filterLists = new ArrayList<>();
+        filterLists.add(gatewayProperties.getDefaultFilters());
+        gatewayProperties.getRoutes().forEach(route -> filterLists.add(route.getFilters()));
+        int circuitBreakerOrder = 0;
+        for (List<FilterDefinition> filters : filterLists) {
+            for (int i = 0; i < filters.size(); i++) {
+                if (CIRCUIT_BREAKER.equals(filters.get(i).getName())) {
+                    circuitBreakerOrder = Math.max(circuitBreakerOrder, i + 1);
+                }
+            }
+        }
+        if (circuitBreakerOrder == 0) {
+            throw new IllegalStateException(
+                "The bulkheads need a CircuitBreaker filter, e.g. in spring.cloud.gateway.default-filters");
+        }
+        return circuitBreakerOrder + 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(route.getId());
+        return Mono.defer(() -> {
+            if (!bulkhead.tryAcquirePermission()) {
+                rejectedCounter(route.getId()).increment();
+                exchange.getAttributes().put(REJECTED_ATTR, true);
+                return Mono.error(BulkheadFullException.createBulkheadFullException(bulkhead));
+            }
+            return chain.filter(exchange).doFinally(signal -> bulkhead.onComplete());
+        });
+    }
+
+    private Counter rejectedCounter(String routeId) {
+        return rejectedCounters.computeIfAbsent(routeId, it -> Counter.builder("gateway.bulkhead.rejected")
+            .description("Requests rejected because the bulkhead of their route was full")
+            .tag("route", it)
+            .register(meterRegistry));
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.samples.petclinic.api.application.RequestCoalescer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Collapses identical concurrent GET requests on a route into a single upstream call.
+ * <p>
+ * The upstream response of the first request is buffered and written to every request that joined
+ * it, so this filter should only be enabled on routes with bounded payloads:
+ * <pre>
+ * filters:
+ *   - Coalesce
+ * </pre>
+ */
+@Component
+public class CoalesceGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+    private final RequestCoalescer requestCoalescer;
+
+    public CoalesceGatewayFilterFactory(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    @Override
+    public GatewayFilter apply(Object config) {
+        // runs outside NettyWriteResponseFilter so that the upstream body is written to the capturing response
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            if (!HttpMethod.GET.equals(exchange.getRequest().getMethod())) {
+                return chain.filter(exchange);
+            }
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            String routeId = route != null ? route.getId() : "unknown";
+            return requestCoalescer
+                .coalesce(routeId, routeId + " " + coalescingKey(exchange.getRequest()), () -> {
+                    CapturingResponse capture = new CapturingResponse(exchange.getResponse());
+                    return chain.filter(exchange.mutate().response(capture).build())
+                        .then(Mono.fromSupplier(capture::toCapturedResponse));
+                })
+                .flatMap(captured -> captured.writeTo(exchange.getResponse()));
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private static String coalescingKey(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        return request.getURI().getRawPath()
+            + "?" + request.getURI().getRawQuery()
+            + " accept=" + headers.get(HttpHeaders.ACCEPT)
+            + " authorization=" + headers.get(HttpHeaders.AUTHORIZATION)
+            + " cookie=" + headers.get(HttpHeaders.COOKIE);
+    }
+}
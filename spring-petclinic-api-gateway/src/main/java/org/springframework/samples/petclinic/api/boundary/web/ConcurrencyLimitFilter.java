@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.samples.petclinic.api.application.ConcurrencyLimiter;
+import org.springframework.samples.petclinic.api.application.ConcurrencyLimiter.Permit;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Applies the adaptive concurrency limit of its route to every routed request and answers
+ * {@code 503 Service Unavailable} right away when the limit is reached.
+ * <p>
+ * The filter runs inside the response writing and coalescing filters, so requests that are
+ * answered from a coalesced call do not count, and outside the circuit breaker and retry filters,
+ * so that a rejected request is not retried and a timed out one backs the limit off. Requests
+ * rejected by the {@link BulkheadFilter} of their route say nothing about the latency of the service
+ * and are ignored.
+ */
+@Component
+public class ConcurrencyLimitFilter implements GlobalFilter, Ordered {
+
+    static final int ORDER = 0;
+
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+        Optional<Permit> acquired = concurrencyLimiter.tryAcquire(ConcurrencyLimiter.ROUTE, route.getId());
+        if (acquired.isEmpty()) {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            return exchange.getResponse().setComplete();
+        }
+        Permit permit = acquired.get();
+        return chain.filter(exchange)
+            .doOnSuccess(done -> {
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                if (exchange.getAttributes().containsKey(BulkheadFilter.REJECTED_ATTR)) {
+                    permit.ignore();
+                } else if (status != null && status.is5xxServerError()) {
+                    permit.dropped();
+                } else {
+                    permit.success();
+                }
+            })
+            .doOnError(throwable -> {
+                if (exchange.getAttributes().containsKey(BulkheadFilter.REJECTED_ATTR)) {
+                    permit.ignore();
+                } else {
+                    permit.dropped();
+                }
+            })
+            .doFinally(signal -> permit.ignore());
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.samples.petclinic.api.application.Deadline;
+import org.springframework.samples.petclinic.api.system.DeadlineProperties;
+import org.springframework.samples.petclinic.commons.transport.MediaStreams;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gives every request a {@link Deadline}, {@code gateway.deadline.timeout} after its arrival, or the
+ * deadline sent by the client when it is earlier.
+ * <p>
+ * The deadline header is set on the request itself, which the routes forward, and the deadline is
+ * put in the Reactor context for the WebClients. Streams are not time limited and get no deadline.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class DeadlineFilter implements WebFilter {
+
+    private final DeadlineProperties properties;
+
+    public DeadlineFilter(DeadlineProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!properties.enabled() || MediaStreams.isRequested(exchange.getRequest().getHeaders().getAccept())) {
+            return chain.filter(exchange);
+        }
+        Deadline deadline = new Deadline(Math.min(
+            System.currentTimeMillis() + properties.timeout().toMillis(),
+            clientDeadline(exchange)));
+        ServerWebExchange withDeadline = exchange.mutate()
+            .request(request -> request.headers(headers ->
+                headers.set(Deadline.HEADER, String.valueOf(deadline.epochMillis()))))
+            .build();
+        return chain.filter(withDeadline)
+            .contextWrite(context -> context.put(Deadline.KEY, deadline));
+    }
+
+    private static long clientDeadline(ServerWebExchange exchange) {
+        String value = exchange.getRequest().getHeaders().getFirst(Deadline.HEADER);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+                // not a deadline, replaced by the gateway's own
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.samples.petclinic.api.application.DownstreamTimer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Adds the time a routed request waits for the downstream response headers to its
+ * {@link DownstreamTimer}. Retries of the request each add their own attempt.
+ */
+@Component
+public class DownstreamTimingFilter implements GlobalFilter, Ordered {
+
+    // wraps the websocket and HTTP routing filters
+    static final int ORDER = NettyRoutingFilter.ORDER - 2;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        DownstreamTimer downstreamTimer = exchange.getAttribute(DownstreamTimer.KEY);
+        if (downstreamTimer == null) {
+            return chain.filter(exchange);
+        }
+        return Mono.defer(() -> {
+            downstreamTimer.start();
+            return chain.filter(exchange);
+        }).doFinally(signal -> downstreamTimer.stop());
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
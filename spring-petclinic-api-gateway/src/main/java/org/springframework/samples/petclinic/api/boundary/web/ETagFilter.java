@@ -0,0 +1,132 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.samples.petclinic.api.system.ETagProperties;
+import org.springframework.samples.petclinic.commons.transport.MediaStreams;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Adds a weak ETag, the MD5 hash of the body, to successful GET responses of the configured paths,
+ * and answers a matching {@code If-None-Match} with 304 Not Modified and no body.
+ * <p>
+ * The hash is taken before {@code server.compression} gzips the response: the tag is weak since it
+ * stands for the same content in every coding, not for the bytes sent.
+ * <p>
+ * Works for routed services and for the gateway's own endpoints alike. Responses without a
+ * {@code Cache-Control} header get {@code no-cache}, so that browsers keep them but revalidate on
+ * each use: the UI's {@code $http} calls then receive a 304 from the gateway and the body from the
+ * browser cache. Streaming responses are left untouched.
+ * <p>
+ * Wraps the {@link PeerCacheFilter}, so that the responses it serves from the cache get an ETag too.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class ETagFilter implements WebFilter {
+
+    private final List<PathPattern> paths;
+
+    public ETagFilter(ETagProperties properties) {
+        this.paths = properties.paths().stream()
+            .map(PathPatternParser.defaultInstance::parse)
+            .toList();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!HttpMethod.GET.equals(exchange.getRequest().getMethod()) || !matches(exchange)) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange.mutate().response(new ETagResponse(exchange)).build());
+    }
+
+    private boolean matches(ServerWebExchange exchange) {
+        for (PathPattern path : paths) {
+            if (path.matches(exchange.getRequest().getPath().pathWithinApplication())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String etag(DataBuffer body) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            try (DataBuffer.ByteBufferIterator buffers = body.readableByteBuffers()) {
+                while (buffers.hasNext()) {
+                    ByteBuffer buffer = buffers.next();
+                    md5.update(buffer);
+                }
+            }
+            // same format as Spring MVC's ShallowEtagHeaderFilter, weak
+            return "W/\"0" + HexFormat.of().formatHex(md5.digest()) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not available", ex);
+        }
+    }
+
+    private static final class ETagResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+
+        private ETagResponse(ServerWebExchange exchange) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (!HttpStatus.OK.equals(getStatusCode()) || MediaStreams.isStream(getHeaders().getContentType())) {
+                return super.writeWith(body);
+            }
+            return DataBufferUtils.join(body).flatMap(buffer -> {
+                HttpHeaders headers = getHeaders();
+                if (headers.getCacheControl() == null) {
+                    headers.setCacheControl("no-cache");
+                }
+                headers.remove(HttpHeaders.TRANSFER_ENCODING);
+                if (exchange.checkNotModified(etag(buffer))) {
+                    DataBufferUtils.release(buffer);
+                    headers.remove(HttpHeaders.CONTENT_LENGTH);
+                    return getDelegate().setComplete();
+                }
+                headers.setContentLength(buffer.readableByteCount());
+                return super.writeWith(Mono.just(buffer));
+            });
+        }
+    }
+}
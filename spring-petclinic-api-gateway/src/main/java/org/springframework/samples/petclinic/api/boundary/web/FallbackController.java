@@ -3,6 +3,7 @@ package org.springframework.samples.petclinic.api.boundary.web;
 import org.apache.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -13,4 +14,10 @@ public class FallbackController {
         return ResponseEntity.status(HttpStatus.SC_SERVICE_UNAVAILABLE)
                 .body("Chat is currently unavailable. Please try again later.");
     }
+
+    @RequestMapping("/fallback")
+    public ResponseEntity<String> serviceFallback() {
+        return ResponseEntity.status(HttpStatus.SC_SERVICE_UNAVAILABLE)
+                .body("Service is currently unavailable. Please try again later.");
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.reactive.resource.ResourceUrlProvider;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves {@code index.html} from memory.
+ * <p>
+ * The page is rendered once: its script, stylesheet and image links are rewritten to the
+ * fingerprinted URLs of the resource chain, so that browsers can cache those assets forever, and
+ * the result is kept as plain and gzipped bytes. The page itself is revalidated on each load
+ * through its ETag.
+ */
+public class IndexPage {
+
+    private static final Pattern RESOURCE_LINK = Pattern.compile("(?:src|href)=\"(/[^/\"][^\"]*)\"");
+
+    private final Resource indexHtml;
+
+    private final ResourceUrlProvider resourceUrlProvider;
+
+    private final AtomicReference<Mono<RenderedPage>> page = new AtomicReference<>();
+
+    public IndexPage(Resource indexHtml, ResourceUrlProvider resourceUrlProvider) {
+        this.indexHtml = indexHtml;
+        this.resourceUrlProvider = resourceUrlProvider;
+    }
+
+    public Mono<ServerResponse> render(ServerRequest request) {
+        return page(request.exchange()).flatMap(rendered -> {
+            if (matchesETag(request, rendered.etag())) {
+                return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(rendered.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+            }
+            boolean gzip = acceptsGzip(request);
+            return ServerResponse.ok()
+                .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                .eTag(rendered.etag())
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .headers(headers -> {
+                    if (gzip) {
+                        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    }
+                })
+                .bodyValue(gzip ? rendered.gzipped() : rendered.plain());
+        });
+    }
+
+    private Mono<RenderedPage> page(ServerWebExchange exchange) {
+        Mono<RenderedPage> current = page.get();
+        if (current != null) {
+            return current;
+        }
+        // the resource URLs depend on the context path, hence the first exchange is needed;
+        // a failed rendering is retried by the next request
+        Mono<RenderedPage> rendering = renderPage(exchange)
+            .cache(rendered -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ZERO);
+        return page.compareAndSet(null, rendering) ? rendering : page.get();
+    }
+
+    private Mono<RenderedPage> renderPage(ServerWebExchange exchange) {
+        // reading the resource blocks: not on the event loop
+        return Mono.fromCallable(() -> indexHtml.getContentAsString(StandardCharsets.UTF_8))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(html -> rewriteLinks(html, exchange));
+    }
+
+    private Mono<RenderedPage> rewriteLinks(String html, ServerWebExchange exchange) {
+        List<MatchResult> links = RESOURCE_LINK.matcher(html).results().toList();
+        return Flux.fromIterable(links)
+            .concatMap(link -> resourceUrlProvider.getForUriString(link.group(1), exchange)
+                .defaultIfEmpty(link.group(1)))
+            .collectList()
+            .map(urls -> {
+                StringBuilder rewritten = new StringBuilder(html.length() + urls.size() * 33);
+                int position = 0;
+                for (int i = 0; i < links.size(); i++) {
+                    rewritten.append(html, position, links.get(i).start(1)).append(urls.get(i));
+                    position = links.get(i).end(1);
+                }
+                rewritten.append(html, position, html.length());
+                return RenderedPage.of(rewritten.toString().getBytes(StandardCharsets.UTF_8));
+            });
+    }
+
+    private static boolean matchesETag(ServerRequest request, String etag) {
+        for (String value : request.headers().header(HttpHeaders.IF_NONE_MATCH)) {
+            for (String candidate : value.split(",")) {
+                String trimmed = candidate.trim();
+                if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(ServerRequest request) {
+        for (String value : request.headers().header(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip") && !isZeroQuality(parts)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZeroQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private record RenderedPage(byte[] plain, byte[] gzipped, String etag) {
+
+        static RenderedPage of(byte[] plain) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(plain.length / 3);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(plain);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return new RenderedPage(plain, gzipped.toByteArray(), "\"0" + DigestUtils.md5DigestAsHex(plain) + "\"");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.samples.petclinic.api.application.DownstreamTimer;
+import org.springframework.samples.petclinic.api.application.LatencySloRecorder;
+import org.springframework.samples.petclinic.commons.transport.MediaStreams;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Records the latency of the routed requests and of the {@link ApiGatewayController} endpoints,
+ * split between the time spent waiting on downstream services and the time spent in the gateway.
+ * <p>
+ * The {@link DownstreamTimer} of the request is put in the exchange attributes for the routing filters
+ * and in the Reactor context for the WebClients. Other requests, such as static resources, are not
+ * recorded, nor are the streams, such as {@code streamOwners}: they last as long as there is data to
+ * send, no latency objective applies to them. Requests cancelled by their client are recorded with
+ * their own outcome.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LatencySloFilter implements WebFilter {
+
+    private final LatencySloRecorder latencySloRecorder;
+
+    public LatencySloFilter(LatencySloRecorder latencySloRecorder) {
+        this.latencySloRecorder = latencySloRecorder;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (MediaStreams.isRequested(exchange.getRequest().getHeaders().getAccept())) {
+            return chain.filter(exchange);
+        }
+        long start = System.nanoTime();
+        DownstreamTimer downstreamTimer = new DownstreamTimer();
+        exchange.getAttributes().put(DownstreamTimer.KEY, downstreamTimer);
+        return chain.filter(exchange)
+            .doOnSuccess(done -> {
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                record(exchange, status != null ? status : HttpStatus.OK, start, downstreamTimer);
+            })
+            .doOnError(throwable -> {
+                HttpStatusCode status = throwable instanceof ResponseStatusException exception
+                    ? exception.getStatusCode()
+                    : HttpStatus.INTERNAL_SERVER_ERROR;
+                record(exchange, status, start, downstreamTimer);
+            })
+            .doOnCancel(() -> record(exchange, null, start, downstreamTimer))
+            .contextWrite(context -> context.put(DownstreamTimer.KEY, downstreamTimer));
+    }
+
+    /**
+     * @param status status of the response, {@code null} when the request was cancelled
+     */
+    private void record(ServerWebExchange exchange, HttpStatusCode status, long start, DownstreamTimer downstreamTimer) {
+        long total = System.nanoTime() - start;
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route != null) {
+            record(LatencySloRecorder.ROUTE, route.getId(), status, total, downstreamTimer.elapsedNanos());
+        } else if (exchange.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler
+            && ApiGatewayController.class.equals(handler.getMethod().getDeclaringClass())) {
+            record(LatencySloRecorder.ENDPOINT, handler.getMethod().getName(), status, total, downstreamTimer.elapsedNanos());
+        }
+    }
+
+    private void record(String scope, String name, HttpStatusCode status, long totalNanos, long downstreamNanos) {
+        if (status != null) {
+            latencySloRecorder.record(scope, name, status.value(), totalNanos, downstreamNanos);
+        } else {
+            latencySloRecorder.recordCancelled(scope, name, totalNanos, downstreamNanos);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.samples.petclinic.api.application.PeerCache;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Invalidation;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evicts an owner from the {@link OwnerDetailsCache} when a write to one of its resources is routed
+ * to the customers or visits service.
+ * <p>
+ * The owner is evicted both before the request is forwarded and once it completes, so that a
+ * concurrent read cannot cache the state the write is about to replace. The owner details response
+ * is invalidated in the {@link PeerCache} too, on the replica owning it. Once the write completed,
+ * the other gateway replicas evict the owner as well, see {@link InvalidationBus}.
+ * <p>
+ * The customers and visits services publish their own writes to the gateway, those not routed
+ * through it included: an owner or its pets changed, under {@code owners} with the owner id, and
+ * visits added, under {@code visits} with the pet id. The owners of a pet are looked up in the
+ * {@link OwnerDetailsCache}; an owner details response in the peer cache of an owner not cached
+ * here expires on its own.
+ */
+@Component
+public class OwnerDetailsCacheInvalidationFilter implements WebFilter {
+
+    private static final List<PathPattern> OWNER_WRITE_PATTERNS = List.of(
+        PathPatternParser.defaultInstance.parse("/api/customer/owners/{ownerId}/**"),
+        PathPatternParser.defaultInstance.parse("/api/visit/owners/{ownerId}/pets/{petId}/visits"));
+
+    private static final String OWNER_DETAILS_PATH = "/api/gateway/owners/";
+
+    static final String OWNER_DETAILS_CACHE = "owner-details";
+
+    static final String OWNERS_CACHE = "owners";
+
+    static final String VISITS_CACHE = "visits";
+
+    private static final Logger log = LoggerFactory.getLogger(OwnerDetailsCacheInvalidationFilter.class);
+
+    private final OwnerDetailsCache ownerDetailsCache;
+
+    private final PeerCache peerCache;
+
+    private final InvalidationBus invalidationBus;
+
+    public OwnerDetailsCacheInvalidationFilter(OwnerDetailsCache ownerDetailsCache, PeerCache peerCache,
+                                               InvalidationBus invalidationBus) {
+        this.ownerDetailsCache = ownerDetailsCache;
+        this.peerCache = peerCache;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        HttpMethod method = exchange.getRequest().getMethod();
+        if (!HttpMethod.POST.equals(method) && !HttpMethod.PUT.equals(method)) {
+            return chain.filter(exchange);
+        }
+        Integer ownerId = extractOwnerId(exchange.getRequest().getPath().pathWithinApplication());
+        if (ownerId == null) {
+            return chain.filter(exchange);
+        }
+        invalidate(ownerId);
+        return chain.filter(exchange)
+            .doFinally(signal -> invalidationBus.publish(OWNER_DETAILS_CACHE, ownerId));
+    }
+
+    /**
+     * Evicts an owner whose write went through this replica or another one, or went to a service.
+     */
+    @EventListener
+    public void onInvalidation(Invalidation invalidation) {
+        String cache = invalidation.cache();
+        if (!OWNER_DETAILS_CACHE.equals(cache) && !OWNERS_CACHE.equals(cache) && !VISITS_CACHE.equals(cache)) {
+            return;
+        }
+        int id;
+        try {
+            id = Integer.parseInt(invalidation.key());
+        } catch (NumberFormatException ex) {
+            log.warn("Ignoring the invalidation of {} {}, not an id", cache, invalidation.key());
+            return;
+        }
+        List<Integer> ownerIds = VISITS_CACHE.equals(cache) ? ownerDetailsCache.ownersOfPet(id) : List.of(id);
+        for (int ownerId : ownerIds) {
+            ownerDetailsCache.invalidate(ownerId);
+            peerCache.invalidateLocally(OWNER_DETAILS_PATH + ownerId);
+        }
+    }
+
+    private void invalidate(int ownerId) {
+        ownerDetailsCache.invalidate(ownerId);
+        if (peerCache.isActive()) {
+            peerCache.invalidate(OWNER_DETAILS_PATH + ownerId);
+        }
+    }
+
+    static Integer extractOwnerId(PathContainer path) {
+        for (PathPattern pattern : OWNER_WRITE_PATTERNS) {
+            PathPattern.PathMatchInfo match = pattern.matchAndExtract(path);
+            if (match != null) {
+                return parseOwnerId(match.getUriVariables());
+            }
+        }
+        return null;
+    }
+
+    private static Integer parseOwnerId(Map<String, String> uriVariables) {
+        try {
+            return Integer.valueOf(uriVariables.get("ownerId"));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
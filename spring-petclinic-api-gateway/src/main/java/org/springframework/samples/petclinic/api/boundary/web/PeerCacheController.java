@@ -0,0 +1,47 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.samples.petclinic.api.application.PeerCache;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Invalidations sent by the other gateway replicas to the owner of a key, see {@link PeerCache}.
+ * Invalidations from other addresses are forbidden.
+ */
+@RestController
+public class PeerCacheController {
+
+    private final PeerCache peerCache;
+
+    public PeerCacheController(PeerCache peerCache) {
+        this.peerCache = peerCache;
+    }
+
+    @DeleteMapping(PeerCache.INVALIDATE_PATH)
+    public ResponseEntity<Void> invalidate(@RequestParam("key") String key, ServerHttpRequest request) {
+        if (!peerCache.isPeer(request.getRemoteAddress())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        peerCache.invalidateLocally(key);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.samples.petclinic.api.application.CapturedResponse;
+import org.springframework.samples.petclinic.api.application.PeerCache;
+import org.springframework.samples.petclinic.api.system.PeerCacheProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Serves the GET requests of the configured paths from the {@link PeerCache}, for routed services and
+ * the gateway's own endpoints alike. Only requests accepting JSON are served, since JSON is what the
+ * replicas cache and ask each other.
+ * <p>
+ * Runs after the other filters, the {@link ETagFilter} included, so that the responses served from the
+ * cache get their ETag and timings like the others.
+ * <p>
+ * A request marked by the {@value PeerCache#PEER_HEADER} header but coming from elsewhere than a
+ * replica goes through uncached, so that a client can neither read the cache of one replica nor make
+ * the replicas forward its requests to each other.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class PeerCacheFilter implements WebFilter {
+
+    private final PeerCache peerCache;
+
+    private final List<PathPattern> paths;
+
+    public PeerCacheFilter(PeerCache peerCache, PeerCacheProperties properties) {
+        this.peerCache = peerCache;
+        this.paths = properties.paths().stream()
+            .map(PathPatternParser.defaultInstance::parse)
+            .toList();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!HttpMethod.GET.equals(request.getMethod()) || !peerCache.isActive() || !matches(request) || !acceptsJson(request)) {
+            return chain.filter(exchange);
+        }
+        String key = request.getURI().getRawQuery() != null
+            ? request.getURI().getRawPath() + "?" + request.getURI().getRawQuery()
+            : request.getURI().getRawPath();
+        Supplier<Mono<CapturedResponse>> load = () -> {
+            CapturingResponse capture = new CapturingResponse(exchange.getResponse());
+            return chain.filter(exchange.mutate().response(capture).build())
+                .then(Mono.fromSupplier(capture::toCapturedResponse));
+        };
+        Mono<CapturedResponse> response;
+        if (!request.getHeaders().containsKey(PeerCache.PEER_HEADER)) {
+            response = peerCache.get(key, load);
+        } else if (peerCache.isPeer(request.getRemoteAddress())) {
+            response = peerCache.getLocally(key, load);
+        } else {
+            return chain.filter(exchange);
+        }
+        return response.flatMap(captured -> captured.writeTo(exchange.getResponse()));
+    }
+
+    private boolean matches(ServerHttpRequest request) {
+        for (PathPattern path : paths) {
+            if (path.matches(request.getPath().pathWithinApplication())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsJson(ServerHttpRequest request) {
+        List<MediaType> accept = request.getHeaders().getAccept();
+        return accept.isEmpty() || accept.stream().anyMatch(type -> type.isCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.samples.petclinic.api.system.RateLimiterProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Keys of the {@code RequestRateLimiter} route filter. Requests are throttled per client address
+ * by default; a route can pick another key with a SpEL expression:
+ * <pre>
+ * key-resolver: "#{&#64;rateLimitKeys.header('X-User-Id')}"
+ * key-resolver: "#{&#64;rateLimitKeys.route()}"
+ * </pre>
+ */
+@Component("rateLimitKeys")
+public class RateLimitKeys implements KeyResolver {
+
+    private final RemoteAddressResolver remoteAddressResolver;
+
+    public RateLimitKeys(RateLimiterProperties properties) {
+        this.remoteAddressResolver = properties.trustedProxies() > 0
+            ? XForwardedRemoteAddressResolver.maxTrustedIndex(properties.trustedProxies())
+            : new RemoteAddressResolver() {
+            };
+    }
+
+    /**
+     * Keys on the client address.
+     */
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        InetSocketAddress address = remoteAddressResolver.resolve(exchange);
+        if (address == null || address.getAddress() == null) {
+            return Mono.empty();
+        }
+        return Mono.just(address.getAddress().getHostAddress());
+    }
+
+    /**
+     * Keys on the value of a request header; requests without it are rejected.
+     */
+    public KeyResolver header(String name) {
+        return exchange -> Mono.justOrEmpty(exchange.getRequest().getHeaders().getFirst(name));
+    }
+
+    /**
+     * One bucket shared by all the clients of the route.
+     */
+    public KeyResolver route() {
+        return exchange -> Mono.justOrEmpty(exchange.<Route>getAttribute(GATEWAY_ROUTE_ATTR)).map(Route::getId);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.samples.petclinic.api.application.DownstreamTimer;
+import org.springframework.samples.petclinic.api.application.ServerTiming;
+import org.springframework.samples.petclinic.api.system.ServerTimingProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Adds the {@link ServerTiming} header to the responses of the configured clients and of a sample of
+ * the other requests: {@code total} until the response headers, {@code downstream} waiting on the
+ * services, {@code gateway} for the rest, such as queueing and aggregation, then the metrics of the
+ * services.
+ * <p>
+ * The {@link ServerTiming} of the request is put in the exchange attributes and in the Reactor context
+ * for the WebClients. Routed requests carry the {@value ServerTiming#REQUEST_HEADER} header, and the
+ * metrics of the routed response are prefixed with the route id. Clients cannot ask the services for
+ * their metrics themselves: the header is removed from the other requests.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class ServerTimingFilter implements WebFilter {
+
+    private final ServerTimingProperties properties;
+
+    private final RateLimitKeys clientKeys;
+
+    public ServerTimingFilter(ServerTimingProperties properties, RateLimitKeys clientKeys) {
+        this.properties = properties;
+        this.clientKeys = clientKeys;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!properties.enabled()) {
+            return chain.filter(withoutRequestHeader(exchange));
+        }
+        return clientKeys.resolve(exchange)
+            .defaultIfEmpty("")
+            .flatMap(client -> isTimed(client)
+                ? timed(exchange, chain)
+                : chain.filter(withoutRequestHeader(exchange)));
+    }
+
+    private boolean isTimed(String client) {
+        return properties.clients().contains(client)
+            || ThreadLocalRandom.current().nextDouble(100) < properties.samplePercentage();
+    }
+
+    private Mono<Void> timed(ServerWebExchange exchange, WebFilterChain chain) {
+        long start = System.nanoTime();
+        ServerTiming serverTiming = new ServerTiming();
+        ServerWebExchange timedExchange = exchange.mutate()
+            .request(request -> request.headers(headers -> headers.set(ServerTiming.REQUEST_HEADER, "true")))
+            .build();
+        timedExchange.getAttributes().put(ServerTiming.KEY, serverTiming);
+        timedExchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() ->
+            writeHeader(timedExchange, serverTiming, System.nanoTime() - start)));
+        return chain.filter(timedExchange)
+            .contextWrite(context -> context.put(ServerTiming.KEY, serverTiming));
+    }
+
+    private static void writeHeader(ServerWebExchange exchange, ServerTiming serverTiming, long totalNanos) {
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        List<String> routed = headers.remove(ServerTiming.HEADER);
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (routed != null && route != null) {
+            serverTiming.addAll(route.getId(), routed);
+        }
+        DownstreamTimer downstreamTimer = exchange.getAttribute(DownstreamTimer.KEY);
+        long downstreamNanos = downstreamTimer != null ? Math.min(downstreamTimer.elapsedNanos(), totalNanos) : 0;
+
+        ServerTiming gatewayTiming = new ServerTiming();
+        gatewayTiming.add("total", totalNanos);
+        gatewayTiming.add("gateway", totalNanos - downstreamNanos);
+        gatewayTiming.add("downstream", downstreamNanos);
+        headers.set(ServerTiming.HEADER, Stream.concat(gatewayTiming.metrics().stream(), serverTiming.metrics().stream())
+            .collect(Collectors.joining(", ")));
+    }
+
+    private static ServerWebExchange withoutRequestHeader(ServerWebExchange exchange) {
+        if (!exchange.getRequest().getHeaders().containsKey(ServerTiming.REQUEST_HEADER)) {
+            return exchange;
+        }
+        return exchange.mutate()
+            .request(request -> request.headers(headers -> headers.remove(ServerTiming.REQUEST_HEADER)))
+            .build();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Marks static resources requested through a fingerprinted URL, as produced by the content
+ * version strategy of the resource chain (e.g. {@code /scripts/app-<md5>.js}), as immutable.
+ * <p>
+ * Such a URL changes with the content, so browsers never need to revalidate it. Resources
+ * requested by their plain name keep the {@code no-cache} policy of the resource handler.
+ */
+@Component
+public class StaticResourceCacheFilter implements WebFilter {
+
+    private static final Pattern FINGERPRINTED = Pattern.compile("-[0-9a-f]{32}\\.[^/.]+$");
+
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365))
+        .cachePublic()
+        .immutable()
+        .getHeaderValue();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!HttpMethod.GET.equals(exchange.getRequest().getMethod())
+            && !HttpMethod.HEAD.equals(exchange.getRequest().getMethod())) {
+            return chain.filter(exchange);
+        }
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (path.startsWith("/api/") || !FINGERPRINTED.matcher(path).find()) {
+            return chain.filter(exchange);
+        }
+        exchange.getResponse().beforeCommit(() -> {
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            if (status == null || status.is2xxSuccessful() || status.isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                exchange.getResponse().getHeaders().setCacheControl(IMMUTABLE);
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.dto;
+
+import java.util.List;
+
+/**
+ * Result of a batch owner details lookup. Owners that could not be fetched are reported
+ * in {@code failures} instead of failing the whole batch.
+ */
+public record OwnerDetailsBatch(
+    List<OwnerDetails> owners,
+    List<OwnerFailure> failures) {
+
+    public record OwnerFailure(
+        int ownerId,
+        String reason) {
+    }
+}
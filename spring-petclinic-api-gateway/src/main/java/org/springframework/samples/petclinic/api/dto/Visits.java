@@ -17,15 +17,25 @@ package org.springframework.samples.petclinic.api.dto;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 
 /**
+ * Visits of a set of pets, either as a flat list ({@code items}) or, when the visits service
+ * supports it, already grouped by pet id ({@code byPetId}).
+ *
  * @author Maciej Szarlinski
  */
 public record Visits (
-    List<VisitDetails> items
+    List<VisitDetails> items,
+    Map<Integer, List<VisitDetails>> byPetId
 ) {
     public Visits() {
         this(new ArrayList<>());
     }
+
+    public Visits(List<VisitDetails> items) {
+        this(items, null);
+    }
 }
+
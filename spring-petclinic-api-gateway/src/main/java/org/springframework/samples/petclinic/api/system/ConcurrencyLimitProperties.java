@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the adaptive concurrency limits put in front of every gateway route and every
+ * downstream service client.
+ *
+ * @param enabled      whether requests above the limit are rejected; limits are computed either way
+ * @param initialLimit concurrency allowed before any latency was observed
+ * @param minLimit     lower bound of the limit
+ * @param maxLimit     upper bound of the limit
+ * @param tolerance    how much the short-term latency may exceed the long-term one before the limit
+ *                     shrinks, e.g. 1.5 tolerates 50% more latency
+ * @param smoothing    weight of a new sample when the limit is updated, between 0 and 1
+ * @param backoffRatio factor applied to the limit when a request failed or timed out
+ */
+@ConfigurationProperties(prefix = "gateway.concurrency-limit")
+public record ConcurrencyLimitProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("20") int initialLimit,
+    @DefaultValue("2") int minLimit,
+    @DefaultValue("200") int maxLimit,
+    @DefaultValue("1.5") double tolerance,
+    @DefaultValue("0.2") double smoothing,
+    @DefaultValue("0.9") double backoffRatio
+) {
+}
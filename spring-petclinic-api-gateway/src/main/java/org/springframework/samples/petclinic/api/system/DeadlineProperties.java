@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the deadline of the requests.
+ *
+ * @param enabled whether the deadline is sent to the downstream services
+ * @param timeout time a request may take, enforced by the circuit breakers of the routes and
+ *                endpoints, after which the services stop working on it
+ */
+@ConfigurationProperties(prefix = "gateway.deadline")
+public record DeadlineProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("10s") Duration timeout
+) {
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.http.MediaType;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Connection pools of the WebClients used by the gateway to aggregate data from the downstream
+ * services. Each service gets its own pool so that a slow service cannot starve the others.
+ * <p>
+ * The services accept cleartext HTTP/2 ({@code H2C}): concurrent requests are multiplexed over a few
+ * connections per instance instead of holding one connection each. Both {@code HTTP11} and {@code H2C}
+ * are spoken by default, so that each connection is upgraded to HTTP/2 by the instances enabling h2c
+ * and stays on HTTP/1.1 with the others. Configure {@code H2C} alone to skip the upgrade and speak
+ * HTTP/2 with prior knowledge, once every instance enables it.
+ * <p>
+ * Responses are requested in CBOR first, a binary encoding of the same Jackson model about a fifth
+ * smaller than JSON, which remains accepted from services that do not offer CBOR.
+ *
+ * @param customersService pool towards customers-service
+ * @param visitsService    pool towards visits-service
+ * @param routes           protocols of the client proxying the gateway routes, whose pool is configured
+ *                         by {@code spring.cloud.gateway.httpclient.pool}
+ */
+@ConfigurationProperties(prefix = "gateway.downstream")
+public record DownstreamServicesProperties(
+    @DefaultValue Pool customersService,
+    @DefaultValue Pool visitsService,
+    @DefaultValue Routes routes
+) {
+
+    /**
+     * @param protocols               protocols spoken to the service
+     * @param accept                  media types accepted from the service, by order of preference
+     * @param maxConcurrentStreams    HTTP/2 only: maximum number of requests multiplexed over one
+     *                                connection, further capped by the service
+     * @param maxConnections          maximum number of connections opened to the service; with HTTP/2
+     *                                a new connection is only opened once the others are full
+     * @param pendingAcquireMaxCount  maximum number of requests waiting for a connection; further
+     *                                requests fail immediately
+     * @param pendingAcquireTimeout   how long a request may wait for a connection
+     * @param maxIdleTime             idle connections are closed after this time, below the keep-alive
+     *                                timeout of the services so that the gateway never reuses a
+     *                                connection the server is closing
+     * @param maxLifeTime             connections are recycled after this time, so that new instances
+     *                                get their share of the traffic
+     * @param evictionInterval        how often idle and expired connections are evicted in the background
+     * @param connectTimeout          TCP connect timeout
+     * @param responseTimeout         maximum time to wait for the response after the request was sent
+     */
+    public record Pool(
+        @DefaultValue({"HTTP11", "H2C"}) List<HttpProtocol> protocols,
+        @DefaultValue({"application/cbor", "application/json"}) List<MediaType> accept,
+        @DefaultValue("100") int maxConcurrentStreams,
+        @DefaultValue("100") int maxConnections,
+        @DefaultValue("500") int pendingAcquireMaxCount,
+        @DefaultValue("2s") Duration pendingAcquireTimeout,
+        @DefaultValue("15s") Duration maxIdleTime,
+        @DefaultValue("5m") Duration maxLifeTime,
+        @DefaultValue("30s") Duration evictionInterval,
+        @DefaultValue("2s") Duration connectTimeout,
+        @DefaultValue("5s") Duration responseTimeout
+    ) {
+    }
+
+    /**
+     * @param protocols            protocols spoken to the services behind the routes
+     * @param maxConcurrentStreams HTTP/2 only: maximum number of requests multiplexed over one
+     *                             connection, further capped by the service
+     */
+    public record Routes(
+        @DefaultValue({"HTTP11", "H2C"}) List<HttpProtocol> protocols,
+        @DefaultValue("100") int maxConcurrentStreams
+    ) {
+    }
+}
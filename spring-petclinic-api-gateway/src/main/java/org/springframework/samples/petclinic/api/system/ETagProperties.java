@@ -0,0 +1,33 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Responses that get an ETag computed by the gateway.
+ *
+ * @param paths path patterns of the GET endpoints, routed or served by the gateway itself, whose
+ *              responses are hashed; keep them to bounded payloads since the body is buffered
+ */
+@ConfigurationProperties(prefix = "gateway.etag")
+public record ETagProperties(
+    @DefaultValue({"/api/vet/vets", "/api/customer/petTypes", "/api/gateway/owners/**"}) List<String> paths
+) {
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the monitoring of the Netty event loops, which serve every connection of the gateway:
+ * a blocking call on one of them stalls all the connections it serves.
+ *
+ * @param enabled        whether the event loops are sampled
+ * @param sampleInterval time between two samples of each event loop
+ * @param logInterval    minimum time between two logs of the same blocking call
+ */
+@ConfigurationProperties(prefix = "gateway.event-loop-monitor")
+public record EventLoopMonitorProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("100ms") Duration sampleInterval,
+    @DefaultValue("1m") Duration logInterval
+) {
+}
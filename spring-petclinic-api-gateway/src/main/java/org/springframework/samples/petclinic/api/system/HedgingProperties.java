@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the hedged requests sent to the downstream services.
+ *
+ * @param enabled     whether a slow GET is duplicated to another instance; latencies are recorded either way
+ * @param percentile  latency percentile of the call after which the duplicate is sent
+ * @param minDelay    lower bound of the hedge delay
+ * @param maxDelay    upper bound of the hedge delay, also used until {@code minSamples} latencies were recorded
+ * @param minSamples  number of recorded latencies required before the percentile is trusted
+ * @param budgetRatio hedges allowed per request, e.g. 0.1 caps the extra load at 10%
+ * @param budgetBurst hedges that may be saved up and spent at once
+ */
+@ConfigurationProperties(prefix = "gateway.hedging")
+public record HedgingProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("0.95") double percentile,
+    @DefaultValue("20ms") Duration minDelay,
+    @DefaultValue("2s") Duration maxDelay,
+    @DefaultValue("100") long minSamples,
+    @DefaultValue("0.1") double budgetRatio,
+    @DefaultValue("10") int budgetBurst
+) {
+}
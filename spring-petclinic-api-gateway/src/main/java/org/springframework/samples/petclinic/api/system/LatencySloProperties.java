@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency objectives of the gateway routes and of the {@code ApiGatewayController} endpoints.
+ *
+ * @param defaultObjective objective of the routes and endpoints without an entry in {@code objectives}
+ * @param objectives       objectives by route id or endpoint method name, e.g. {@code genai-service}
+ *                         or {@code getOwnerDetails}
+ * @param buckets          histogram boundaries published with the latency timers; the latency of
+ *                         every objective is added to them
+ * @param burnRateWindows  windows over which the error budget burn rate is computed, a short and a
+ *                         long one for multi-window alerting
+ */
+@ConfigurationProperties(prefix = "gateway.slo")
+public record LatencySloProperties(
+    @DefaultValue Objective defaultObjective,
+    Map<String, Objective> objectives,
+    @DefaultValue({"50ms", "100ms", "250ms", "500ms", "1s", "2500ms", "5s"}) List<Duration> buckets,
+    @DefaultValue({"5m", "1h"}) List<Duration> burnRateWindows
+) {
+
+    public Objective objective(String name) {
+        return objectives != null ? objectives.getOrDefault(name, defaultObjective) : defaultObjective;
+    }
+
+    /**
+     * A request meets the objective when it is answered within {@code latency} without a server
+     * error.
+     *
+     * @param latency latency threshold of a good request
+     * @param target  share of good requests, e.g. 0.99 leaves an error budget of 1% of the requests
+     */
+    public record Objective(
+        @DefaultValue("500ms") Duration latency,
+        @DefaultValue("0.99") double target
+    ) {
+    }
+}
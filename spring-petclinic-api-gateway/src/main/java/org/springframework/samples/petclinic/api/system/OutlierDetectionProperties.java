@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the passive outlier detection: instances whose requests keep failing are taken out of
+ * the load balancer candidates for a while, without waiting for Eureka to drop them.
+ *
+ * @param enabled              whether outliers are ejected
+ * @param consecutiveFailures  failed requests in a row, 5xx or errors, that eject an instance
+ * @param failureRateThreshold percentage of failed requests within an interval that ejects an instance
+ * @param minimumRequests      requests needed within an interval before its failure rate is considered
+ * @param interval             window of the failure rate; an instance that had no failure during a whole
+ *                             interval gets one ejection forgiven
+ * @param baseEjectionTime     duration of the first ejection, doubled on each further ejection
+ * @param maxEjectionTime      upper bound of the ejection duration
+ * @param maxEjectionPercent   share of the instances of a service that may be ejected at the same time
+ */
+@ConfigurationProperties(prefix = "gateway.load-balancer.outlier-detection")
+public record OutlierDetectionProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("5") int consecutiveFailures,
+    @DefaultValue("50") int failureRateThreshold,
+    @DefaultValue("10") int minimumRequests,
+    @DefaultValue("10s") Duration interval,
+    @DefaultValue("30s") Duration baseEjectionTime,
+    @DefaultValue("5m") Duration maxEjectionTime,
+    @DefaultValue("50") int maxEjectionPercent
+) {
+}
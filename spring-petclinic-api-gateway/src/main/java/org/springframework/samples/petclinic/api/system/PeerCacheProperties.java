@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings of the cache shared by the gateway replicas, see
+ * {@link org.springframework.samples.petclinic.api.application.PeerCache}.
+ *
+ * @param enabled             whether the replicas share their cache; it is only active once the
+ *                            gateway is registered in Eureka
+ * @param serviceId           Eureka name of the gateway replicas
+ * @param paths               GET endpoints whose JSON responses are cached, as path patterns
+ * @param virtualNodes        points of each replica on the hash ring
+ * @param maximumSize         responses kept by a replica for the keys it owns, in bytes of body
+ * @param expireAfterWrite    how long a replica serves a response of a key it owns
+ * @param hotMaximumSize      responses of popular keys kept by a replica that does not own them
+ * @param hotExpireAfterWrite how long those copies are served, short since a replica may miss an
+ *                            invalidation while the owner is unreachable
+ * @param hotRatio            chance of keeping a copy of a response fetched from the owner; popular
+ *                            keys get one after a few requests
+ * @param timeout             how long to wait for the owner before loading the response locally
+ */
+@ConfigurationProperties(prefix = "gateway.peer-cache")
+public record PeerCacheProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("api-gateway") String serviceId,
+    @DefaultValue({"/api/gateway/owners/{ownerId}", "/api/vet/vets"}) List<String> paths,
+    @DefaultValue("100") int virtualNodes,
+    @DefaultValue("64MB") DataSize maximumSize,
+    @DefaultValue("5m") Duration expireAfterWrite,
+    @DefaultValue("8MB") DataSize hotMaximumSize,
+    @DefaultValue("10s") Duration hotExpireAfterWrite,
+    @DefaultValue("0.1") double hotRatio,
+    @DefaultValue("500ms") Duration timeout
+) {
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings shared by the routes throttled with the in-memory {@code RequestRateLimiter}. The rates
+ * themselves are route filter arguments.
+ *
+ * @param maxKeys        maximum number of clients tracked at once, the least recently seen are evicted
+ * @param idleTimeout    a client that sent no request for this long is forgotten and starts again
+ *                       with a full bucket; keep it above the time a bucket takes to refill
+ * @param trustedProxies number of trusted proxies in front of the gateway whose
+ *                       {@code X-Forwarded-For} entries are skipped to find the client address;
+ *                       0 uses the address of the TCP connection
+ */
+@ConfigurationProperties(prefix = "gateway.rate-limiter")
+public record RateLimiterProperties(
+    @DefaultValue("100000") int maxKeys,
+    @DefaultValue("10m") Duration idleTimeout,
+    @DefaultValue("0") int trustedProxies
+) {
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the retry budgets that cap the retries sent to each downstream service.
+ *
+ * @param enabled             whether retries are denied once the budget is spent; they are counted either way
+ * @param retryPercent        retries allowed per hundred requests over the window
+ * @param minRetriesPerSecond retries allowed regardless of the traffic, so that a quiet service still gets
+ *                            its occasional failure retried
+ * @param window              sliding window over which requests and retries are counted
+ * @param clientRetries       retries of a failed idempotent call of the gateway's own service clients
+ */
+@ConfigurationProperties(prefix = "gateway.retry-budget")
+public record RetryBudgetProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("20") int retryPercent,
+    @DefaultValue("1") int minRetriesPerSecond,
+    @DefaultValue("10s") Duration window,
+    @DefaultValue("1") int clientRetries
+) {
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.samples.petclinic.api.application.UnixSockets;
+import org.springframework.samples.petclinic.api.system.DownstreamServicesProperties.Routes;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+
+/**
+ * The client proxying the {@code lb://} routes speaks the protocols of
+ * {@link DownstreamServicesProperties#routes()}, cleartext HTTP/2 where the instance accepts it by default, over the pool configured
+ * by {@code spring.cloud.gateway.httpclient.pool}.
+ * <p>
+ * Replaces the factory of Spring Cloud Gateway, which only lets {@link HttpClientCustomizer}s change the
+ * client but not its pool, while HTTP/2 needs its own allocation strategy, see {@link WebClientConfig}, and
+ * the co-located instances are reached through their Unix domain socket, see {@link UnixSocketConnectionProvider}.
+ */
+@Configuration(proxyBeanMethods = false)
+class RoutesHttpClientConfig {
+
+    @Bean
+    HttpClientFactory routesHttpClientFactory(HttpClientProperties httpClientProperties,
+                                              ServerProperties serverProperties,
+                                              HttpClientSslConfigurer sslConfigurer,
+                                              List<HttpClientCustomizer> customizers,
+                                              DownstreamServicesProperties properties,
+                                              UnixSockets unixSockets) {
+        return new RoutesHttpClientFactory(httpClientProperties, serverProperties, sslConfigurer, customizers,
+            properties.routes(), unixSockets);
+    }
+
+    static class RoutesHttpClientFactory extends HttpClientFactory {
+
+        private final Routes routes;
+
+        private final UnixSockets unixSockets;
+
+        RoutesHttpClientFactory(HttpClientProperties properties, ServerProperties serverProperties,
+                                HttpClientSslConfigurer sslConfigurer, List<HttpClientCustomizer> customizers,
+                                Routes routes, UnixSockets unixSockets) {
+            super(properties, serverProperties, sslConfigurer, customizers);
+            this.routes = routes;
+            this.unixSockets = unixSockets;
+        }
+
+        @Override
+        protected HttpClient createInstance() {
+            return super.createInstance().protocol(routes.protocols().toArray(HttpProtocol[]::new));
+        }
+
+        @Override
+        protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+            return new UnixSocketConnectionProvider(routesConnectionProvider(properties), unixSockets);
+        }
+
+        private ConnectionProvider routesConnectionProvider(HttpClientProperties properties) {
+            ConnectionProvider connectionProvider = super.buildConnectionProvider(properties);
+            ConnectionProvider.Builder builder = connectionProvider.mutate();
+            if (builder == null || !routes.protocols().contains(HttpProtocol.H2C)) {
+                // not pooled, or pooled for HTTP/1.1 only
+                return connectionProvider;
+            }
+            // nothing was pooled yet: the provider is only replaced by one with the same settings
+            connectionProvider.dispose();
+            return builder
+                .allocationStrategy(WebClientConfig.http2AllocationStrategy(connectionProvider.maxConnections(),
+                    routes.maxConcurrentStreams()))
+                .build();
+        }
+    }
+}
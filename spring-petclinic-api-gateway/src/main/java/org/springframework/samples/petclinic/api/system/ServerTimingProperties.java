@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Settings of the {@code Server-Timing} response headers, which break the latency of a request down
+ * between the gateway, the services it called and their controller, repository and serialization
+ * phases. They reveal internals of the services and cost a buffered response in each of them, hence
+ * only a part of the requests get them.
+ *
+ * @param enabled          whether any request gets the headers
+ * @param clients          addresses of the clients whose requests always get them, resolved like the
+ *                         keys of the rate limiter
+ * @param samplePercentage percentage of the requests of the other clients that get them
+ */
+@ConfigurationProperties(prefix = "gateway.server-timing")
+public record ServerTimingProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue List<String> clients,
+    @DefaultValue("0") double samplePercentage
+) {
+}
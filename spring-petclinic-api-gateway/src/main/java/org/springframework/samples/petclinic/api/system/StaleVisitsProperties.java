@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Sizing of the last known visits, served when visits-service cannot answer.
+ *
+ * @param maximumSize maximum number of pet sets whose visits are kept
+ * @param maxStale    how long the visits of a pet set may be served after they were fetched
+ */
+@ConfigurationProperties(prefix = "gateway.stale-visits")
+public record StaleVisitsProperties(
+    @DefaultValue("10000") long maximumSize,
+    @DefaultValue("1h") Duration maxStale
+) {
+}
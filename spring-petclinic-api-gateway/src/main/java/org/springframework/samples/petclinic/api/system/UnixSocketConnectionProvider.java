@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.resolver.AddressResolverGroup;
+import org.springframework.samples.petclinic.api.application.UnixSockets;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.TransportConfig;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Connects to an instance through its Unix domain socket when it has one, see {@link UnixSockets},
+ * and over TCP otherwise.
+ * <p>
+ * Reactor Netty connects to the host and port of the request URI and ignores
+ * {@link reactor.netty.http.client.HttpClient#remoteAddress(Supplier)} for absolute URIs, which
+ * {@code WebClient} and the gateway routes always send. The address is replaced here instead, so the
+ * request keeps its URI and {@code Host} header, and the socket connections get their own pool.
+ */
+class UnixSocketConnectionProvider implements ConnectionProvider {
+
+    private final ConnectionProvider delegate;
+
+    private final UnixSockets unixSockets;
+
+    UnixSocketConnectionProvider(ConnectionProvider delegate, UnixSockets unixSockets) {
+        this.delegate = delegate;
+        this.unixSockets = unixSockets;
+    }
+
+    @Override
+    public Mono<? extends Connection> acquire(TransportConfig config, ConnectionObserver connectionObserver,
+                                              Supplier<? extends SocketAddress> remoteAddress,
+                                              AddressResolverGroup<?> resolverGroup) {
+        return delegate.acquire(config, connectionObserver, () -> socketAddress(remoteAddress.get()), resolverGroup);
+    }
+
+    private SocketAddress socketAddress(SocketAddress remoteAddress) {
+        if (remoteAddress instanceof InetSocketAddress address) {
+            Path socket = unixSockets.socket(address.getHostString(), address.getPort());
+            if (socket != null) {
+                return new DomainSocketAddress(socket.toFile());
+            }
+        }
+        return remoteAddress;
+    }
+
+    @Override
+    public void disposeWhen(SocketAddress address) {
+        delegate.disposeWhen(address);
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    @Override
+    public Mono<Void> disposeLater() {
+        return delegate.disposeLater();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate.isDisposed();
+    }
+
+    @Override
+    public int maxConnections() {
+        return delegate.maxConnections();
+    }
+
+    @Override
+    public Map<SocketAddress, Integer> maxConnectionsPerHost() {
+        return delegate.maxConnectionsPerHost();
+    }
+
+    @Override
+    public Builder mutate() {
+        return delegate.mutate();
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the Unix domain sockets used to call the instances running on the same host as the
+ * gateway, see {@link org.springframework.samples.petclinic.api.application.UnixSockets}.
+ *
+ * @param enabled whether the sockets advertised by the instances are used
+ * @param host    host the gateway runs on, compared with the {@code unix-socket-host} metadata of the
+ *                instances; containers sharing the directory of the sockets must agree on it
+ */
+@ConfigurationProperties(prefix = "gateway.unix-socket")
+public record UnixSocketProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("localhost") String host
+) {
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.samples.petclinic.api.application.ConcurrencyLimiter;
+import org.springframework.samples.petclinic.api.application.Deadline;
+import org.springframework.samples.petclinic.api.application.DownstreamTimer;
+import org.springframework.samples.petclinic.api.application.ServerTiming;
+import org.springframework.samples.petclinic.api.application.UnixSockets;
+import org.springframework.samples.petclinic.api.system.DownstreamServicesProperties.Pool;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * One long-lived, load-balanced {@link WebClient} per downstream service, each backed by its own
+ * Reactor Netty connection pool.
+ * <p>
+ * Pool metrics are enabled: Reactor Netty publishes the {@code reactor.netty.connection.provider.*}
+ * gauges (active, idle, pending connections) and the pending acquire timer to the global Micrometer
+ * registry, which Spring Boot exports along with the other metrics. Over HTTP/2 the
+ * {@code active.streams} and {@code pending.streams} gauges tell how busy the multiplexed connections are.
+ * <p>
+ * Calls are admitted by the adaptive concurrency limit of their service, see {@link ConcurrencyLimiter},
+ * add to the {@link DownstreamTimer} of the request they are made for, and feed the
+ * {@link LoadBalancerStats} of the instance they were sent to. They carry the {@link Deadline} of the
+ * request they are made for, and report to its {@link ServerTiming} when it is timed.
+ * <p>
+ * The instances running on the same host as the gateway are called through their Unix domain socket,
+ * see {@link UnixSocketConnectionProvider}.
+ * <p>
+ * WebFlux has no CBOR codec by default: the clients register a decoder for the CBOR responses they
+ * ask for, see {@link Pool#accept()}.
+ */
+@Configuration(proxyBeanMethods = false)
+class WebClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    ConnectionProvider customersServiceConnectionProvider(DownstreamServicesProperties properties) {
+        return connectionProvider("customers-service", properties.customersService());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    ConnectionProvider visitsServiceConnectionProvider(DownstreamServicesProperties properties) {
+        return connectionProvider("visits-service", properties.visitsService());
+    }
+
+    @Bean
+    WebClient customersServiceWebClient(@LoadBalanced WebClient.Builder webClientBuilder,
+                                        @Qualifier("customersServiceConnectionProvider") ConnectionProvider connectionProvider,
+                                        DownstreamServicesProperties properties,
+                                        ConcurrencyLimiter concurrencyLimiter,
+                                        LoadBalancerStats loadBalancerStats,
+                                        UnixSockets unixSockets) {
+        return webClient(webClientBuilder, connectionProvider, properties.customersService(), unixSockets)
+            .filter(concurrencyLimiter.exchangeFilter("customers-service"))
+            .filter(DownstreamTimer.exchangeFilter())
+            .filter(ServerTiming.exchangeFilter("customers-service"))
+            .filter(Deadline.exchangeFilter())
+            .filter(loadBalancerStats.exchangeFilter())
+            .build();
+    }
+
+    @Bean
+    WebClient visitsServiceWebClient(@LoadBalanced WebClient.Builder webClientBuilder,
+                                     @Qualifier("visitsServiceConnectionProvider") ConnectionProvider connectionProvider,
+                                     DownstreamServicesProperties properties,
+                                     ConcurrencyLimiter concurrencyLimiter,
+                                     LoadBalancerStats loadBalancerStats,
+                                     UnixSockets unixSockets) {
+        return webClient(webClientBuilder, connectionProvider, properties.visitsService(), unixSockets)
+            .filter(concurrencyLimiter.exchangeFilter("visits-service"))
+            .filter(DownstreamTimer.exchangeFilter())
+            .filter(ServerTiming.exchangeFilter("visits-service"))
+            .filter(Deadline.exchangeFilter())
+            .filter(loadBalancerStats.exchangeFilter())
+            .build();
+    }
+
+    static ConnectionProvider connectionProvider(String name, Pool pool) {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(name)
+            .maxConnections(pool.maxConnections())
+            .pendingAcquireMaxCount(pool.pendingAcquireMaxCount())
+            .pendingAcquireTimeout(pool.pendingAcquireTimeout())
+            .maxIdleTime(pool.maxIdleTime())
+            .maxLifeTime(pool.maxLifeTime())
+            .evictInBackground(pool.evictionInterval())
+            .metrics(true);
+        if (pool.protocols().contains(HttpProtocol.H2C)) {
+            builder.allocationStrategy(http2AllocationStrategy(pool.maxConnections(), pool.maxConcurrentStreams()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Without an explicit strategy, the HTTP/2 pool opens a new connection for nearly every request
+     * that arrives while the others are in flight, instead of multiplexing it over an open one.
+     */
+    static Http2AllocationStrategy http2AllocationStrategy(int maxConnections, int maxConcurrentStreams) {
+        return Http2AllocationStrategy.builder()
+            .minConnections(1)
+            .maxConnections(maxConnections)
+            .maxConcurrentStreams(maxConcurrentStreams)
+            .build();
+    }
+
+    private static WebClient.Builder webClient(WebClient.Builder webClientBuilder, ConnectionProvider connectionProvider, Pool pool,
+                                               UnixSockets unixSockets) {
+        HttpClient httpClient = HttpClient.create(new UnixSocketConnectionProvider(connectionProvider, unixSockets))
+            .protocol(pool.protocols().toArray(HttpProtocol[]::new))
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.connectTimeout().toMillis())
+            .responseTimeout(pool.responseTimeout());
+        // the builder is shared: clone it so the connector does not leak into other clients
+        return webClientBuilder.clone()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .codecs(codecs -> codecs.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder()))
+            .defaultHeaders(headers -> headers.setAccept(pool.accept()));
+    }
+}
@@ -6,5 +6,10 @@ angular.module('ownerDetails')
 
         $http.get('api/gateway/owners/' + $stateParams.ownerId).then(function (resp) {
             self.owner = resp.data;
+            // visits-service is down, the gateway served the last known visits
+            var staleAge = resp.headers('X-Stale-Visits-Age');
+            if (staleAge !== null) {
+                self.staleVisitsMinutes = Math.floor(staleAge / 60);
+            }
         });
     }]);
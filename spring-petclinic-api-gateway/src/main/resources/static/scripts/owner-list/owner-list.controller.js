@@ -1,10 +1,73 @@
 'use strict';
 
 angular.module('ownerList')
-    .controller('OwnerListController', ['$http', function ($http) {
+    .controller('OwnerListController', ['$http', '$scope', '$window', function ($http, $scope, $window) {
         var self = this;
+        var aborter = null;
 
-        $http.get('api/customer/owners').then(function (resp) {
-            self.owners = resp.data;
-        });
+        self.owners = [];
+
+        // Owners are streamed as newline-delimited JSON and rendered as they arrive,
+        // instead of waiting for the whole list
+        if ($window.fetch && $window.ReadableStream && $window.TextDecoder && $window.AbortController) {
+            aborter = new AbortController();
+            streamOwners();
+        } else {
+            $http.get('api/customer/owners').then(function (resp) {
+                self.owners = resp.data;
+            });
+        }
+
+        self.$onDestroy = function () {
+            if (aborter) {
+                aborter.abort();
+            }
+        };
+
+        function streamOwners() {
+            $window.fetch('api/gateway/owners/stream', {
+                headers: {'Accept': 'application/x-ndjson'},
+                signal: aborter.signal
+            }).then(function (response) {
+                if (!response.ok) {
+                    throw new Error('Owners stream failed with status ' + response.status);
+                }
+                var reader = response.body.getReader();
+                var decoder = new TextDecoder();
+                var pending = '';
+
+                function read() {
+                    return reader.read().then(function (chunk) {
+                        if (chunk.done) {
+                            addOwners(pending + decoder.decode());
+                            return;
+                        }
+                        var text = pending + decoder.decode(chunk.value, {stream: true});
+                        var lastNewline = text.lastIndexOf('\n');
+                        pending = text.substring(lastNewline + 1);
+                        addOwners(text.substring(0, lastNewline + 1));
+                        return read();
+                    });
+                }
+
+                return read();
+            }).catch(function (error) {
+                if (error.name !== 'AbortError') {
+                    $scope.$applyAsync(function () {
+                        self.error = error.message;
+                    });
+                }
+            });
+        }
+
+        function addOwners(lines) {
+            var owners = lines.split('\n').filter(function (line) {
+                return line.trim().length > 0;
+            }).map(JSON.parse);
+            if (owners.length > 0) {
+                $scope.$applyAsync(function () {
+                    Array.prototype.push.apply(self.owners, owners);
+                });
+            }
+        }
     }]);
@@ -1,15 +1,42 @@
 package org.springframework.samples.petclinic.api;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @ActiveProfiles("test")
-@SpringBootTest
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+	properties = "gateway.event-loop-monitor.enabled=true")
 class ApiGatewayApplicationTests {
 
+	@Autowired
+	WebTestClient webTestClient;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void shouldServeIndexPage() {
+		webTestClient.get().uri("/")
+			.exchange()
+			.expectStatus().isOk()
+			.expectHeader().contentTypeCompatibleWith(MediaType.TEXT_HTML);
+	}
+
+	@Test
+	void shouldMonitorEventLoopsOfServer() {
+		assertThat(meterRegistry.get("gateway.eventloop.latency").gauges()).isNotEmpty();
+		assertThat(meterRegistry.get("gateway.eventloop.pending.tasks").gauges()).isNotEmpty();
+	}
+
 }
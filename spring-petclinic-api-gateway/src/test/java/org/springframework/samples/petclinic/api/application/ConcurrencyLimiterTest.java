@@ -0,0 +1,140 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.api.application.ConcurrencyLimiter.GradientLimit;
+import org.springframework.samples.petclinic.api.application.ConcurrencyLimiter.Permit;
+import org.springframework.samples.petclinic.api.system.ConcurrencyLimitProperties;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldRejectRequestsAboveLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(meterRegistry, properties(true, 2));
+
+        Optional<Permit> first = limiter.tryAcquire(ConcurrencyLimiter.ROUTE, "vets-service");
+        Optional<Permit> second = limiter.tryAcquire(ConcurrencyLimiter.ROUTE, "vets-service");
+        Optional<Permit> third = limiter.tryAcquire(ConcurrencyLimiter.ROUTE, "vets-service");
+
+        assertThat(first).isPresent();
+        assertThat(second).isPresent();
+        assertThat(third).isEmpty();
+        assertThat(meterRegistry.get("gateway.concurrency.rejected").tag("name", "vets-service").counter().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.concurrency.inflight").tag("name", "vets-service").gauge().value())
+            .isEqualTo(2);
+
+        first.get().ignore();
+        first.get().ignore();
+
+        assertThat(limiter.tryAcquire(ConcurrencyLimiter.ROUTE, "vets-service")).isPresent();
+        assertThat(limiter.tryAcquire(ConcurrencyLimiter.ROUTE, "vets-service")).isEmpty();
+    }
+
+    @Test
+    void shouldOnlyRecordLimitWhenDisabled() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(meterRegistry, properties(false, 2));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire(ConcurrencyLimiter.CLIENT, "visits-service")).isPresent();
+        }
+        assertThat(meterRegistry.get("gateway.concurrency.limit").tag("scope", "client").gauge().value())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void shouldGrowLimitWhileLatencyIsStable() {
+        GradientLimit limit = new GradientLimit(properties(true, 20));
+
+        for (int i = 0; i < 50; i++) {
+            limit.update(RTT, limit.limit());
+        }
+
+        assertThat(limit.limit()).isGreaterThan(20);
+    }
+
+    @Test
+    void shouldShrinkLimitWhenLatencyRises() {
+        GradientLimit limit = new GradientLimit(properties(true, 20));
+        for (int i = 0; i < 10; i++) {
+            limit.update(RTT, limit.limit());
+        }
+        int stable = limit.limit();
+
+        for (int i = 0; i < 20; i++) {
+            limit.update(RTT * 4, limit.limit());
+        }
+
+        assertThat(limit.limit()).isLessThan(stable);
+    }
+
+    @Test
+    void shouldNotGrowLimitWhenFarBelowIt() {
+        GradientLimit limit = new GradientLimit(properties(true, 20));
+
+        for (int i = 0; i < 50; i++) {
+            limit.update(RTT, 1);
+        }
+
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldBackOffOnDrop() {
+        GradientLimit limit = new GradientLimit(properties(true, 20));
+
+        limit.backOff();
+
+        assertThat(limit.limit()).isEqualTo(18);
+    }
+
+    @Test
+    void shouldFailClientCallAboveLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(meterRegistry, properties(true, 2));
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> Mono.never())
+            .filter(limiter.exchangeFilter("customers-service"))
+            .build();
+        limiter.tryAcquire(ConcurrencyLimiter.CLIENT, "customers-service");
+        limiter.tryAcquire(ConcurrencyLimiter.CLIENT, "customers-service");
+
+        assertThatThrownBy(() -> webClient.get().uri("http://customers-service/owners/1").retrieve().toBodilessEntity().block())
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    @Test
+    void shouldReleaseClientPermitWhenResponseArrives() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(meterRegistry, properties(true, 1));
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK).build()))
+            .filter(limiter.exchangeFilter("customers-service"))
+            .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(webClient.get().uri("http://customers-service/owners/1").retrieve().toBodilessEntity().block())
+                .isNotNull();
+        }
+        assertThat(meterRegistry.get("gateway.concurrency.inflight").tag("name", "customers-service").gauge().value())
+            .isZero();
+    }
+
+    private static ConcurrencyLimitProperties properties(boolean enabled, int initialLimit) {
+        return new ConcurrencyLimitProperties(enabled, initialLimit, 1, 200, 1.5, 0.2, 0.9);
+    }
+}
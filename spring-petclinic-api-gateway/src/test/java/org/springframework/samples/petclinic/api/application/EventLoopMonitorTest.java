@@ -0,0 +1,160 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.system.EventLoopMonitorProperties;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventLoopMonitorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // plain threads, which BlockHound lets block when the tests run with it
+    private final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1, (ThreadFactory) Thread::new);
+
+    private final EventLoopMonitor monitor = new EventLoopMonitor(meterRegistry,
+        new EventLoopMonitorProperties(true, Duration.ofMillis(10), Duration.ofMinutes(1)), () -> eventLoopGroup);
+
+    @AfterEach
+    void stop() {
+        monitor.stop();
+        eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void shouldReportBlockingCallOnEventLoop() throws InterruptedException {
+        monitor.start();
+        // the thread of the event loop is known once a probe ran
+        await(() -> latency() > 0);
+
+        eventLoopGroup.execute(() -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        await(() -> blocked("java.lang.Thread.sleep") != null && latency() > 0.1);
+        assertThat(blocked("java.lang.Thread.sleep").count()).isPositive();
+        assertThat(meterRegistry.get("gateway.eventloop.pending.tasks").tag("loop", "0").gauge().value()).isOne();
+    }
+
+    @Test
+    void shouldNotReportIdleEventLoop() throws InterruptedException {
+        monitor.start();
+
+        Thread.sleep(200);
+
+        assertThat(meterRegistry.find("gateway.eventloop.blocked").counters()).isEmpty();
+        assertThat(meterRegistry.get("gateway.eventloop.latency").tag("loop", "0").gauge().value()).isLessThan(0.1);
+    }
+
+    @Test
+    void shouldNotReportEventLoopWaitingForTasks() throws InterruptedException {
+        // waits for its tasks in a blocking queue, WAITING or TIMED_WAITING
+        EventLoopGroup taskLoopGroup = new DefaultEventLoopGroup(1, (ThreadFactory) Thread::new);
+        EventLoopMonitor taskLoopMonitor = new EventLoopMonitor(meterRegistry,
+            new EventLoopMonitorProperties(true, Duration.ofMillis(10), Duration.ofMinutes(1)), () -> taskLoopGroup);
+        try {
+            taskLoopMonitor.start();
+
+            Thread.sleep(200);
+
+            assertThat(meterRegistry.find("gateway.eventloop.blocked").counters()).isEmpty();
+        } finally {
+            taskLoopMonitor.stop();
+            taskLoopGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test
+    void shouldNotSampleWhenDisabled() {
+        EventLoopMonitor disabled = new EventLoopMonitor(meterRegistry,
+            new EventLoopMonitorProperties(false, Duration.ofMillis(10), Duration.ofMinutes(1)), () -> eventLoopGroup);
+
+        disabled.start();
+
+        assertThat(disabled.isRunning()).isFalse();
+        assertThat(meterRegistry.find("gateway.eventloop.latency").gauges()).isEmpty();
+    }
+
+    @Test
+    void shouldTellSelectorFromBlockingCalls() {
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.RUNNABLE, stack("sun.nio.ch.EPoll", "wait")))
+            .isFalse();
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.RUNNABLE, stack("io.netty.channel.epoll.Native", "epollWait0")))
+            .isFalse();
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.RUNNABLE, stack("java.io.FileInputStream", "readBytes")))
+            .isTrue();
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.RUNNABLE, stack("java.net.Inet6AddressImpl", "lookupAllHostAddr")))
+            .isTrue();
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.WAITING, stack("jdk.internal.misc.Unsafe", "park")))
+            .isTrue();
+    }
+
+    @Test
+    void shouldTellWaitForTasksFromBlockingCalls() {
+        StackTraceElement[] idle = {
+            new StackTraceElement("jdk.internal.misc.Unsafe", "park", null, -2),
+            new StackTraceElement("java.util.concurrent.locks.LockSupport", "park", null, 1),
+            new StackTraceElement("java.util.concurrent.LinkedBlockingQueue", "take", null, 2),
+            new StackTraceElement("io.netty.util.concurrent.SingleThreadEventExecutor", "takeTask", null, 3),
+            new StackTraceElement("io.netty.channel.DefaultEventLoop", "run", null, 4)
+        };
+        StackTraceElement[] blocking = {
+            new StackTraceElement("jdk.internal.misc.Unsafe", "park", null, -2),
+            new StackTraceElement("java.util.concurrent.locks.LockSupport", "park", null, 1),
+            new StackTraceElement("java.util.concurrent.CompletableFuture", "get", null, 2),
+            new StackTraceElement("org.springframework.samples.petclinic.api.boundary.web.IndexPage", "renderPage", null, 3),
+            new StackTraceElement("io.netty.util.concurrent.SingleThreadEventExecutor", "runAllTasks", null, 4)
+        };
+
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.WAITING, idle)).isFalse();
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.TIMED_WAITING, idle)).isFalse();
+        assertThat(EventLoopMonitor.isBlocking(Thread.State.WAITING, blocking)).isTrue();
+    }
+
+    @Test
+    void shouldReportCallSiteInGateway() {
+        StackTraceElement[] stack = {
+            new StackTraceElement("java.io.FileInputStream", "readBytes", null, -2),
+            new StackTraceElement("org.springframework.core.io.ClassPathResource", "getContentAsString", null, 1),
+            new StackTraceElement("org.springframework.samples.petclinic.api.boundary.web.IndexPage", "renderPage", null, 2)
+        };
+
+        assertThat(EventLoopMonitor.callSite(stack).getClassName())
+            .isEqualTo("org.springframework.samples.petclinic.api.boundary.web.IndexPage");
+    }
+
+    private Counter blocked(String operation) {
+        return meterRegistry.find("gateway.eventloop.blocked").tag("operation", operation).counter();
+    }
+
+    private double latency() {
+        return meterRegistry.get("gateway.eventloop.latency").tag("loop", "0").gauge().value();
+    }
+
+    private static StackTraceElement[] stack(String className, String methodName) {
+        return new StackTraceElement[]{new StackTraceElement(className, methodName, null, -2)};
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
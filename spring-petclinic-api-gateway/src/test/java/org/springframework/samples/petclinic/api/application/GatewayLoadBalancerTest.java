@@ -0,0 +1,80 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+import org.springframework.cloud.loadbalancer.support.SimpleObjectProvider;
+import org.springframework.samples.petclinic.api.system.OutlierDetectionProperties;
+import org.springframework.samples.petclinic.api.system.UnixSocketProperties;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancingProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GatewayLoadBalancerTest {
+
+    private final ServiceInstance healthy = new DefaultServiceInstance("customers-1", "customers-service", "10.0.0.1", 8081, false);
+
+    private final ServiceInstance degraded = new DefaultServiceInstance("customers-2", "customers-service", "10.0.0.2", 8081, false);
+
+    private final OutlierDetector outlierDetector = new OutlierDetector(new SimpleMeterRegistry(),
+        new OutlierDetectionProperties(true, 5, 50, 10, Duration.ofSeconds(10), Duration.ofSeconds(30), Duration.ofMinutes(5), 50));
+
+    private final LoadBalancerStats stats = new LoadBalancerStats(
+        new LoadBalancingProperties(Duration.ofSeconds(10), Duration.ofSeconds(1)), List.of(outlierDetector));
+
+    private final GatewayLoadBalancer loadBalancer = new GatewayLoadBalancer(
+        new SimpleObjectProvider<>(ServiceInstanceListSuppliers.from("customers-service", healthy, degraded)),
+        "customers-service", stats, outlierDetector, new UnixSockets(new UnixSocketProperties(true, "localhost")));
+
+    @Test
+    void shouldNotChooseEjectedInstance() {
+        stats.of(healthy);
+        for (int i = 0; i < 5; i++) {
+            stats.of(degraded).start().failed();
+        }
+        for (int i = 0; i < 5; i++) {
+            stats.of(degraded).start().succeeded();
+        }
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.choose().block().getServer()).isEqualTo(healthy);
+        }
+    }
+
+    @Test
+    void shouldSendHedgeToAnotherInstanceThanTheFirstAttempt() {
+        stats.of(healthy).start().succeeded();
+        stats.of(degraded).start().failed();
+
+        for (int i = 0; i < 20; i++) {
+            TriedInstances tried = new TriedInstances();
+            ServiceInstance first = chooseFor(tried);
+            ServiceInstance hedge = chooseFor(tried);
+
+            assertThat(first).isEqualTo(healthy);
+            assertThat(hedge).isEqualTo(degraded);
+        }
+    }
+
+    @Test
+    void shouldTryInstancesAgainWhenAllWereTried() {
+        TriedInstances tried = new TriedInstances();
+        chooseFor(tried);
+        chooseFor(tried);
+
+        assertThat(chooseFor(tried)).isIn(healthy, degraded);
+    }
+
+    private ServiceInstance chooseFor(TriedInstances tried) {
+        return loadBalancer.choose()
+            .contextWrite(context -> context.put(TriedInstances.KEY, tried))
+            .block()
+            .getServer();
+    }
+}
@@ -0,0 +1,56 @@
+package org.springframework.samples.petclinic.api.application;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class HashRingTest {
+
+    private static final List<String> KEYS = IntStream.range(0, 10_000)
+        .mapToObj(i -> "/api/gateway/owners/" + i)
+        .toList();
+
+    @Test
+    void shouldSpreadKeysEvenly() {
+        HashRing ring = new HashRing(List.of("10.0.0.1:8080", "10.0.0.2:8080", "10.0.0.3:8080", "10.0.0.4:8080"), 100);
+
+        Map<String, Integer> keysByNode = new HashMap<>();
+        KEYS.forEach(key -> keysByNode.merge(ring.node(key), 1, Integer::sum));
+
+        assertThat(keysByNode).hasSize(4);
+        assertThat(keysByNode.values()).allSatisfy(keys -> assertThat(keys).isBetween(1_750, 3_250));
+    }
+
+    @Test
+    void shouldOnlyMoveKeysOfAddedNode() {
+        HashRing ring = new HashRing(List.of("10.0.0.1:8080", "10.0.0.2:8080", "10.0.0.3:8080", "10.0.0.4:8080"), 100);
+        HashRing grown = new HashRing(List.of("10.0.0.1:8080", "10.0.0.2:8080", "10.0.0.3:8080", "10.0.0.4:8080",
+            "10.0.0.5:8080"), 100);
+
+        List<String> moved = KEYS.stream()
+            .filter(key -> !ring.node(key).equals(grown.node(key)))
+            .toList();
+
+        assertThat(moved).allSatisfy(key -> assertThat(grown.node(key)).isEqualTo("10.0.0.5:8080"));
+        assertThat(moved.size()).isBetween(1_000, 3_000);
+    }
+
+    @Test
+    void shouldNotDependOnOrderOfNodes() {
+        HashRing ring = new HashRing(List.of("10.0.0.1:8080", "10.0.0.2:8080", "10.0.0.3:8080"), 100);
+        HashRing reordered = new HashRing(List.of("10.0.0.3:8080", "10.0.0.1:8080", "10.0.0.2:8080"), 100);
+
+        assertThat(KEYS).allSatisfy(key -> assertThat(reordered.node(key)).isEqualTo(ring.node(key)));
+    }
+
+    @Test
+    void shouldRequireNode() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new HashRing(List.of(), 100));
+    }
+}
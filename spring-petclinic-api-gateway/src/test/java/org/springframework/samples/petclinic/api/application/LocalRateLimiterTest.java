@@ -0,0 +1,92 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.http.HttpHeaders;
+import org.springframework.samples.petclinic.api.application.LocalRateLimiter.Config;
+import org.springframework.samples.petclinic.api.application.LocalRateLimiter.Decision;
+import org.springframework.samples.petclinic.api.application.LocalRateLimiter.TokenBucket;
+import org.springframework.samples.petclinic.api.system.RateLimiterProperties;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final LocalRateLimiter rateLimiter = new LocalRateLimiter(null, meterRegistry,
+        new RateLimiterProperties(1000, Duration.ofMinutes(10), 0));
+
+    @Test
+    void shouldAllowBurstThenReplenish() {
+        TokenBucket bucket = new TokenBucket();
+        Config config = new Config().setReplenishRate(2).setBurstCapacity(3);
+
+        assertThat(bucket.tryConsume(0, config)).isEqualTo(new Decision(true, 2, 0));
+        assertThat(bucket.tryConsume(0, config)).isEqualTo(new Decision(true, 1, 0));
+        assertThat(bucket.tryConsume(0, config)).isEqualTo(new Decision(true, 0, 0));
+        assertThat(bucket.tryConsume(0, config)).isEqualTo(new Decision(false, 0, SECOND / 2));
+
+        assertThat(bucket.tryConsume(SECOND / 2, config).allowed()).isTrue();
+        assertThat(bucket.tryConsume(SECOND / 2, config).allowed()).isFalse();
+    }
+
+    @Test
+    void shouldRefillUpToBurstCapacity() {
+        TokenBucket bucket = new TokenBucket();
+        Config config = new Config().setReplenishRate(1).setBurstCapacity(2);
+        bucket.tryConsume(0, config);
+
+        Decision decision = bucket.tryConsume(60 * SECOND, config);
+
+        assertThat(decision).isEqualTo(new Decision(true, 1, 0));
+    }
+
+    @Test
+    void shouldConsumeRequestedTokens() {
+        TokenBucket bucket = new TokenBucket();
+        Config config = new Config().setReplenishRate(10).setReplenishPeriod(Duration.ofMinutes(1))
+            .setBurstCapacity(5).setRequestedTokens(3);
+
+        assertThat(bucket.tryConsume(0, config)).isEqualTo(new Decision(true, 2, 0));
+        assertThat(bucket.tryConsume(0, config)).isEqualTo(new Decision(false, 2, 6 * SECOND));
+    }
+
+    @Test
+    void shouldBlockEverythingWithoutBurstCapacity() {
+        Config config = new Config().setBurstCapacity(0);
+
+        assertThat(new TokenBucket().tryConsume(0, config).allowed()).isFalse();
+    }
+
+    @Test
+    void shouldKeepOneBucketPerRouteAndKey() {
+        rateLimiter.getConfig().put("genai-service", new Config().setBurstCapacity(1));
+
+        assertThat(rateLimiter.isAllowed("genai-service", "10.0.0.1").block().isAllowed()).isTrue();
+        assertThat(rateLimiter.isAllowed("genai-service", "10.0.0.2").block().isAllowed()).isTrue();
+        Response rejected = rateLimiter.isAllowed("genai-service", "10.0.0.1").block();
+
+        assertThat(rejected.isAllowed()).isFalse();
+        assertThat(rejected.getHeaders())
+            .containsEntry(LocalRateLimiter.REMAINING_HEADER, "0")
+            .containsEntry(LocalRateLimiter.BURST_CAPACITY_HEADER, "1")
+            .containsEntry(HttpHeaders.RETRY_AFTER, "1");
+        assertThat(meterRegistry.get("gateway.ratelimit.rejected").tag("route", "genai-service").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void shouldFallBackToDefaultFiltersConfig() {
+        rateLimiter.getConfig().put(RouteDefinitionRouteLocator.DEFAULT_FILTERS, new Config().setBurstCapacity(0));
+
+        assertThat(rateLimiter.isAllowed("vets-service", "10.0.0.1").block().isAllowed()).isFalse();
+    }
+}
@@ -0,0 +1,108 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.samples.petclinic.api.system.OutlierDetectionProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutlierDetectorTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ServiceInstance first = new DefaultServiceInstance("visits-1", "visits-service", "10.0.0.1", 8082, false);
+
+    private final ServiceInstance second = new DefaultServiceInstance("visits-2", "visits-service", "10.0.0.2", 8082, false);
+
+    private final ServiceInstance third = new DefaultServiceInstance("visits-3", "visits-service", "10.0.0.3", 8082, false);
+
+    private final List<ServiceInstance> instances = List.of(first, second, third);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final OutlierDetector detector = new OutlierDetector(meterRegistry, properties(true));
+
+    @Test
+    void shouldEjectInstanceAfterConsecutiveFailures() {
+        fail(first, 4, 0);
+        assertThat(detector.eligible("visits-service", instances, 0)).isEqualTo(instances);
+
+        fail(first, 1, 0);
+
+        assertThat(detector.eligible("visits-service", instances, 0)).containsExactly(second, third);
+        assertThat(meterRegistry.get("gateway.loadbalancer.ejections").tag("service", "visits-service").counter().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.loadbalancer.ejected").tag("service", "visits-service").gauge().value())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void shouldEjectInstanceAboveFailureRate() {
+        for (int i = 0; i < 5; i++) {
+            detector.record(first, true, 0);
+            detector.record(first, false, 0);
+        }
+
+        assertThat(detector.eligible("visits-service", instances, 0)).containsExactly(second, third);
+    }
+
+    @Test
+    void shouldNotEjectMoreThanMaxEjectionPercent() {
+        fail(first, 5, 0);
+        fail(second, 5, 0);
+
+        assertThat(detector.eligible("visits-service", instances, 0)).containsExactly(second, third);
+        assertThat(detector.eligible("visits-service", List.of(first, second), 0)).containsExactly(second);
+    }
+
+    @Test
+    void shouldDoubleEjectionTimeOfRepeatedOutlier() {
+        fail(first, 5, 0);
+        detector.eligible("visits-service", instances, 0);
+
+        assertThat(detector.eligible("visits-service", instances, 29 * SECOND)).containsExactly(second, third);
+        assertThat(detector.eligible("visits-service", instances, 30 * SECOND)).isEqualTo(instances);
+
+        fail(first, 5, 31 * SECOND);
+        detector.eligible("visits-service", instances, 31 * SECOND);
+
+        assertThat(detector.eligible("visits-service", instances, 90 * SECOND)).containsExactly(second, third);
+        assertThat(detector.eligible("visits-service", instances, 91 * SECOND)).isEqualTo(instances);
+    }
+
+    @Test
+    void shouldForgetFailuresAfterSuccess() {
+        fail(first, 4, 0);
+        detector.record(first, false, 0);
+        fail(first, 4, 0);
+
+        assertThat(detector.eligible("visits-service", instances, 0)).isEqualTo(instances);
+    }
+
+    @Test
+    void shouldNotEjectWhenDisabled() {
+        OutlierDetector disabled = new OutlierDetector(meterRegistry, properties(false));
+        for (int i = 0; i < 10; i++) {
+            disabled.record(first, true, 0);
+        }
+
+        assertThat(disabled.eligible("visits-service", instances, 0)).isEqualTo(instances);
+    }
+
+    private void fail(ServiceInstance instance, int times, long now) {
+        for (int i = 0; i < times; i++) {
+            detector.record(instance, true, now);
+        }
+    }
+
+    private static OutlierDetectionProperties properties(boolean enabled) {
+        return new OutlierDetectionProperties(enabled, 5, 50, 10, Duration.ofSeconds(10), Duration.ofSeconds(30),
+            Duration.ofMinutes(5), 50);
+    }
+}
@@ -0,0 +1,72 @@
+package org.springframework.samples.petclinic.api.application;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.system.OwnerDetailsCacheProperties;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OwnerDetailsCacheTest {
+
+    private final OwnerDetailsCache cache = new OwnerDetailsCache(new OwnerDetailsCacheProperties(100, Duration.ofMinutes(10)));
+
+    @Test
+    void shouldFindOwnerOfCachedPet() {
+        cache.put(1, owner(1, 10, 11), cache.startLoad());
+        cache.put(2, owner(2, 20), cache.startLoad());
+
+        assertThat(cache.ownersOfPet(11)).containsExactly(1);
+        assertThat(cache.ownersOfPet(20)).containsExactly(2);
+        assertThat(cache.ownersOfPet(30)).isEmpty();
+    }
+
+    @Test
+    void shouldForgetPetsNoLongerCachedWithTheirOwner() {
+        cache.put(1, owner(1, 10, 11), cache.startLoad());
+        cache.put(1, owner(1, 10), cache.startLoad());
+        assertThat(cache.ownersOfPet(11)).isEmpty();
+
+        cache.invalidate(1);
+        assertThat(cache.ownersOfPet(10)).isEmpty();
+    }
+
+    @Test
+    void shouldIndexPetMovedToAnotherOwner() {
+        cache.put(1, owner(1, 10), cache.startLoad());
+        cache.put(2, owner(2, 10), cache.startLoad());
+        cache.put(1, owner(1), cache.startLoad());
+
+        assertThat(cache.ownersOfPet(10)).containsExactly(2);
+    }
+
+    @Test
+    void shouldNotIndexLoadRacingWithInvalidation() {
+        long loadToken = cache.startLoad();
+        cache.invalidate(2);
+        cache.put(1, owner(1, 10), loadToken);
+
+        assertThat(cache.get(1).block()).isNull();
+        assertThat(cache.ownersOfPet(10)).isEmpty();
+    }
+
+    @Test
+    void shouldForgetAllPets() {
+        cache.put(1, owner(1, 10), cache.startLoad());
+
+        cache.invalidateAll();
+
+        assertThat(cache.ownersOfPet(10)).isEmpty();
+    }
+
+    private static OwnerDetails owner(int ownerId, int... petIds) {
+        List<PetDetails> pets = Arrays.stream(petIds)
+            .mapToObj(petId -> PetDetails.PetDetailsBuilder.aPetDetails().id(petId).visits(List.of()).build())
+            .toList();
+        return OwnerDetails.OwnerDetailsBuilder.anOwnerDetails().id(ownerId).pets(pets).build();
+    }
+}
@@ -0,0 +1,270 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.api.system.CoalescingProperties;
+import org.springframework.samples.petclinic.api.system.PeerCacheProperties;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeerCacheTest {
+
+    private static final String OWNER = "{\"id\":1,\"firstName\":\"George\"}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ServiceInstance self = new DefaultServiceInstance("api-gateway-1", "api-gateway", "localhost", 1, false);
+
+    // requests received by the other replica
+    private final Queue<String> peerRequests = new ConcurrentLinkedQueue<>();
+
+    private final DisposableServer peer = HttpServer.create()
+        .port(0)
+        .route(routes -> routes
+            .get("/api/gateway/owners/{ownerId}", (request, response) -> {
+                peerRequests.add("GET " + request.uri() + " " + request.requestHeaders().get(PeerCache.PEER_HEADER));
+                return response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).sendString(Mono.just(OWNER));
+            })
+            .delete(PeerCache.INVALIDATE_PATH, (request, response) -> {
+                peerRequests.add("DELETE " + request.uri());
+                return response.status(HttpStatus.NO_CONTENT.value()).send();
+            }))
+        .bindNow();
+
+    private final ServiceInstance peerInstance = new DefaultServiceInstance("api-gateway-2", "api-gateway", "localhost",
+        peer.port(), false);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void stop() {
+        peer.disposeNow();
+    }
+
+    @Test
+    void shouldCacheKeysOwnedLocally() {
+        PeerCache peerCache = peerCache(0);
+        String key = keyOwnedBy(peerCache, false);
+
+        peerCache.get(key, this::load).block();
+        CapturedResponse response = peerCache.get(key, this::load).block();
+
+        assertThat(loads).hasValue(1);
+        assertThat(new String(response.body(), StandardCharsets.UTF_8)).isEqualTo("{\"loaded\":true}");
+        assertThat(peerRequests).isEmpty();
+        assertThat(requests("hit")).isOne();
+    }
+
+    @Test
+    void shouldFetchKeysOwnedByPeer() {
+        PeerCache peerCache = peerCache(0);
+        String key = keyOwnedBy(peerCache, true);
+
+        CapturedResponse response = peerCache.get(key, this::load).block();
+
+        assertThat(loads).hasValue(0);
+        assertThat(new String(response.body(), StandardCharsets.UTF_8)).isEqualTo(OWNER);
+        assertThat(response.headers().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(response.headers().getContentLength()).isEqualTo(-1);
+        assertThat(peerRequests).containsExactly("GET " + key + " true");
+        assertThat(requests("peer")).isOne();
+    }
+
+    @Test
+    void shouldKeepCopiesOfKeysOwnedByPeer() {
+        PeerCache peerCache = peerCache(1);
+        String key = keyOwnedBy(peerCache, true);
+
+        peerCache.get(key, this::load).block();
+        peerCache.get(key, this::load).block();
+
+        assertThat(peerRequests).hasSize(1);
+        assertThat(requests("hot")).isOne();
+    }
+
+    @Test
+    void shouldLoadLocallyWhenPeerDoesNotAnswer() {
+        PeerCache peerCache = peerCache(1);
+        String key = keyOwnedBy(peerCache, true);
+        peer.disposeNow();
+
+        CapturedResponse response = peerCache.get(key, this::load).block();
+
+        assertThat(loads).hasValue(1);
+        assertThat(new String(response.body(), StandardCharsets.UTF_8)).isEqualTo("{\"loaded\":true}");
+        assertThat(requests("fallback")).isOne();
+    }
+
+    @Test
+    void shouldServeRequestsOfPeersLocally() {
+        PeerCache peerCache = peerCache(0);
+        String key = keyOwnedBy(peerCache, true);
+
+        peerCache.getLocally(key, this::load).block();
+        peerCache.getLocally(key, this::load).block();
+
+        assertThat(loads).hasValue(1);
+        assertThat(peerRequests).isEmpty();
+    }
+
+    @Test
+    void shouldInvalidateKeysOnOwner() throws InterruptedException {
+        PeerCache peerCache = peerCache(1);
+        String key = keyOwnedBy(peerCache, true);
+        peerCache.get(key, this::load).block();
+
+        peerCache.invalidate(key);
+        await(() -> peerRequests.size() == 2);
+        peerCache.get(key, this::load).block();
+
+        assertThat(peerRequests).containsExactly(
+            "GET " + key + " true",
+            "DELETE " + PeerCache.INVALIDATE_PATH + "?key=" + key.replace("/", "%2F"),
+            "GET " + key + " true");
+    }
+
+    @Test
+    void shouldOnlyDropKeysWhoseOwnerChanged() {
+        List<ServiceInstance> replicas = new CopyOnWriteArrayList<>(List.of(self, peerInstance));
+        PeerCache peerCache = new PeerCache(properties(true, 0), meterRegistry,
+            new RequestCoalescer(meterRegistry, new CoalescingProperties(256)), () -> self, serviceId -> replicas);
+        peerCache.refresh();
+        List<String> owned = keysOwnedBy(peerCache, false);
+        owned.forEach(key -> peerCache.get(key, this::load).block());
+
+        replicas.add(new DefaultServiceInstance("api-gateway-3", "api-gateway", "localhost", 3, false));
+        peerCache.refresh();
+        List<String> kept = keysOwnedBy(peerCache, false);
+        List<String> moved = owned.stream().filter(key -> !kept.contains(key)).toList();
+        assertThat(kept).isNotEmpty();
+        assertThat(moved).isNotEmpty();
+        loads.set(0);
+        kept.forEach(key -> peerCache.getLocally(key, this::load).block());
+        assertThat(loads).hasValue(0);
+        moved.forEach(key -> peerCache.getLocally(key, this::load).block());
+
+        assertThat(loads).hasValue(moved.size());
+    }
+
+    @Test
+    void shouldNotCacheLoadsRacingWithInvalidation() {
+        PeerCache peerCache = peerCache(0);
+        String key = keyOwnedBy(peerCache, false);
+
+        peerCache.get(key, () -> {
+            peerCache.invalidate(key);
+            return load();
+        }).block();
+        peerCache.get(key, this::load).block();
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void shouldOnlyTrustAddressesOfReplicas() {
+        PeerCache peerCache = peerCache(0);
+
+        assertThat(peerCache.isPeer(new InetSocketAddress("127.0.0.1", 40000))).isTrue();
+        assertThat(peerCache.isPeer(new InetSocketAddress("192.0.2.1", 40000))).isFalse();
+        assertThat(peerCache.isPeer(null)).isFalse();
+    }
+
+    @Test
+    void shouldOnlyCacheSuccessfulJsonResponses() {
+        HttpHeaders json = new HttpHeaders();
+        json.setContentType(MediaType.APPLICATION_JSON);
+        HttpHeaders stale = new HttpHeaders();
+        stale.setContentType(MediaType.APPLICATION_JSON);
+        stale.setCacheControl(CacheControl.noStore());
+        HttpHeaders cbor = new HttpHeaders();
+        cbor.setContentType(MediaType.APPLICATION_CBOR);
+
+        assertThat(PeerCache.isCacheable(new CapturedResponse(HttpStatus.OK, json, new byte[0]))).isTrue();
+        assertThat(PeerCache.isCacheable(new CapturedResponse(HttpStatus.NOT_FOUND, json, new byte[0]))).isFalse();
+        assertThat(PeerCache.isCacheable(new CapturedResponse(HttpStatus.OK, stale, new byte[0]))).isFalse();
+        assertThat(PeerCache.isCacheable(new CapturedResponse(HttpStatus.OK, cbor, new byte[0]))).isFalse();
+    }
+
+    @Test
+    void shouldStayInactiveWhenDisabled() {
+        PeerCache peerCache = new PeerCache(properties(false, 0), meterRegistry,
+            new RequestCoalescer(meterRegistry, new CoalescingProperties(256)), () -> self, serviceId -> List.of(self, peerInstance));
+
+        peerCache.refresh();
+
+        assertThat(peerCache.isActive()).isFalse();
+    }
+
+    private PeerCache peerCache(double hotRatio) {
+        PeerCache peerCache = new PeerCache(properties(true, hotRatio), meterRegistry,
+            new RequestCoalescer(meterRegistry, new CoalescingProperties(256)), () -> self, serviceId -> List.of(self, peerInstance));
+        peerCache.refresh();
+        assertThat(peerCache.isActive()).isTrue();
+        return peerCache;
+    }
+
+    private static PeerCacheProperties properties(boolean enabled, double hotRatio) {
+        return new PeerCacheProperties(enabled, "api-gateway", List.of("/api/gateway/owners/{ownerId}"), 100,
+            DataSize.ofMegabytes(1), Duration.ofMinutes(1), DataSize.ofMegabytes(1), Duration.ofMinutes(1), hotRatio,
+            Duration.ofSeconds(1));
+    }
+
+    private static String keyOwnedBy(PeerCache peerCache, boolean peer) {
+        return IntStream.range(0, 100)
+            .mapToObj(i -> "/api/gateway/owners/" + i)
+            .filter(key -> (peerCache.owner(key) != null) == peer)
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private static List<String> keysOwnedBy(PeerCache peerCache, boolean peer) {
+        return IntStream.range(0, 100)
+            .mapToObj(i -> "/api/gateway/owners/" + i)
+            .filter(key -> (peerCache.owner(key) != null) == peer)
+            .toList();
+    }
+
+    private Mono<CapturedResponse> load() {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            return new CapturedResponse(HttpStatus.OK, headers, "{\"loaded\":true}".getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("gateway.peer.cache.requests").tag("result", result).counter().count();
+    }
+
+    private static void await(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.get()) {
+            assertThat(System.nanoTime()).as("condition met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
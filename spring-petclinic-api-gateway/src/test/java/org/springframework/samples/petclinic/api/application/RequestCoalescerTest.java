@@ -0,0 +1,72 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.system.CoalescingProperties;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCoalescerTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RequestCoalescer coalescer = new RequestCoalescer(meterRegistry, new CoalescingProperties(1));
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private final AtomicInteger upstreamCancellations = new AtomicInteger();
+
+    private final Sinks.One<String> upstream = Sinks.one();
+
+    private Mono<String> call() {
+        return coalescer.coalesce("test", "key", () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream.asMono().doOnCancel(upstreamCancellations::incrementAndGet);
+        });
+    }
+
+    @Test
+    void identicalConcurrentCallsShareOneUpstreamCall() {
+        AtomicReference<String> first = new AtomicReference<>();
+        AtomicReference<String> second = new AtomicReference<>();
+        call().subscribe(first::set);
+        call().subscribe(second::set);
+
+        upstream.tryEmitValue("owner");
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(first).hasValue("owner");
+        assertThat(second).hasValue("owner");
+        assertThat(meterRegistry.get("gateway.requests.coalesced").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void upstreamKeepsRunningUntilLastSubscriberCancels() {
+        AtomicReference<String> second = new AtomicReference<>();
+        Disposable first = call().subscribe();
+        Disposable follower = call().subscribe(second::set);
+
+        first.dispose();
+        assertThat(upstreamCancellations).hasValue(0);
+
+        follower.dispose();
+        assertThat(upstreamCancellations).hasValue(1);
+        assertThat(second).hasValue(null);
+    }
+
+    @Test
+    void followersBeyondTheLimitGoUpstreamOnTheirOwn() {
+        call().subscribe();
+        call().subscribe();
+        call().subscribe();
+
+        assertThat(upstreamCalls).hasValue(2);
+    }
+}
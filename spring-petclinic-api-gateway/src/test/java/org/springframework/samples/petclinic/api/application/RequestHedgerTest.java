@@ -0,0 +1,114 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.system.HedgingProperties;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestHedgerTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldNotHedgeWhenDisabled() {
+        RequestHedger hedger = new RequestHedger(meterRegistry, properties(false, 1.0));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedger.hedge("test", () -> slowThenFast(attempts)).block(Duration.ofSeconds(5));
+
+        assertThat(result).isEqualTo("attempt 1");
+        assertThat(attempts).hasValue(1);
+        assertThat(meterRegistry.get("gateway.downstream.latency").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldAnswerWithHedgeWhenFirstAttemptIsSlow() {
+        RequestHedger hedger = new RequestHedger(meterRegistry, properties(true, 1.0));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedger.hedge("test", () -> slowThenFast(attempts)).block(Duration.ofSeconds(5));
+
+        assertThat(result).isEqualTo("attempt 2");
+        assertThat(meterRegistry.get("gateway.hedges.sent").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.hedges.won").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotHedgeOnceBudgetIsSpent() {
+        RequestHedger hedger = new RequestHedger(meterRegistry, properties(true, 0.0));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedger.hedge("test", () -> slowThenFast(attempts)).block(Duration.ofSeconds(5));
+
+        assertThat(result).isEqualTo("attempt 1");
+        assertThat(attempts).hasValue(1);
+        assertThat(meterRegistry.get("gateway.hedges.sent").counter().count()).isZero();
+    }
+
+    @Test
+    void shouldIgnoreFailedHedge() {
+        RequestHedger hedger = new RequestHedger(meterRegistry, properties(true, 1.0));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedger.hedge("test", () -> attempts.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(300)).thenReturn("attempt 1")
+                : Mono.<String>error(new IllegalStateException("instance down")))
+            .block(Duration.ofSeconds(5));
+
+        assertThat(result).isEqualTo("attempt 1");
+        assertThat(meterRegistry.get("gateway.hedges.won").counter().count()).isZero();
+    }
+
+    @Test
+    void shouldShareTriedInstancesBetweenAttempts() {
+        RequestHedger hedger = new RequestHedger(meterRegistry, properties(true, 1.0));
+        AtomicInteger attempts = new AtomicInteger();
+        List<TriedInstances> tried = new CopyOnWriteArrayList<>();
+
+        hedger.hedge("test", () -> Mono.deferContextual(context -> {
+            tried.add(context.get(TriedInstances.KEY));
+            return slowThenFast(attempts);
+        })).block(Duration.ofSeconds(5));
+        hedger.hedge("test", () -> Mono.deferContextual(context -> {
+            tried.add(context.get(TriedInstances.KEY));
+            return Mono.just("attempt");
+        })).block(Duration.ofSeconds(5));
+
+        assertThat(tried).hasSize(3);
+        assertThat(tried.get(1)).isSameAs(tried.get(0));
+        assertThat(tried.get(2)).isNotSameAs(tried.get(0));
+    }
+
+    @Test
+    void budgetShouldAllowRatioOfRequests() {
+        RequestHedger.HedgeBudget budget = new RequestHedger.HedgeBudget(0.25, 10);
+
+        int hedges = 0;
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+            if (budget.tryWithdraw()) {
+                hedges++;
+            }
+        }
+
+        assertThat(hedges).isEqualTo(25);
+    }
+
+    private static Mono<String> slowThenFast(AtomicInteger attempts) {
+        int attempt = attempts.incrementAndGet();
+        Duration latency = attempt == 1 ? Duration.ofSeconds(2) : Duration.ofMillis(10);
+        return Mono.delay(latency).thenReturn("attempt " + attempt);
+    }
+
+    private static HedgingProperties properties(boolean enabled, double budgetRatio) {
+        return new HedgingProperties(enabled, 0.95, Duration.ofMillis(50), Duration.ofMillis(50), 0, budgetRatio, 10);
+    }
+}
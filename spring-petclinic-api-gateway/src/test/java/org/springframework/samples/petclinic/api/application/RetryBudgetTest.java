@@ -0,0 +1,126 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.api.system.RetryBudgetProperties;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryBudgetTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldAllowRetriesUpToPercentOfRequests() {
+        RetryBudget budget = new RetryBudget(meterRegistry, properties(true, 0));
+        for (int i = 0; i < 10; i++) {
+            budget.request("visits-service", 0);
+        }
+
+        assertThat(budget.tryRetry("visits-service", 0)).isTrue();
+        assertThat(budget.tryRetry("visits-service", 0)).isTrue();
+        assertThat(budget.tryRetry("visits-service", 0)).isFalse();
+        assertThat(meterRegistry.get("gateway.retries").tag("name", "visits-service").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("gateway.retries.exhausted").tag("name", "visits-service").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void shouldAllowMinimumRetriesWithoutRequests() {
+        RetryBudget budget = new RetryBudget(meterRegistry, properties(true, 1));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(budget.tryRetry("customers-service", 0)).isTrue();
+        }
+        assertThat(budget.tryRetry("customers-service", 0)).isFalse();
+    }
+
+    @Test
+    void shouldForgetRequestsAndRetriesOutsideWindow() {
+        RetryBudget budget = new RetryBudget(meterRegistry, properties(true, 0));
+        for (int i = 0; i < 5; i++) {
+            budget.request("visits-service", 0);
+        }
+        assertThat(budget.tryRetry("visits-service", 0)).isTrue();
+        assertThat(budget.tryRetry("visits-service", 0)).isFalse();
+
+        assertThat(budget.tryRetry("visits-service", 10 * SECOND)).isFalse();
+        for (int i = 0; i < 5; i++) {
+            budget.request("visits-service", 10 * SECOND);
+        }
+        assertThat(budget.tryRetry("visits-service", 10 * SECOND)).isTrue();
+    }
+
+    @Test
+    void shouldKeepOneBudgetPerName() {
+        RetryBudget budget = new RetryBudget(meterRegistry, properties(true, 0));
+        for (int i = 0; i < 5; i++) {
+            budget.request("visits-service", 0);
+        }
+
+        assertThat(budget.tryRetry("customers-service", 0)).isFalse();
+        assertThat(budget.tryRetry("visits-service", 0)).isTrue();
+    }
+
+    @Test
+    void shouldOnlyCountRetriesWhenDisabled() {
+        RetryBudget budget = new RetryBudget(meterRegistry, properties(false, 0));
+
+        assertThat(budget.tryRetry("visits-service", 0)).isTrue();
+        assertThat(meterRegistry.get("gateway.retries").tag("name", "visits-service").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotRetryClientCallOnceBudgetIsSpent() {
+        RetryBudget budget = new RetryBudget(meterRegistry, properties(true, 0));
+        AtomicInteger calls = new AtomicInteger();
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                calls.incrementAndGet();
+                return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+            })
+            .build();
+        Mono<String> call = webClient.get().uri("http://visits-service/pets/visits").retrieve().bodyToMono(String.class);
+
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> budget.retry("visits-service", call).block())
+                .isInstanceOf(WebClientResponseException.ServiceUnavailable.class);
+        }
+
+        // 5 requests allow one retry at 20%
+        assertThat(calls).hasValue(6);
+    }
+
+    @Test
+    void shouldNotRetryClientErrors() {
+        RetryBudget budget = new RetryBudget(meterRegistry, properties(true, 1));
+        AtomicInteger calls = new AtomicInteger();
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                calls.incrementAndGet();
+                return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+            })
+            .build();
+
+        assertThatThrownBy(() -> budget.retry("customers-service",
+            webClient.get().uri("http://customers-service/owners/1").retrieve().bodyToMono(String.class)).block())
+            .isInstanceOf(WebClientResponseException.NotFound.class);
+        assertThat(calls).hasValue(1);
+    }
+
+    private static RetryBudgetProperties properties(boolean enabled, int minRetriesPerSecond) {
+        return new RetryBudgetProperties(enabled, 20, minRetriesPerSecond, Duration.ofSeconds(10), 1);
+    }
+}
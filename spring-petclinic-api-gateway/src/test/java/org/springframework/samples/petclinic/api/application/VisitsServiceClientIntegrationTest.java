@@ -1,15 +1,19 @@
 package org.springframework.samples.petclinic.api.application;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.HedgingProperties;
+import org.springframework.samples.petclinic.api.system.RetryBudgetProperties;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.function.Consumer;
 
@@ -27,7 +31,9 @@ class VisitsServiceClientIntegrationTest {
     @BeforeEach
     void setUp() {
         server = new MockWebServer();
-        visitsServiceClient = new VisitsServiceClient(WebClient.builder());
+        visitsServiceClient = new VisitsServiceClient(WebClient.create(), new RequestHedger(new SimpleMeterRegistry(),
+            new HedgingProperties(false, 0.95, Duration.ofMillis(20), Duration.ofSeconds(2), 100, 0.1, 10)),
+            new RetryBudget(new SimpleMeterRegistry(), new RetryBudgetProperties(true, 20, 1, Duration.ofSeconds(10), 1)));
         visitsServiceClient.setHostname(server.url("/").toString());
     }
 
@@ -47,6 +53,31 @@ class VisitsServiceClientIntegrationTest {
         assertVisitDescriptionEquals(visits.block(), PET_ID,"test visit");
     }
 
+    @Test
+    void getVisitsForPets_groupedByPetId() throws InterruptedException {
+        prepareResponse(response -> response
+            .setHeader("Content-Type", "application/json")
+            .setBody("{\"byPetId\":{\"1\":[{\"id\":5,\"date\":\"2018-11-15\",\"description\":\"test visit\",\"petId\":1}]}}"));
+
+        Visits visits = visitsServiceClient.getVisitsForPets(Collections.singletonList(1)).block();
+
+        assertEquals("/pets/visits?petId=1&groupBy=petId", server.takeRequest().getPath());
+        assertNotNull(visits);
+        assertEquals("test visit", visits.byPetId().get(PET_ID).get(0).description());
+    }
+
+    @Test
+    void getVisitsForPets_retriedWhenVisitsServiceUnavailable() {
+        prepareResponse(response -> response.setResponseCode(503));
+        prepareResponse(response -> response
+            .setHeader("Content-Type", "application/json")
+            .setBody("{\"items\":[{\"id\":5,\"date\":\"2018-11-15\",\"description\":\"test visit\",\"petId\":1}]}"));
+
+        Visits visits = visitsServiceClient.getVisitsForPets(Collections.singletonList(1)).block();
+
+        assertVisitDescriptionEquals(visits, PET_ID, "test visit");
+        assertEquals(2, server.getRequestCount());
+    }
 
     private void assertVisitDescriptionEquals(Visits visits, int petId, String description) {
         assertEquals(1, visits.items().size());
@@ -1,5 +1,7 @@
 package org.springframework.samples.petclinic.api.boundary.web;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
@@ -8,21 +10,36 @@ import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JAutoConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
 import org.springframework.samples.petclinic.api.application.CustomersServiceClient;
+import org.springframework.samples.petclinic.api.application.LatencySloRecorder;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.samples.petclinic.api.application.PeerCache;
+import org.springframework.samples.petclinic.api.application.RequestCoalescer;
+import org.springframework.samples.petclinic.api.application.StaleVisitsCache;
 import org.springframework.samples.petclinic.api.application.VisitsServiceClient;
 import org.springframework.samples.petclinic.api.dto.*;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBusAutoConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @ExtendWith(SpringExtension.class)
 @WebFluxTest(controllers = ApiGatewayController.class)
-@Import({ReactiveResilience4JAutoConfiguration.class, CircuitBreakerConfiguration.class})
+@Import({ReactiveResilience4JAutoConfiguration.class, CircuitBreakerConfiguration.class, OwnerDetailsCache.class,
+    RequestCoalescer.class, StaleVisitsCache.class, LatencySloRecorder.class, SimpleMeterRegistry.class, RateLimitKeys.class,
+    PeerCache.class, InvalidationBusAutoConfiguration.class})
 class ApiGatewayControllerTest {
 
     @MockBean
@@ -31,9 +48,20 @@ class ApiGatewayControllerTest {
     @MockBean
     private VisitsServiceClient visitsServiceClient;
 
+    @Autowired
+    private OwnerDetailsCache ownerDetailsCache;
+
+    @Autowired
+    private StaleVisitsCache staleVisitsCache;
+
     @Autowired
     private WebTestClient client;
 
+    @BeforeEach
+    void clearCache() {
+        ownerDetailsCache.invalidateAll();
+        staleVisitsCache.invalidateAll();
+    }
 
     @Test
     void getOwnerDetails_withAvailableVisitsService() {
@@ -64,6 +92,40 @@ class ApiGatewayControllerTest {
             .jsonPath("$.pets[0].visits[0].description").isEqualTo("First visit");
     }
 
+    @Test
+    void getOwnerDetails_servedFromCacheUntilInvalidated() {
+        PetDetails cat = PetDetails.PetDetailsBuilder.aPetDetails()
+            .id(20)
+            .name("Garfield")
+            .visits(new ArrayList<>())
+            .build();
+        OwnerDetails owner = OwnerDetails.OwnerDetailsBuilder.anOwnerDetails()
+            .id(1)
+            .pets(List.of(cat))
+            .build();
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenReturn(Mono.just(owner));
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.singletonList(cat.id())))
+            .thenReturn(Mono.just(new Visits(List.of())));
+
+        for (int i = 0; i < 2; i++) {
+            client.get()
+                .uri("/api/gateway/owners/1")
+                .exchange()
+                .expectStatus().isOk();
+        }
+        Mockito.verify(customersServiceClient, Mockito.times(1)).getOwner(1);
+
+        ownerDetailsCache.invalidate(1);
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .expectStatus().isOk();
+        Mockito.verify(customersServiceClient, Mockito.times(2)).getOwner(1);
+    }
+
     /**
      * Test Resilience4j fallback method
      */
@@ -94,4 +156,121 @@ class ApiGatewayControllerTest {
             .jsonPath("$.pets[0].visits").isEmpty();
     }
 
+    @Test
+    void getOwnerDetails_withServiceErrorServesLastKnownVisits() {
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenAnswer(invocation -> Mono.just(OwnerDetails.OwnerDetailsBuilder.anOwnerDetails()
+                .id(1)
+                .pets(List.of(PetDetails.PetDetailsBuilder.aPetDetails()
+                    .id(20)
+                    .name("Garfield")
+                    .visits(new ArrayList<>())
+                    .build()))
+                .build()));
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.singletonList(20)))
+            .thenReturn(Mono.just(new Visits(List.of(new VisitDetails(300, 20, null, "First visit")))))
+            .thenReturn(Mono.error(new ConnectException("Simulate error")));
+
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist(ApiGatewayController.STALE_VISITS_AGE_HEADER);
+
+        ownerDetailsCache.invalidate(1);
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals(ApiGatewayController.STALE_VISITS_AGE_HEADER, "0")
+            .expectBody()
+            .jsonPath("$.pets[0].visits[0].description").isEqualTo("First visit");
+
+        // the stale visits were revalidated in the background
+        Mockito.verify(visitsServiceClient, Mockito.timeout(1000).times(3)).getVisitsForPets(Collections.singletonList(20));
+    }
+
+    @Test
+    void getOwnersDetails_withOneMissingOwner() {
+        PetDetails cat = PetDetails.PetDetailsBuilder.aPetDetails()
+            .id(20)
+            .name("Garfield")
+            .visits(new ArrayList<>())
+            .build();
+        PetDetails dog = PetDetails.PetDetailsBuilder.aPetDetails()
+            .id(21)
+            .name("Odie")
+            .visits(new ArrayList<>())
+            .build();
+        OwnerDetails jon = OwnerDetails.OwnerDetailsBuilder.anOwnerDetails()
+            .id(1)
+            .pets(List.of(cat))
+            .build();
+        OwnerDetails liz = OwnerDetails.OwnerDetailsBuilder.anOwnerDetails()
+            .id(2)
+            .pets(List.of(dog))
+            .build();
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenReturn(Mono.just(jon));
+        Mockito
+            .when(customersServiceClient.getOwner(2))
+            .thenReturn(Mono.just(liz));
+        Mockito
+            .when(customersServiceClient.getOwner(3))
+            .thenReturn(Mono.error(WebClientResponseException.create(404, "Not Found", null, null, null)));
+
+        Visits visits = new Visits(List.of(
+            new VisitDetails(300, cat.id(), null, "First visit"),
+            new VisitDetails(301, dog.id(), null, "Second visit")));
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(List.of(cat.id(), dog.id())))
+            .thenReturn(Mono.just(visits));
+
+        client.get()
+            .uri("/api/gateway/owners?ids=1,2,3")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.owners[0].pets[0].visits[0].description").isEqualTo("First visit")
+            .jsonPath("$.owners[1].pets[0].visits[0].description").isEqualTo("Second visit")
+            .jsonPath("$.failures[0].ownerId").isEqualTo(3)
+            .jsonPath("$.failures[0].reason").isEqualTo("Owner not found");
+
+        Mockito.verify(visitsServiceClient, Mockito.times(1)).getVisitsForPets(Mockito.anyList());
+    }
+
+    @Test
+    void getOwnersDetails_withTooManyOwners() {
+        String ids = IntStream.rangeClosed(1, ApiGatewayController.MAX_BATCH_SIZE + 1)
+            .mapToObj(Integer::toString)
+            .collect(Collectors.joining(","));
+
+        client.get()
+            .uri("/api/gateway/owners?ids=" + ids)
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+
+    @Test
+    void streamOwners_relaysNdjsonChunks() {
+        DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+        Mockito
+            .when(customersServiceClient.streamOwners())
+            .thenReturn(Flux.just(
+                bufferFactory.wrap("{\"id\":1,\"firstName\":\"George\"}\n{\"id\":2,".getBytes(StandardCharsets.UTF_8)),
+                bufferFactory.wrap("\"firstName\":\"Betty\"}\n".getBytes(StandardCharsets.UTF_8))));
+
+        client.get()
+            .uri("/api/gateway/owners/stream")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .expectBody(String.class)
+            .isEqualTo("{\"id\":1,\"firstName\":\"George\"}\n{\"id\":2,\"firstName\":\"Betty\"}\n");
+    }
 }
@@ -0,0 +1,106 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory.RetryConfig;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.RetryBudget;
+import org.springframework.samples.petclinic.api.system.RetryBudgetProperties;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BudgetedRetryGatewayFilterFactoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void shouldRetryWithinBudget() {
+        GatewayFilter filter = filter(1);
+
+        filter.filter(post(), unavailable()).block();
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void shouldStopRetryingOnceBudgetIsSpent() {
+        GatewayFilter filter = filter(0);
+
+        for (int i = 0; i < 5; i++) {
+            filter.filter(post(), unavailable()).block();
+        }
+
+        // 5 requests allow one retry at 20%
+        assertThat(calls).hasValue(6);
+        assertThat(meterRegistry.get("gateway.retries.exhausted").tag("name", "customers-service").counter().count())
+            .isEqualTo(4);
+    }
+
+    @Test
+    void shouldNotSpendBudgetOnSuccessfulRequests() {
+        GatewayFilter filter = filter(0);
+
+        for (int i = 0; i < 5; i++) {
+            filter.filter(post(), exchange -> Mono.fromRunnable(() -> {
+                calls.incrementAndGet();
+                exchange.getResponse().setStatusCode(HttpStatus.CREATED);
+            })).block();
+        }
+        filter.filter(post(), unavailable()).block();
+
+        assertThat(calls).hasValue(7);
+        assertThat(meterRegistry.find("gateway.retries.exhausted").counter().count()).isZero();
+    }
+
+    @Test
+    void shouldNotSpendBudgetOnBulkheadRejections() {
+        GatewayFilter filter = filter(0);
+
+        for (int i = 0; i < 5; i++) {
+            filter.filter(post(), exchange -> Mono.fromRunnable(() -> {
+                calls.incrementAndGet();
+                exchange.getAttributes().put(BulkheadFilter.REJECTED_ATTR, true);
+                exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            })).block();
+        }
+        filter.filter(post(), unavailable()).block();
+
+        assertThat(calls).hasValue(7);
+        assertThat(meterRegistry.find("gateway.retries.exhausted").counter().count()).isZero();
+    }
+
+    private GatewayFilter filter(int minRetriesPerSecond) {
+        RetryBudget retryBudget = new RetryBudget(meterRegistry,
+            new RetryBudgetProperties(true, 20, minRetriesPerSecond, Duration.ofSeconds(10), 1));
+        RetryConfig config = new RetryConfig()
+            .setRetries(1)
+            .setStatuses(HttpStatus.SERVICE_UNAVAILABLE)
+            .setMethods(HttpMethod.POST)
+            .setBackoff(null);
+        config.setRouteId("customers-service");
+        return new BudgetedRetryGatewayFilterFactory(retryBudget).apply(config);
+    }
+
+    // the retry filter subscribes again to the Mono of the chain
+    private GatewayFilterChain unavailable() {
+        return exchange -> Mono.fromRunnable(() -> {
+            calls.incrementAndGet();
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        });
+    }
+
+    private static MockServerWebExchange post() {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/owners"));
+    }
+}
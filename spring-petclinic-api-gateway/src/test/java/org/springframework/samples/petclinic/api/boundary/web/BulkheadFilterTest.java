@@ -0,0 +1,118 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class BulkheadFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+        .maxConcurrentCalls(1)
+        .maxWaitDuration(Duration.ZERO)
+        .build());
+
+    private final BulkheadFilter filter = new BulkheadFilter(bulkheadRegistry, meterRegistry,
+        gatewayProperties(List.of("CircuitBreaker=defaultCircuitBreaker", "BudgetedRetry")));
+
+    @Test
+    void shouldRejectWhenBulkheadOfRouteIsFull() {
+        Disposable slowCall = filter.filter(exchange("genai-service"), pending()).subscribe();
+
+        assertThatThrownBy(() -> filter.filter(exchange("genai-service"), completed()).block())
+            .isInstanceOf(BulkheadFullException.class);
+        assertThat(meterRegistry.get("gateway.bulkhead.rejected").tag("route", "genai-service").counter().count())
+            .isEqualTo(1);
+
+        slowCall.dispose();
+    }
+
+    @Test
+    void shouldMarkRejectedRequests() {
+        Disposable slowCall = filter.filter(exchange("genai-service"), pending()).subscribe();
+        MockServerWebExchange rejected = exchange("genai-service");
+
+        assertThatThrownBy(() -> filter.filter(rejected, completed()).block())
+            .isInstanceOf(BulkheadFullException.class);
+        assertThat(rejected.getAttributes()).containsEntry(BulkheadFilter.REJECTED_ATTR, true);
+
+        slowCall.dispose();
+    }
+
+    @Test
+    void shouldRunInsideTheCircuitBreakers() {
+        assertThat(filter.getOrder()).isEqualTo(2);
+
+        GatewayProperties properties = gatewayProperties(List.of("BudgetedRetry", "CircuitBreaker=defaultCircuitBreaker"));
+        RouteDefinition genai = new RouteDefinition("genai-service=lb://genai-service,Path=/api/genai/**");
+        genai.setFilters(List.of(new FilterDefinition("StripPrefix=2"),
+            new FilterDefinition("CircuitBreaker=genaiCircuitBreaker"), new FilterDefinition("AddRequestHeader=X-A,b")));
+        properties.setRoutes(List.of(genai));
+
+        assertThat(BulkheadFilter.orderInsideCircuitBreakers(properties)).isEqualTo(3);
+    }
+
+    @Test
+    void shouldRequireACircuitBreaker() {
+        assertThatThrownBy(() -> new BulkheadFilter(bulkheadRegistry, meterRegistry, gatewayProperties(List.of("BudgetedRetry"))))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldNotAffectOtherRoutes() {
+        Disposable slowCall = filter.filter(exchange("genai-service"), pending()).subscribe();
+
+        filter.filter(exchange("vets-service"), completed()).block();
+        filter.filter(exchange("vets-service"), completed()).block();
+
+        slowCall.dispose();
+    }
+
+    @Test
+    void shouldReleasePermitWhenRequestCompletesOrIsCancelled() {
+        filter.filter(exchange("vets-service"), completed()).block();
+        filter.filter(exchange("vets-service"), pending()).subscribe().dispose();
+
+        assertThat(bulkheadRegistry.bulkhead("vets-service").getMetrics().getAvailableConcurrentCalls()).isEqualTo(1);
+    }
+
+    private static GatewayProperties gatewayProperties(List<String> defaultFilters) {
+        GatewayProperties properties = new GatewayProperties();
+        properties.setDefaultFilters(defaultFilters.stream().map(FilterDefinition::new).toList());
+        return properties;
+    }
+
+    private static MockServerWebExchange exchange(String routeId) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/" + routeId));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR,
+            Route.async().id(routeId).uri("lb://" + routeId).predicate(it -> true).build());
+        return exchange;
+    }
+
+    private static GatewayFilterChain pending() {
+        return exchange -> Mono.never();
+    }
+
+    private static GatewayFilterChain completed() {
+        return exchange -> Mono.empty();
+    }
+}
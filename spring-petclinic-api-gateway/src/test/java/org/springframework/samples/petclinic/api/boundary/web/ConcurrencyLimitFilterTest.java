@@ -0,0 +1,82 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.ConcurrencyLimiter;
+import org.springframework.samples.petclinic.api.system.ConcurrencyLimitProperties;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class ConcurrencyLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(new ConcurrencyLimiter(meterRegistry,
+        new ConcurrencyLimitProperties(true, 20, 2, 200, 1.5, 0.2, 0.9)));
+
+    @Test
+    void shouldBackOffWhenTheServiceFails() {
+        filter.filter(exchange(), respond(HttpStatus.SERVICE_UNAVAILABLE)).block();
+
+        assertThat(limit()).isLessThan(20);
+    }
+
+    @Test
+    void shouldIgnoreRequestsRejectedByTheBulkhead() {
+        filter.filter(exchange(), exchange -> {
+            exchange.getAttributes().put(BulkheadFilter.REJECTED_ATTR, true);
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return Mono.empty();
+        }).block();
+
+        assertThat(limit()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldIgnoreBulkheadRejectionsWithoutFallback() {
+        filter.filter(exchange(), exchange -> {
+            exchange.getAttributes().put(BulkheadFilter.REJECTED_ATTR, true);
+            return Mono.error(new IllegalStateException("bulkhead full"));
+        }).onErrorComplete().block();
+
+        assertThat(limit()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldRejectRequestsAboveTheLimit() {
+        for (int i = 0; i < 20; i++) {
+            filter.filter(exchange(), exchange -> Mono.never()).subscribe();
+        }
+        MockServerWebExchange rejected = exchange();
+
+        filter.filter(rejected, respond(HttpStatus.OK)).block();
+
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(rejected.getResponse().getHeaders().getFirst("Retry-After")).isEqualTo("1");
+    }
+
+    private double limit() {
+        return meterRegistry.get("gateway.concurrency.limit").tag("name", "vets-service").gauge().value();
+    }
+
+    private static MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR,
+            Route.async().id("vets-service").uri("lb://vets-service").predicate(it -> true).build());
+        return exchange;
+    }
+
+    private static GatewayFilterChain respond(HttpStatus status) {
+        return exchange -> {
+            exchange.getResponse().setStatusCode(status);
+            return Mono.empty();
+        };
+    }
+}
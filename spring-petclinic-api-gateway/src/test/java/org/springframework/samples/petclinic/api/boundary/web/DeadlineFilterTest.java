@@ -0,0 +1,99 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.Deadline;
+import org.springframework.samples.petclinic.api.system.DeadlineProperties;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DeadlineFilterTest {
+
+    private final DeadlineFilter filter = new DeadlineFilter(new DeadlineProperties(true, Duration.ofSeconds(10)));
+
+    private final AtomicReference<ServerWebExchange> forwarded = new AtomicReference<>();
+
+    @Test
+    void shouldSetDeadlineAfterTimeout() {
+        long now = System.currentTimeMillis();
+
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets")), this::forward).block();
+
+        assertThat(deadlineHeader()).isCloseTo(now + 10_000, within(1_000L));
+    }
+
+    @Test
+    void shouldKeepEarlierDeadlineOfClient() {
+        long deadline = System.currentTimeMillis() + 2_000;
+        MockServerHttpRequest request = MockServerHttpRequest.get("/api/vet/vets")
+            .header(Deadline.HEADER, String.valueOf(deadline))
+            .build();
+
+        filter.filter(MockServerWebExchange.from(request), this::forward).block();
+
+        assertThat(deadlineHeader()).isEqualTo(deadline);
+    }
+
+    @Test
+    void shouldReplaceLaterOrInvalidDeadlineOfClient() {
+        long now = System.currentTimeMillis();
+        for (String deadline : new String[] {String.valueOf(Long.MAX_VALUE), "tomorrow"}) {
+            MockServerHttpRequest request = MockServerHttpRequest.get("/api/vet/vets")
+                .header(Deadline.HEADER, deadline)
+                .build();
+
+            filter.filter(MockServerWebExchange.from(request), this::forward).block();
+
+            assertThat(deadlineHeader()).isCloseTo(now + 10_000, within(1_000L));
+        }
+    }
+
+    @Test
+    void shouldNotLimitStreams() {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/api/customer/owners/stream")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .build();
+
+        filter.filter(MockServerWebExchange.from(request), this::forward).block();
+
+        assertThat(forwarded.get().getRequest().getHeaders().containsKey(Deadline.HEADER)).isFalse();
+    }
+
+    @Test
+    void shouldSendDeadlineWithWebClientCalls() {
+        AtomicReference<String> sent = new AtomicReference<>();
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                sent.set(request.headers().getFirst(Deadline.HEADER));
+                return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+            })
+            .filter(Deadline.exchangeFilter())
+            .build();
+
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/api/gateway/owners/1")),
+            exchange -> webClient.get().uri("http://customers-service/owners/1").retrieve().toBodilessEntity().then()
+                .doOnSubscribe(subscription -> forwarded.set(exchange))).block();
+
+        assertThat(sent.get()).isEqualTo(forwarded.get().getRequest().getHeaders().getFirst(Deadline.HEADER));
+    }
+
+    private Mono<Void> forward(ServerWebExchange exchange) {
+        forwarded.set(exchange);
+        return Mono.empty();
+    }
+
+    private long deadlineHeader() {
+        return Long.parseLong(forwarded.get().getRequest().getHeaders().getFirst(Deadline.HEADER));
+    }
+}
@@ -0,0 +1,109 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.system.ETagProperties;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ETagFilterTest {
+
+    private static final String VETS = "[{\"id\":1,\"firstName\":\"James\"}]";
+
+    private final ETagFilter filter = new ETagFilter(new ETagProperties(List.of("/api/vet/vets", "/api/gateway/owners/**")));
+
+    @Test
+    void shouldAddETagToConfiguredPath() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets"));
+
+        filter.filter(exchange, respondWith(VETS, MediaType.APPLICATION_JSON)).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.getETag()).startsWith("W/\"0").endsWith("\"");
+        assertThat(headers.getCacheControl()).isEqualTo("no-cache");
+        assertThat(headers.getContentLength()).isEqualTo(VETS.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(VETS);
+    }
+
+    @Test
+    void shouldAnswerNotModifiedWhenETagMatches() {
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets"));
+        filter.filter(first, respondWith(VETS, MediaType.APPLICATION_JSON)).block();
+        String etag = first.getResponse().getHeaders().getETag();
+
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets")
+            .ifNoneMatch(etag));
+        filter.filter(second, respondWith(VETS, MediaType.APPLICATION_JSON)).block();
+
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(second.getResponse().getHeaders().getETag()).isEqualTo(etag);
+        assertThat(second.getResponse().getBodyAsString().block()).isEmpty();
+    }
+
+    @Test
+    void shouldAnswerNotModifiedWhateverTheContentCoding() {
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets"));
+        filter.filter(first, respondWith(VETS, MediaType.APPLICATION_JSON)).block();
+        String etag = first.getResponse().getHeaders().getETag();
+
+        MockServerWebExchange gzipped = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+            .ifNoneMatch(etag));
+        filter.filter(gzipped, respondWith(VETS, MediaType.APPLICATION_JSON)).block();
+        // a strong tag given out before, or a cache that dropped the weakness indicator
+        MockServerWebExchange strong = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+            .ifNoneMatch(etag.substring(2)));
+        filter.filter(strong, respondWith(VETS, MediaType.APPLICATION_JSON)).block();
+
+        assertThat(gzipped.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(gzipped.getResponse().getHeaders().getETag()).isEqualTo(etag);
+        assertThat(strong.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void shouldSendBodyWhenContentChanged() {
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets"));
+        filter.filter(first, respondWith(VETS, MediaType.APPLICATION_JSON)).block();
+        String etag = first.getResponse().getHeaders().getETag();
+
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets")
+            .ifNoneMatch(etag));
+        filter.filter(second, respondWith("[]", MediaType.APPLICATION_JSON)).block();
+
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getResponse().getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("[]");
+    }
+
+    @Test
+    void shouldIgnoreOtherPathsAndStreams() {
+        MockServerWebExchange other = MockServerWebExchange.from(MockServerHttpRequest.get("/api/customer/owners"));
+        filter.filter(other, respondWith("[]", MediaType.APPLICATION_JSON)).block();
+        MockServerWebExchange stream = MockServerWebExchange.from(MockServerHttpRequest.get("/api/gateway/owners/stream"));
+        filter.filter(stream, respondWith("{}\n", MediaType.APPLICATION_NDJSON)).block();
+
+        assertThat(other.getResponse().getHeaders().getETag()).isNull();
+        assertThat(stream.getResponse().getHeaders().getETag()).isNull();
+        assertThat(stream.getResponse().getBodyAsString().block()).isEqualTo("{}\n");
+    }
+
+    private static WebFilterChain respondWith(String body, MediaType contentType) {
+        return exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setContentType(contentType);
+            return exchange.getResponse().writeWith(Mono.just(
+                DefaultDataBufferFactory.sharedInstance.wrap(body.getBytes(StandardCharsets.UTF_8))));
+        };
+    }
+}
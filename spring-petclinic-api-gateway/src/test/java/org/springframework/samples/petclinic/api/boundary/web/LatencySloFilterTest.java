@@ -0,0 +1,114 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.DownstreamTimer;
+import org.springframework.samples.petclinic.api.application.LatencySloRecorder;
+import org.springframework.samples.petclinic.api.system.LatencySloProperties;
+import org.springframework.samples.petclinic.api.system.LatencySloProperties.Objective;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class LatencySloFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final LatencySloFilter filter = new LatencySloFilter(new LatencySloRecorder(meterRegistry,
+        new LatencySloProperties(new Objective(Duration.ofMillis(500), 0.99), Map.of(),
+            List.of(Duration.ofMillis(100)), List.of(Duration.ofMinutes(5)))));
+
+    @Test
+    void shouldRecordRouteWithDownstreamTime() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets"));
+
+        filter.filter(exchange, routed -> {
+            routed.getAttributes().put(GATEWAY_ROUTE_ATTR, route("vets-service"));
+            DownstreamTimer timer = routed.getAttribute(DownstreamTimer.KEY);
+            timer.start();
+            return Mono.delay(Duration.ofMillis(20)).doFinally(signal -> timer.stop()).then();
+        }).block();
+
+        assertThat(meterRegistry.get("gateway.requests").tags("scope", "route", "name", "vets-service", "outcome", "SUCCESS")
+            .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.requests.downstream").tags("name", "vets-service").timer().totalTime(TimeUnit.MILLISECONDS))
+            .isGreaterThanOrEqualTo(20);
+        assertThat(meterRegistry.get("gateway.requests.overhead").tags("name", "vets-service").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRecordControllerEndpointByMethodName() throws NoSuchMethodException {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/gateway/owners/1"));
+        HandlerMethod handler = new HandlerMethod(new Object(), ApiGatewayController.class.getMethod("getOwnerDetails", int.class));
+
+        filter.filter(exchange, handled -> {
+            handled.getAttributes().put(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, handler);
+            return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE));
+        }).onErrorComplete().block();
+
+        assertThat(meterRegistry.get("gateway.requests").tags("scope", "endpoint", "name", "getOwnerDetails", "outcome", "SERVER_ERROR")
+            .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.slo.burn.rate").tags("name", "getOwnerDetails", "window", "5m").gauge().value())
+            .isCloseTo(100.0, offset(0.001));
+    }
+
+    @Test
+    void shouldIgnoreOtherRequests() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/scripts/app.js"));
+
+        filter.filter(exchange, handled -> handled.getResponse().setComplete()).block();
+
+        assertThat(meterRegistry.find("gateway.requests").timers()).isEmpty();
+    }
+
+    @Test
+    void shouldIgnoreStreams() throws NoSuchMethodException {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/gateway/owners/stream")
+            .accept(MediaType.APPLICATION_NDJSON));
+        HandlerMethod handler = new HandlerMethod(new Object(), ApiGatewayController.class.getMethod("streamOwners"));
+
+        filter.filter(exchange, handled -> {
+            handled.getAttributes().put(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, handler);
+            return Mono.delay(Duration.ofMillis(600)).then();
+        }).block();
+
+        assertThat(meterRegistry.find("gateway.requests").timers()).isEmpty();
+    }
+
+    @Test
+    void shouldRecordCancelledRequests() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets"));
+
+        Disposable request = filter.filter(exchange, routed -> {
+            routed.getAttributes().put(GATEWAY_ROUTE_ATTR, route("vets-service"));
+            return Mono.never();
+        }).subscribe();
+        request.dispose();
+
+        assertThat(meterRegistry.get("gateway.requests").tags("scope", "route", "name", "vets-service",
+            "outcome", LatencySloRecorder.CANCELLED).timer().count()).isEqualTo(1);
+        // cancelled well within the objective
+        assertThat(meterRegistry.get("gateway.slo.burn.rate").tags("name", "vets-service", "window", "5m").gauge().value())
+            .isZero();
+    }
+
+    private static Route route(String id) {
+        return Route.async().id(id).uri("lb://" + id).predicate(exchange -> true).build();
+    }
+}
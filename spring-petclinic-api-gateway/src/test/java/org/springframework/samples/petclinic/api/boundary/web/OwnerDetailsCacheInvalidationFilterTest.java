@@ -0,0 +1,101 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.samples.petclinic.api.application.PeerCache;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.system.OwnerDetailsCacheProperties;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Invalidation;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OwnerDetailsCacheInvalidationFilterTest {
+
+    private final OwnerDetailsCache ownerDetailsCache = new OwnerDetailsCache(new OwnerDetailsCacheProperties(100, Duration.ofMinutes(10)));
+
+    private final PeerCache peerCache = Mockito.mock(PeerCache.class);
+
+    private final InvalidationBus invalidationBus = Mockito.mock(InvalidationBus.class);
+
+    private final OwnerDetailsCacheInvalidationFilter filter =
+        new OwnerDetailsCacheInvalidationFilter(ownerDetailsCache, peerCache, invalidationBus);
+
+    @BeforeEach
+    void cacheOwners() {
+        cache(1, 10, 11);
+        cache(2, 20);
+    }
+
+    @Test
+    void shouldEvictOwnerWrittenThroughAnotherReplica() {
+        filter.onInvalidation(new Invalidation("owner-details", "1"));
+
+        assertThat(cached()).containsExactly(2);
+        Mockito.verify(peerCache).invalidateLocally("/api/gateway/owners/1");
+    }
+
+    @Test
+    void shouldEvictOwnerChangedInCustomersService() {
+        filter.onInvalidation(new Invalidation("owners", "2"));
+
+        assertThat(cached()).containsExactly(1);
+        Mockito.verify(peerCache).invalidateLocally("/api/gateway/owners/2");
+    }
+
+    @Test
+    void shouldEvictOwnerOfPetVisitedInVisitsService() {
+        filter.onInvalidation(new Invalidation("visits", "11"));
+
+        assertThat(cached()).containsExactly(2);
+        Mockito.verify(peerCache).invalidateLocally("/api/gateway/owners/1");
+        Mockito.verifyNoMoreInteractions(peerCache);
+    }
+
+    @Test
+    void shouldIgnoreOtherCachesAndInvalidKeys() {
+        filter.onInvalidation(new Invalidation("pets", "10"));
+        filter.onInvalidation(new Invalidation("owners", "George"));
+        filter.onInvalidation(new Invalidation("visits", "30"));
+
+        assertThat(cached()).containsExactly(1, 2);
+        Mockito.verifyNoInteractions(peerCache);
+    }
+
+    @Test
+    void shouldEvictOwnerAndPublishOnceWriteCompleted() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.put("/api/customer/owners/1"));
+
+        filter.filter(exchange, forwarded -> {
+            assertThat(cached()).containsExactly(2);
+            Mockito.verifyNoInteractions(invalidationBus);
+            return Mono.empty();
+        }).block();
+
+        Mockito.verify(invalidationBus).publish("owner-details", 1);
+    }
+
+    private void cache(int ownerId, int... petIds) {
+        List<PetDetails> pets = Arrays.stream(petIds)
+            .mapToObj(petId -> PetDetails.PetDetailsBuilder.aPetDetails().id(petId).visits(List.of()).build())
+            .toList();
+        ownerDetailsCache.put(ownerId, OwnerDetails.OwnerDetailsBuilder.anOwnerDetails().id(ownerId).pets(pets).build(),
+            ownerDetailsCache.startLoad());
+    }
+
+    private List<Integer> cached() {
+        return List.of(1, 2).stream()
+            .filter(ownerId -> ownerDetailsCache.get(ownerId).block() != null)
+            .toList();
+    }
+}
@@ -0,0 +1,46 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.samples.petclinic.api.application.PeerCache;
+
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeerCacheControllerTest {
+
+    private static final InetSocketAddress REPLICA = new InetSocketAddress("10.0.0.2", 40000);
+
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("192.0.2.1", 40000);
+
+    private final PeerCache peerCache = Mockito.mock(PeerCache.class);
+
+    private final PeerCacheController controller = new PeerCacheController(peerCache);
+
+    @Test
+    void shouldInvalidateKeysForReplicas() {
+        Mockito.when(peerCache.isPeer(REPLICA)).thenReturn(true);
+
+        assertThat(controller.invalidate("/api/gateway/owners/1", request(REPLICA)).getStatusCode())
+            .isEqualTo(HttpStatus.NO_CONTENT);
+
+        Mockito.verify(peerCache).invalidateLocally("/api/gateway/owners/1");
+    }
+
+    @Test
+    void shouldRejectInvalidationsFromOtherAddresses() {
+        assertThat(controller.invalidate("/api/gateway/owners/1", request(CLIENT)).getStatusCode())
+            .isEqualTo(HttpStatus.FORBIDDEN);
+
+        Mockito.verify(peerCache, Mockito.never()).invalidateLocally(Mockito.anyString());
+    }
+
+    private static MockServerHttpRequest request(InetSocketAddress remoteAddress) {
+        return MockServerHttpRequest.delete(PeerCache.INVALIDATE_PATH + "?key=/api/gateway/owners/1")
+            .remoteAddress(remoteAddress)
+            .build();
+    }
+}
@@ -0,0 +1,93 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.CapturedResponse;
+import org.springframework.samples.petclinic.api.application.PeerCache;
+import org.springframework.samples.petclinic.api.system.PeerCacheProperties;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+class PeerCacheFilterTest {
+
+    private static final InetSocketAddress REPLICA = new InetSocketAddress("10.0.0.2", 40000);
+
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("192.0.2.1", 40000);
+
+    private static final String KEY = "/api/gateway/owners/1";
+
+    private final PeerCache peerCache = Mockito.mock(PeerCache.class);
+
+    private final PeerCacheFilter filter = new PeerCacheFilter(peerCache, new PeerCacheProperties(true, "api-gateway",
+        List.of("/api/gateway/owners/{ownerId}"), 100, DataSize.ofMegabytes(1), Duration.ofMinutes(1),
+        DataSize.ofMegabytes(1), Duration.ofMinutes(1), 0.1, Duration.ofSeconds(1)));
+
+    private final AtomicInteger forwarded = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        CapturedResponse cached = new CapturedResponse(HttpStatus.OK, headers, "{}".getBytes(StandardCharsets.UTF_8));
+        Mockito.when(peerCache.isActive()).thenReturn(true);
+        Mockito.when(peerCache.isPeer(REPLICA)).thenReturn(true);
+        Mockito.when(peerCache.get(eq(KEY), any())).thenReturn(Mono.just(cached));
+        Mockito.when(peerCache.getLocally(eq(KEY), any())).thenReturn(Mono.just(cached));
+    }
+
+    @Test
+    void shouldServeReplicasLocally() {
+        filter.filter(exchange(REPLICA, true), exchange -> forward()).block();
+
+        Mockito.verify(peerCache).getLocally(eq(KEY), any());
+        assertThat(forwarded).hasValue(0);
+    }
+
+    @Test
+    void shouldServeClientsFromOwner() {
+        filter.filter(exchange(CLIENT, false), exchange -> forward()).block();
+
+        Mockito.verify(peerCache).get(eq(KEY), any());
+        assertThat(forwarded).hasValue(0);
+    }
+
+    @Test
+    void shouldNotTrustPeerHeaderFromOtherAddresses() {
+        filter.filter(exchange(CLIENT, true), exchange -> forward()).block();
+
+        Mockito.verify(peerCache, Mockito.never()).getLocally(any(), any());
+        Mockito.verify(peerCache, Mockito.never()).get(any(), any());
+        assertThat(forwarded).hasValue(1);
+    }
+
+    private static MockServerWebExchange exchange(InetSocketAddress remoteAddress, boolean peerHeader) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get(KEY)
+            .remoteAddress(remoteAddress)
+            .accept(MediaType.APPLICATION_JSON);
+        if (peerHeader) {
+            request.header(PeerCache.PEER_HEADER, "true");
+        }
+        return MockServerWebExchange.from(request);
+    }
+
+    private Mono<Void> forward() {
+        forwarded.incrementAndGet();
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,120 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.ServerTiming;
+import org.springframework.samples.petclinic.api.system.RateLimiterProperties;
+import org.springframework.samples.petclinic.api.system.ServerTimingProperties;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class ServerTimingFilterTest {
+
+    private final RateLimitKeys clientKeys = new RateLimitKeys(new RateLimiterProperties(1000, Duration.ofMinutes(10), 0));
+
+    private final AtomicReference<ServerWebExchange> forwarded = new AtomicReference<>();
+
+    @Test
+    void shouldTimeRequestsOfConfiguredClients() {
+        ServerTimingFilter filter = filter(true, List.of("10.0.0.1"), 0);
+        MockServerWebExchange exchange = exchange("10.0.0.1");
+
+        filter.filter(exchange, complete()).block();
+
+        assertThat(exchange.getResponse().getHeaders().getFirst(ServerTiming.HEADER))
+            .matches("total;dur=[0-9.]+, gateway;dur=[0-9.]+, downstream;dur=0\\.0");
+        assertThat(forwarded.get().getRequest().getHeaders().getFirst(ServerTiming.REQUEST_HEADER)).isEqualTo("true");
+    }
+
+    @Test
+    void shouldSampleRequestsOfOtherClients() {
+        MockServerWebExchange sampled = exchange("10.0.0.2");
+        MockServerWebExchange notSampled = exchange("10.0.0.2");
+
+        filter(true, List.of("10.0.0.1"), 100).filter(sampled, complete()).block();
+        filter(true, List.of("10.0.0.1"), 0).filter(notSampled, complete()).block();
+
+        assertThat(sampled.getResponse().getHeaders().containsKey(ServerTiming.HEADER)).isTrue();
+        assertThat(notSampled.getResponse().getHeaders().containsKey(ServerTiming.HEADER)).isFalse();
+    }
+
+    @Test
+    void shouldNotLetClientsAskServicesForTheirMetrics() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets")
+            .remoteAddress(new InetSocketAddress("10.0.0.1", 40000))
+            .header(ServerTiming.REQUEST_HEADER, "true"));
+
+        filter(false, List.of("10.0.0.1"), 100).filter(exchange, complete()).block();
+
+        assertThat(forwarded.get().getRequest().getHeaders().containsKey(ServerTiming.REQUEST_HEADER)).isFalse();
+        assertThat(exchange.getResponse().getHeaders().containsKey(ServerTiming.HEADER)).isFalse();
+    }
+
+    @Test
+    void shouldPrefixMetricsOfRoutedResponseWithRouteId() {
+        MockServerWebExchange exchange = exchange("10.0.0.1");
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR,
+            Route.async().id("vets-service").uri("lb://vets-service").predicate(it -> true).build());
+
+        filter(true, List.of("10.0.0.1"), 0).filter(exchange, routed -> {
+            routed.getResponse().getHeaders().add(ServerTiming.HEADER, "controller;dur=2.0, repository;dur=1.5;desc=\"1 call\"");
+            return routed.getResponse().setComplete();
+        }).block();
+
+        assertThat(exchange.getResponse().getHeaders().get(ServerTiming.HEADER)).singleElement().asString()
+            .endsWith(", vets-service.controller;dur=2.0, vets-service.repository;dur=1.5;desc=\"1 call\"");
+    }
+
+    @Test
+    void shouldMergeMetricsOfServicesCalledByWebClients() {
+        AtomicReference<String> requestHeader = new AtomicReference<>();
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                requestHeader.set(request.headers().getFirst(ServerTiming.REQUEST_HEADER));
+                return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(ServerTiming.HEADER, "controller;dur=4.0, serialization;dur=0.5")
+                    .build());
+            })
+            .filter(ServerTiming.exchangeFilter("customers-service"))
+            .build();
+        MockServerWebExchange exchange = exchange("10.0.0.1");
+
+        filter(true, List.of("10.0.0.1"), 0).filter(exchange, timed ->
+            webClient.get().uri("http://customers-service/owners/1").retrieve().toBodilessEntity()
+                .then(timed.getResponse().setComplete())).block();
+
+        assertThat(requestHeader.get()).isEqualTo("true");
+        assertThat(exchange.getResponse().getHeaders().getFirst(ServerTiming.HEADER))
+            .containsPattern("customers-service;dur=[0-9.]+, customers-service.controller;dur=4.0, customers-service.serialization;dur=0.5$");
+    }
+
+    private ServerTimingFilter filter(boolean enabled, List<String> clients, double samplePercentage) {
+        return new ServerTimingFilter(new ServerTimingProperties(enabled, clients, samplePercentage), clientKeys);
+    }
+
+    private static MockServerWebExchange exchange(String client) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/vet/vets")
+            .remoteAddress(new InetSocketAddress(client, 40000)));
+    }
+
+    private WebFilterChain complete() {
+        return exchange -> {
+            forwarded.set(exchange);
+            return exchange.getResponse().setComplete();
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StaticResourceCacheFilterTest {
+
+    private final StaticResourceCacheFilter filter = new StaticResourceCacheFilter();
+
+    @Test
+    void shouldMarkFingerprintedResourceAsImmutable() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/scripts/app-3358405f4db1f827debf0c8832741f6f.js"));
+
+        filter.filter(exchange, respondWith(HttpStatus.OK)).block();
+
+        assertThat(exchange.getResponse().getHeaders().getCacheControl())
+            .isEqualTo("max-age=31536000, public, immutable");
+    }
+
+    @Test
+    void shouldKeepCachePolicyOfPlainResource() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/scripts/app.js"));
+
+        filter.filter(exchange, respondWith(HttpStatus.OK)).block();
+
+        assertThat(exchange.getResponse().getHeaders().getCacheControl()).isEqualTo("no-cache");
+    }
+
+    @Test
+    void shouldNotCacheMissingResource() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/scripts/app-00000000000000000000000000000000.js"));
+
+        filter.filter(exchange, respondWith(HttpStatus.NOT_FOUND)).block();
+
+        assertThat(exchange.getResponse().getHeaders().getCacheControl()).isEqualTo("no-cache");
+    }
+
+    private static WebFilterChain respondWith(HttpStatus status) {
+        return exchange -> {
+            exchange.getResponse().setStatusCode(status);
+            exchange.getResponse().getHeaders().setCacheControl("no-cache");
+            return exchange.getResponse().setComplete();
+        };
+    }
+}
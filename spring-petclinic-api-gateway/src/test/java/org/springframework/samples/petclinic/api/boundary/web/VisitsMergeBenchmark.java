@@ -0,0 +1,100 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.Visits;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former per-pet filtering of visits with the single-pass merge of
+ * {@link ApiGatewayController#addVisitsToOwners}, for owners ranging from a single household
+ * to a shelter.
+ * <p>
+ * Run with {@code ./mvnw -pl spring-petclinic-api-gateway verify -Pjmh -Djmh.includes=VisitsMergeBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitsMergeBenchmark {
+
+    @Param({"2", "50", "500"})
+    int pets;
+
+    @Param({"5", "20"})
+    int visitsPerPet;
+
+    private OwnerDetails owner;
+
+    private Visits flatVisits;
+
+    private Visits groupedVisits;
+
+    @Setup(Level.Trial)
+    public void createVisits() {
+        Random random = new Random(42);
+        List<VisitDetails> items = new ArrayList<>(pets * visitsPerPet);
+        for (int i = 0; i < pets * visitsPerPet; i++) {
+            items.add(new VisitDetails(i, 1 + random.nextInt(pets), "2024-01-01", "visit " + i));
+        }
+        Map<Integer, List<VisitDetails>> byPetId = new LinkedHashMap<>();
+        for (VisitDetails visit : items) {
+            byPetId.computeIfAbsent(visit.petId(), petId -> new ArrayList<>()).add(visit);
+        }
+        flatVisits = new Visits(items);
+        groupedVisits = new Visits(null, byPetId);
+    }
+
+    @Setup(Level.Invocation)
+    public void createOwner() {
+        List<PetDetails> ownerPets = new ArrayList<>(pets);
+        for (int petId = 1; petId <= pets; petId++) {
+            ownerPets.add(PetDetails.PetDetailsBuilder.aPetDetails().id(petId).name("pet " + petId).build());
+        }
+        owner = OwnerDetails.OwnerDetailsBuilder.anOwnerDetails().id(1).pets(ownerPets).build();
+    }
+
+    @Benchmark
+    public OwnerDetails filterPerPet() {
+        owner.pets()
+            .forEach(pet -> pet.visits()
+                .addAll(flatVisits.items().stream()
+                    .filter(v -> v.petId() == pet.id())
+                    .toList())
+            );
+        return owner;
+    }
+
+    @Benchmark
+    public OwnerDetails singlePassFlat() {
+        ApiGatewayController.addVisitsToOwners(List.of(owner), flatVisits);
+        return owner;
+    }
+
+    @Benchmark
+    public OwnerDetails singlePassGrouped() {
+        ApiGatewayController.addVisitsToOwners(List.of(owner), groupedVisits);
+        return owner;
+    }
+}
@@ -0,0 +1,106 @@
+package org.springframework.samples.petclinic.api.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares JSON with CBOR for the payloads the gateway receives from the services: an owner with
+ * its pets from customers-service, and the visits of those pets grouped by pet from visits-service.
+ * Both mappers are built like the ones of the WebFlux codecs.
+ * <p>
+ * The payload sizes are printed at the start of each trial. Run with
+ * {@code ./mvnw -pl spring-petclinic-api-gateway verify -Pjmh -Djmh.includes=WireFormatBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "cbor"})
+    String format;
+
+    /**
+     * Pets of the owner, each with ten visits: a household or a breeder.
+     */
+    @Param({"3", "30"})
+    int pets;
+
+    private ObjectMapper objectMapper;
+
+    private OwnerDetails owner;
+
+    private Visits visits;
+
+    private byte[] ownerBytes;
+
+    private byte[] visitsBytes;
+
+    @Setup(Level.Trial)
+    public void createPayloads() throws IOException {
+        objectMapper = "cbor".equals(format)
+            ? Jackson2ObjectMapperBuilder.cbor().build()
+            : Jackson2ObjectMapperBuilder.json().build();
+
+        List<PetDetails> ownerPets = new ArrayList<>(pets);
+        Map<Integer, List<VisitDetails>> byPetId = new LinkedHashMap<>();
+        for (int petId = 1; petId <= pets; petId++) {
+            ownerPets.add(new PetDetails(petId, "Pet " + petId, "2015-09-0" + (petId % 9 + 1),
+                new PetType(petId % 2 == 0 ? "dog" : "cat"), List.of()));
+            List<VisitDetails> petVisits = new ArrayList<>(10);
+            for (int i = 0; i < 10; i++) {
+                petVisits.add(new VisitDetails(petId * 10 + i, petId, "2023-0" + (i % 9 + 1) + "-15",
+                    "annual checkup and rabies shot"));
+            }
+            byPetId.put(petId, petVisits);
+        }
+        owner = new OwnerDetails(1, "George", "Franklin", "110 W. Liberty St.", "Madison", "6085551023", ownerPets);
+        visits = new Visits(null, byPetId);
+
+        ownerBytes = objectMapper.writeValueAsBytes(owner);
+        visitsBytes = objectMapper.writeValueAsBytes(visits);
+        System.out.printf("%n%s, %d pets: owner %d bytes, visits %d bytes%n",
+            format, pets, ownerBytes.length, visitsBytes.length);
+    }
+
+    @Benchmark
+    public byte[] encodeOwner() throws IOException {
+        return objectMapper.writeValueAsBytes(owner);
+    }
+
+    @Benchmark
+    public OwnerDetails decodeOwner() throws IOException {
+        return objectMapper.readValue(ownerBytes, OwnerDetails.class);
+    }
+
+    @Benchmark
+    public byte[] encodeVisits() throws IOException {
+        return objectMapper.writeValueAsBytes(visits);
+    }
+
+    @Benchmark
+    public Visits decodeVisits() throws IOException {
+        return objectMapper.readValue(visitsBytes, Visits.class);
+    }
+}
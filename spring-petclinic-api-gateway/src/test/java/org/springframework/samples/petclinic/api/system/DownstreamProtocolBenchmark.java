@@ -0,0 +1,100 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.samples.petclinic.api.system.DownstreamServicesProperties.Pool;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares HTTP/1.1 with cleartext HTTP/2 between the gateway and a downstream service, using the
+ * connection pool of {@link WebClientConfig} against a local server answering after 5 ms like a
+ * service reading from its database.
+ * <p>
+ * Every benchmark thread keeps one request in flight: the p0.99 line of the sample-time output is
+ * the p99 latency, and the number of connections the server accepted is printed at the end of each
+ * trial. Run with {@code ./mvnw -pl spring-petclinic-api-gateway verify -Pjmh -Djmh.includes=DownstreamProtocolBenchmark},
+ * and add {@code -t <threads>} to the JMH arguments to change the concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class DownstreamProtocolBenchmark {
+
+    private static final String OWNER = "{\"id\":1,\"firstName\":\"George\",\"lastName\":\"Franklin\",\"pets\":[]}";
+
+    @Param({"HTTP11", "H2C"})
+    HttpProtocol protocol;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private DisposableServer server;
+
+    private ConnectionProvider connectionProvider;
+
+    private WebClient webClient;
+
+    @Setup(Level.Trial)
+    public void start() {
+        // what Spring Boot configures with server.http2.enabled and no SSL
+        server = HttpServer.create()
+            .port(0)
+            .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+            .doOnChannelInit((observer, channel, remoteAddress) -> connections.incrementAndGet())
+            .route(routes -> routes.get("/owners/{ownerId}", (request, response) -> response
+                .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .sendString(Mono.delay(Duration.ofMillis(5)).thenReturn(OWNER))))
+            .bindNow();
+
+        Pool pool = new Pool(List.of(protocol), List.of(MediaType.APPLICATION_JSON), 100, 100, 1000, Duration.ofSeconds(2), Duration.ofSeconds(15),
+            Duration.ofMinutes(5), Duration.ofSeconds(30), Duration.ofSeconds(2), Duration.ofSeconds(5));
+        connectionProvider = WebClientConfig.connectionProvider("benchmark", pool);
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .protocol(protocol)
+            .responseTimeout(pool.responseTimeout());
+        webClient = WebClient.builder()
+            .baseUrl("http://localhost:" + server.port())
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        System.out.printf("%n%s: %d connections opened by the gateway%n", protocol, connections.get());
+        connectionProvider.disposeLater().block();
+        server.disposeNow();
+    }
+
+    @Benchmark
+    public String getOwner() {
+        return webClient.get().uri("/owners/1").retrieve().bodyToMono(String.class).block();
+    }
+}
@@ -0,0 +1,43 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.samples.petclinic.api.application.UnixSockets;
+import org.springframework.samples.petclinic.api.system.DownstreamServicesProperties.Routes;
+import org.springframework.samples.petclinic.api.system.RoutesHttpClientConfig.RoutesHttpClientFactory;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoutesHttpClientConfigTest {
+
+    @Test
+    void shouldProxyRoutesOverCleartextHttp2() throws Exception {
+        HttpClient httpClient = httpClient(new Routes(List.of(HttpProtocol.H2C), 100));
+
+        assertThat(httpClient.configuration().protocols()).containsExactly(HttpProtocol.H2C);
+        assertThat(httpClient.configuration().connectionProvider().maxConnections()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void shouldKeepHttp11WhenConfigured() throws Exception {
+        HttpClient httpClient = httpClient(new Routes(List.of(HttpProtocol.HTTP11), 100));
+
+        assertThat(httpClient.configuration().protocols()).containsExactly(HttpProtocol.HTTP11);
+    }
+
+    private static HttpClient httpClient(Routes routes) throws Exception {
+        HttpClientProperties properties = new HttpClientProperties();
+        ServerProperties serverProperties = new ServerProperties();
+        RoutesHttpClientFactory factory = new RoutesHttpClientFactory(properties, serverProperties,
+            new HttpClientSslConfigurer(properties.getSsl(), serverProperties, null), List.of(), routes,
+            new UnixSockets(new UnixSocketProperties(true, "localhost")));
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+}
@@ -0,0 +1,119 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.samples.petclinic.api.application.UnixSockets;
+import org.springframework.samples.petclinic.api.system.DownstreamServicesProperties.Pool;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares TCP loopback with a Unix domain socket between the gateway and a co-located service, using
+ * the connection pool of {@link WebClientConfig} against a local server answering right away, so that
+ * the transport is all that is measured.
+ * <p>
+ * Every benchmark thread keeps one request in flight. Run with
+ * {@code ./mvnw -pl spring-petclinic-api-gateway verify -Pjmh -Djmh.includes=UnixSocketBenchmark},
+ * and add {@code -t <threads>} to the JMH arguments to change the concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class UnixSocketBenchmark {
+
+    private static final String OWNER = "{\"id\":1,\"firstName\":\"George\",\"lastName\":\"Franklin\",\"pets\":[]}";
+
+    @Param({"tcp", "unix"})
+    String transport;
+
+    @Param({"HTTP11", "H2C"})
+    HttpProtocol protocol;
+
+    private Path directory;
+
+    private DisposableServer server;
+
+    private ConnectionProvider connectionProvider;
+
+    private WebClient webClient;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        directory = Files.createTempDirectory("petclinic");
+        Path socket = directory.resolve("customers.sock");
+        HttpServer httpServer = "unix".equals(transport)
+            ? HttpServer.create().bindAddress(() -> new DomainSocketAddress(socket.toFile()))
+            : HttpServer.create().port(0);
+        server = httpServer
+            .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+            .route(routes -> routes.get("/owners/{ownerId}", (request, response) -> response
+                .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .sendString(Mono.just(OWNER))))
+            .bindNow();
+        // the TCP server is reached at the address of the instance, the socket one through its path
+        int port = "unix".equals(transport) ? 8081 : server.port();
+
+        UnixSockets unixSockets = new UnixSockets(new UnixSocketProperties(true, "localhost"));
+        unixSockets.register(new DefaultServiceInstance("customers-service-1", "customers-service", "localhost", port,
+            false, "unix".equals(transport)
+                ? Map.of(UnixSockets.PATH_METADATA, socket.toString(), UnixSockets.HOST_METADATA, "localhost")
+                : Map.of()));
+
+        Pool pool = new Pool(List.of(protocol), List.of(MediaType.APPLICATION_JSON), 100, 100, 1000, Duration.ofSeconds(2), Duration.ofSeconds(15),
+            Duration.ofMinutes(5), Duration.ofSeconds(30), Duration.ofSeconds(2), Duration.ofSeconds(5));
+        connectionProvider = WebClientConfig.connectionProvider("benchmark", pool);
+        HttpClient httpClient = HttpClient.create(new UnixSocketConnectionProvider(connectionProvider, unixSockets))
+            .protocol(protocol)
+            .responseTimeout(pool.responseTimeout());
+        webClient = WebClient.builder()
+            .baseUrl("http://localhost:" + port)
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        connectionProvider.disposeLater().block();
+        server.disposeNow();
+        Files.deleteIfExists(directory.resolve("customers.sock"));
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public String getOwner() {
+        return webClient.get().uri("/owners/1").retrieve().bodyToMono(String.class).block();
+    }
+}
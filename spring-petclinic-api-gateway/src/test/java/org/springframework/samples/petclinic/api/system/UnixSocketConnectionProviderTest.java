@@ -0,0 +1,109 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.samples.petclinic.api.application.UnixSockets;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UnixSocketConnectionProviderTest {
+
+    @TempDir
+    Path directory;
+
+    private final UnixSockets unixSockets = new UnixSockets(new UnixSocketProperties(true, "host-1"));
+
+    private final ConnectionProvider connectionProvider = ConnectionProvider.create("customers-service");
+
+    private DisposableServer socketServer;
+
+    private DisposableServer tcpServer;
+
+    @AfterEach
+    void stopServers() {
+        connectionProvider.dispose();
+        if (socketServer != null) {
+            socketServer.disposeNow();
+        }
+        if (tcpServer != null) {
+            tcpServer.disposeNow();
+        }
+    }
+
+    @Test
+    void shouldCallCoLocatedInstanceThroughItsSocket() {
+        Path socket = directory.resolve("customers.sock");
+        socketServer = server(HttpServer.create().bindAddress(() -> new DomainSocketAddress(socket.toFile())), "socket");
+        unixSockets.register(instance("10.0.0.1", 8081, Map.of(
+            UnixSockets.PATH_METADATA, socket.toString(),
+            UnixSockets.HOST_METADATA, "host-1")));
+
+        String answer = webClient().get().uri("http://10.0.0.1:8081/owners/1").retrieve().bodyToMono(String.class).block();
+
+        assertThat(answer).isEqualTo("socket 10.0.0.1:8081");
+    }
+
+    @Test
+    void shouldCallOtherInstancesOverTcp() {
+        Path socket = directory.resolve("customers.sock");
+        socketServer = server(HttpServer.create().bindAddress(() -> new DomainSocketAddress(socket.toFile())), "socket");
+        tcpServer = server(HttpServer.create().port(0), "tcp");
+        unixSockets.register(instance("localhost", tcpServer.port(), Map.of(
+            UnixSockets.PATH_METADATA, socket.toString(),
+            UnixSockets.HOST_METADATA, "host-2")));
+        unixSockets.register(instance("127.0.0.1", tcpServer.port(), Map.of(
+            UnixSockets.PATH_METADATA, directory.resolve("missing.sock").toString(),
+            UnixSockets.HOST_METADATA, "host-1")));
+
+        assertThat(webClient().get().uri("http://localhost:" + tcpServer.port() + "/owners/1")
+            .retrieve().bodyToMono(String.class).block()).startsWith("tcp");
+        assertThat(webClient().get().uri("http://127.0.0.1:" + tcpServer.port() + "/owners/1")
+            .retrieve().bodyToMono(String.class).block()).startsWith("tcp");
+    }
+
+    @Test
+    void shouldGoBackToTcpWhenInstanceStopsAdvertisingItsSocket() {
+        Path socket = directory.resolve("customers.sock");
+        socketServer = server(HttpServer.create().bindAddress(() -> new DomainSocketAddress(socket.toFile())), "socket");
+        unixSockets.register(instance("10.0.0.1", 8081, Map.of(
+            UnixSockets.PATH_METADATA, socket.toString(),
+            UnixSockets.HOST_METADATA, "host-1")));
+
+        unixSockets.register(instance("10.0.0.1", 8081, Map.of()));
+
+        assertThat(unixSockets.socket("10.0.0.1", 8081)).isNull();
+    }
+
+    private WebClient webClient() {
+        HttpClient httpClient = HttpClient.create(new UnixSocketConnectionProvider(connectionProvider, unixSockets))
+            .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C);
+        return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+    }
+
+    private static DisposableServer server(HttpServer server, String name) {
+        return server
+            .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+            .handle((request, response) -> response.sendString(Mono.just(name + " " + request.requestHeaders().get("Host"))))
+            .bindNow();
+    }
+
+    private static DefaultServiceInstance instance(String host, int port, Map<String, String> metadata) {
+        return new DefaultServiceInstance(host + ":" + port, "customers-service", host, port, false, metadata);
+    }
+}
@@ -0,0 +1,113 @@
+package org.springframework.samples.petclinic.api.system;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.samples.petclinic.api.application.ConcurrencyLimiter;
+import org.springframework.samples.petclinic.api.application.OutlierDetector;
+import org.springframework.samples.petclinic.api.application.UnixSockets;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancingProperties;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebClientConfigTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withUserConfiguration(LoadBalancedBuilderConfig.class, WebClientConfig.class);
+
+    @Test
+    void shouldCreateOnePoolPerDownstreamService() {
+        contextRunner
+            .withPropertyValues("gateway.downstream.visits-service.max-connections=7")
+            .run(context -> {
+                assertThat(context).hasBean("customersServiceWebClient").hasBean("visitsServiceWebClient");
+                ConnectionProvider customers = context.getBean("customersServiceConnectionProvider", ConnectionProvider.class);
+                ConnectionProvider visits = context.getBean("visitsServiceConnectionProvider", ConnectionProvider.class);
+                assertThat(customers).isNotSameAs(visits);
+                assertThat(customers.maxConnections()).isEqualTo(100);
+                assertThat(visits.maxConnections()).isEqualTo(7);
+            });
+    }
+
+    @Test
+    void shouldRequestAndDecodeCbor() throws Exception {
+        byte[] owner = new ObjectMapper(new CBORFactory()).writeValueAsBytes(Map.of(
+            "id", 1, "firstName", "George",
+            "pets", List.of(Map.of("id", 1, "name", "Leo", "birthDate", "2010-09-07"))));
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/cbor")
+                .setBody(new Buffer().write(owner)));
+
+            // the mock server speaks HTTP/1.1 only: the default protocols fall back to it
+            contextRunner.run(context -> {
+                WebClient webClient = context.getBean("customersServiceWebClient", WebClient.class);
+
+                OwnerDetails ownerDetails = webClient.get().uri(server.url("/owners/1").uri())
+                    .retrieve().bodyToMono(OwnerDetails.class).block();
+
+                assertThat(ownerDetails.firstName()).isEqualTo("George");
+                assertThat(ownerDetails.pets().get(0).birthDate()).isEqualTo("2010-09-07");
+            });
+
+            RecordedRequest request = server.takeRequest();
+            assertThat(request.getHeader("Accept")).isEqualTo("application/cbor, application/json");
+            assertThat(request.getHeader("Upgrade")).isEqualTo("h2c");
+        }
+    }
+
+    @Test
+    void shouldDisposePoolsOnShutdown() {
+        ConnectionProvider[] provider = new ConnectionProvider[1];
+        contextRunner.run(context ->
+            provider[0] = context.getBean("customersServiceConnectionProvider", ConnectionProvider.class));
+
+        assertThat(provider[0].isDisposed()).isTrue();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableConfigurationProperties({DownstreamServicesProperties.class, ConcurrencyLimitProperties.class,
+        LoadBalancingProperties.class, OutlierDetectionProperties.class, UnixSocketProperties.class})
+    static class LoadBalancedBuilderConfig {
+
+        @Bean
+        @LoadBalanced
+        WebClient.Builder loadBalancedWebClientBuilder() {
+            return WebClient.builder();
+        }
+
+        @Bean
+        ConcurrencyLimiter concurrencyLimiter(ConcurrencyLimitProperties properties) {
+            return new ConcurrencyLimiter(new SimpleMeterRegistry(), properties);
+        }
+
+        @Bean
+        LoadBalancerStats loadBalancerStats(LoadBalancingProperties properties,
+                                            OutlierDetectionProperties outlierDetectionProperties) {
+            return new LoadBalancerStats(properties,
+                List.of(new OutlierDetector(new SimpleMeterRegistry(), outlierDetectionProperties)));
+        }
+
+        @Bean
+        UnixSockets unixSockets(UnixSocketProperties properties) {
+            return new UnixSockets(properties);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.deadline;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionManager;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.OptionalLong;
+import java.util.concurrent.Callable;
+
+/**
+ * Turns the time left until the {@link RequestDeadline} of a request into the timeouts of its work,
+ * so that a service stops working on requests the api-gateway has given up on.
+ * <p>
+ * JPA transactions get the remaining time, rounded up to the second, as timeout: Hibernate sets it as
+ * the JDBC query timeout of their statements. A transaction starting after the deadline fails with a
+ * {@link DeadlineExceededException}, a 504 Gateway Timeout. Asynchronous requests, such as the ones
+ * answered with a {@code StreamingResponseBody}, time out at the deadline.
+ */
+@AutoConfiguration(after = DataSourceAutoConfiguration.class, before = HibernateJpaAutoConfiguration.class)
+public class DeadlineAutoConfiguration {
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass({JpaTransactionManager.class, EntityManager.class})
+    @ConditionalOnSingleCandidate(DataSource.class)
+    static class JpaConfiguration {
+
+        /**
+         * Replaces the transaction manager of Spring Boot, customized the same way.
+         */
+        @Bean
+        @ConditionalOnMissingBean(TransactionManager.class)
+        PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers) {
+            DeadlineTransactionManager transactionManager = new DeadlineTransactionManager();
+            transactionManagerCustomizers.ifAvailable(customizers -> customizers.customize(transactionManager));
+            return transactionManager;
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnClass(WebMvcConfigurer.class)
+    static class ServletConfiguration {
+
+        @Bean
+        DeadlineFilter deadlineFilter() {
+            return new DeadlineFilter();
+        }
+
+        @Bean
+        WebMvcConfigurer asyncDeadlineConfigurer() {
+            return new WebMvcConfigurer() {
+                @Override
+                public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                    configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+                        @Override
+                        public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                            applyDeadline(request);
+                        }
+                    });
+                    configurer.registerDeferredResultInterceptors(new DeferredResultProcessingInterceptor() {
+                        @Override
+                        public <T> void beforeConcurrentHandling(NativeWebRequest request, DeferredResult<T> deferredResult) {
+                            applyDeadline(request);
+                        }
+                    });
+                }
+            };
+        }
+
+        private static void applyDeadline(NativeWebRequest request) {
+            OptionalLong remaining = RequestDeadline.remainingMillis(request);
+            if (remaining.isPresent() && request instanceof AsyncWebRequest asyncRequest) {
+                asyncRequest.setTimeout(Math.max(remaining.getAsLong(), 1));
+            }
+        }
+    }
+
+    static class DeadlineTransactionManager extends JpaTransactionManager {
+
+        @Override
+        protected int determineTimeout(TransactionDefinition definition) {
+            int timeout = super.determineTimeout(definition);
+            OptionalLong remaining = RequestDeadline.remainingMillis();
+            if (remaining.isEmpty()) {
+                return timeout;
+            }
+            if (remaining.getAsLong() <= 0) {
+                throw new DeadlineExceededException(-remaining.getAsLong());
+            }
+            int remainingSeconds = (int) Math.min(Integer.MAX_VALUE, (remaining.getAsLong() + 999) / 1000);
+            return timeout == TransactionDefinition.TIMEOUT_DEFAULT ? remainingSeconds : Math.min(timeout, remainingSeconds);
+        }
+    }
+}
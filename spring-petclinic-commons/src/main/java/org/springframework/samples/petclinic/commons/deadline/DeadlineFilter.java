@@ -0,0 +1,61 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.deadline;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Rejects the requests whose {@link RequestDeadline} has already passed when they arrive, after
+ * waiting in the queues of Tomcat, and keeps the deadline of the others for the
+ * {@link DeadlineAutoConfiguration timeouts} of their work.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+class DeadlineFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadlineFilter.class);
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        String header = request.getHeader(RequestDeadline.HEADER);
+        if (header != null) {
+            try {
+                long deadline = Long.parseLong(header);
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.debug("Rejecting {} {}, its deadline passed {} ms ago", request.getMethod(), request.getRequestURI(), -remaining);
+                    response.sendError(HttpStatus.GATEWAY_TIMEOUT.value(), "Request deadline exceeded");
+                    return;
+                }
+                request.setAttribute(RequestDeadline.ATTRIBUTE, deadline);
+            } catch (NumberFormatException ex) {
+                log.debug("Ignoring invalid request deadline {}", header);
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
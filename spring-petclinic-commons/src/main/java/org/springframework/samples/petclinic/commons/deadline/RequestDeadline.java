@@ -0,0 +1,51 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.deadline;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.OptionalLong;
+
+/**
+ * Deadline of the current request, sent by the api-gateway in the {@value #HEADER} header as epoch
+ * milliseconds: past it, nobody waits for the response anymore.
+ */
+public final class RequestDeadline {
+
+    public static final String HEADER = "X-Request-Deadline";
+
+    public static final String ATTRIBUTE = RequestDeadline.class.getName();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * @return the time left until the deadline of the request bound to the current thread, negative
+     * when it has passed, or empty when the request has no deadline
+     */
+    public static OptionalLong remainingMillis() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null ? remainingMillis(attributes) : OptionalLong.empty();
+    }
+
+    public static OptionalLong remainingMillis(RequestAttributes attributes) {
+        if (attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Long deadline) {
+            return OptionalLong.of(deadline - System.currentTimeMillis());
+        }
+        return OptionalLong.empty();
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Tells the other instances of this service, and the instances of the services subscribed, as
+ * registered in Eureka, that cached data changed, with no broker in between.
+ * <p>
+ * {@link #publish(String, Object)} raises an {@link Invalidation} application event on this instance
+ * at once, and on the others shortly after: the invalidations are queued per instance and posted to
+ * its {@value #PATH} endpoint every {@code petclinic.invalidation-bus.flush-interval}, in batches. An
+ * invalidation queued again before it was sent is only sent once. Caches listen to the event with
+ * {@code @EventListener}.
+ * <p>
+ * Delivery is at least once: a batch stays queued until the instance acknowledged it, and is sent
+ * again with an exponential backoff. An instance missing from the registry keeps its queue, and
+ * the invalidations published meanwhile, for {@code petclinic.invalidation-bus.retention}, so that
+ * it still gets them when it was only missing for a while. The invalidations queued for an instance
+ * are numbered in sequence, so that the receiver ignores those it already got from a batch sent
+ * again. Each queue has its own sender id, since a new queue numbers from the start again.
+ * <p>
+ * Batches are only accepted from the addresses of the instances of this service and of the services
+ * publishing to it, resolved whenever the Eureka client fetched the registry. An invalidation whose
+ * listener fails is logged and skipped, so that one bad invalidation does not block the others.
+ */
+public class InvalidationBus implements SmartLifecycle {
+
+    public static final String PATH = "/internal/invalidations";
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private static final Duration MAX_RETRY_INTERVAL = Duration.ofSeconds(10);
+
+    // senders whose sequence is remembered, a new one per queue of an instance
+    private static final int MAX_SENDERS = 1024;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper objectMapper;
+
+    private final Supplier<? extends ServiceInstance> self;
+
+    private final Function<String, List<ServiceInstance>> instances;
+
+    private final String serviceId;
+
+    private final InvalidationBusProperties properties;
+
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> receivedSequences = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_SENDERS;
+        }
+    };
+
+    private final HttpClient httpClient;
+
+    private volatile Set<String> trustedHosts = Set.of();
+
+    private volatile Set<InetAddress> trustedAddresses = Set.of();
+
+    private ScheduledExecutorService flusher;
+
+    public InvalidationBus(ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                           Supplier<? extends ServiceInstance> self, Function<String, List<ServiceInstance>> instances,
+                           String serviceId, InvalidationBusProperties properties) {
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.self = self;
+        this.instances = instances;
+        this.serviceId = serviceId;
+        this.properties = properties;
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(properties.timeout())
+            .build();
+    }
+
+    /**
+     * Invalidates the key of the cache on every instance of this service, this one included, and on
+     * the instances of the services subscribed.
+     */
+    public void publish(String cache, Object key) {
+        Invalidation invalidation = new Invalidation(cache, String.valueOf(key));
+        eventPublisher.publishEvent(invalidation);
+        for (ServiceInstance peer : peers()) {
+            outboxes.computeIfAbsent(node(peer), node -> new Outbox(peer.getUri().resolve(PATH)));
+        }
+        // the instances missing from the registry for a while get the invalidation too
+        outboxes.values().forEach(outbox -> outbox.add(invalidation));
+    }
+
+    /**
+     * Raises the invalidations of a batch sent by another instance which were not received yet.
+     *
+     * @param remoteAddress address the batch came from
+     * @return the status to answer
+     */
+    public HttpStatus receive(Batch batch, InetAddress remoteAddress) {
+        if (remoteAddress == null || !trustedAddresses.contains(remoteAddress)) {
+            log.debug("Ignoring invalidations from {}, not a registered instance", remoteAddress);
+            return HttpStatus.FORBIDDEN;
+        }
+        if (batch.sender() == null || batch.events() == null) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        receive(batch);
+        return HttpStatus.NO_CONTENT;
+    }
+
+    synchronized void receive(Batch batch) {
+        long received = receivedSequences.getOrDefault(batch.sender(), 0L);
+        for (Event event : batch.events()) {
+            if (event == null || event.sequence() <= received) {
+                continue;
+            }
+            received = event.sequence();
+            if (event.cache() == null || event.key() == null) {
+                log.warn("Skipping invalid invalidation {} from {}", event, batch.sender());
+                continue;
+            }
+            try {
+                eventPublisher.publishEvent(new Invalidation(event.cache(), event.key()));
+            } catch (RuntimeException e) {
+                // acknowledged anyway, the batch would fail again every time it is sent
+                log.warn("Could not apply the invalidation {} from {}", event, batch.sender(), e);
+            }
+        }
+        receivedSequences.put(batch.sender(), received);
+    }
+
+    /**
+     * Resolves the addresses of the instances allowed to send invalidations, off the request threads.
+     */
+    @EventListener({ApplicationReadyEvent.class, HeartbeatEvent.class})
+    public void refresh() {
+        Set<String> hosts = new HashSet<>();
+        Stream.concat(Stream.of(serviceId), properties.publishers().stream())
+            .flatMap(id -> instances.apply(id).stream())
+            .forEach(instance -> hosts.add(instance.getHost()));
+        if (hosts.equals(trustedHosts)) {
+            return;
+        }
+        Set<InetAddress> addresses = new HashSet<>();
+        for (String host : hosts) {
+            try {
+                addresses.addAll(List.of(InetAddress.getAllByName(host)));
+            } catch (UnknownHostException e) {
+                log.warn("Could not resolve {}, its invalidations are not accepted: {}", host, e.toString());
+            }
+        }
+        trustedAddresses = Set.copyOf(addresses);
+        trustedHosts = hosts;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "invalidation-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = properties.flushInterval().toNanos();
+        flusher.scheduleWithFixedDelay(this::flush, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return flusher != null;
+    }
+
+    void flush() {
+        try {
+            long now = System.nanoTime();
+            Set<String> registered = new HashSet<>();
+            for (ServiceInstance peer : peers()) {
+                registered.add(node(peer));
+            }
+            outboxes.forEach((node, outbox) -> {
+                if (registered.contains(node)) {
+                    outbox.lastRegisteredNanos = now;
+                }
+            });
+            // instances gone from the registry for good will never acknowledge their invalidations
+            outboxes.values().removeIf(outbox -> now - outbox.lastRegisteredNanos > properties.retention().toNanos());
+            outboxes.values().forEach(outbox -> outbox.send(now));
+        } catch (RuntimeException e) {
+            // an exception would cancel the flushes
+            log.warn("Cannot send the invalidations", e);
+        }
+    }
+
+    private List<ServiceInstance> peers() {
+        ServiceInstance instance = self.get();
+        if (instance == null) {
+            // not registered, so not known to the other instances either
+            return List.of();
+        }
+        String node = node(instance);
+        return Stream.concat(Stream.of(serviceId), properties.subscribers().stream())
+            .flatMap(id -> instances.apply(id).stream())
+            .filter(peer -> !node(peer).equals(node))
+            .toList();
+    }
+
+    private static String node(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    /**
+     * The application event raised on every instance for a published invalidation.
+     */
+    public record Invalidation(String cache, String key) {
+    }
+
+    /**
+     * @param sender  queue of the instance sending the batch
+     * @param events  invalidations by increasing sequence
+     */
+    public record Batch(String sender, List<Event> events) {
+    }
+
+    public record Event(long sequence, String cache, String key) {
+    }
+
+    /**
+     * Invalidations not acknowledged yet by one instance, the last one of each key only.
+     */
+    private final class Outbox {
+
+        private final URI uri;
+
+        private final String sender = UUID.randomUUID().toString();
+
+        private final LinkedHashMap<Invalidation, Event> pending = new LinkedHashMap<>();
+
+        private long sequence;
+
+        private boolean sending;
+
+        private long nextAttemptNanos;
+
+        private long retryIntervalNanos = properties.flushInterval().toNanos();
+
+        private volatile long lastRegisteredNanos;
+
+        private Outbox(URI uri) {
+            this.uri = uri;
+            this.nextAttemptNanos = System.nanoTime();
+            this.lastRegisteredNanos = nextAttemptNanos;
+        }
+
+        synchronized void add(Invalidation invalidation) {
+            // queued again at the end, so that the pending events stay by increasing sequence
+            pending.remove(invalidation);
+            pending.put(invalidation, new Event(++sequence, invalidation.cache(), invalidation.key()));
+        }
+
+        synchronized void send(long now) {
+            if (sending || pending.isEmpty() || now - nextAttemptNanos < 0) {
+                return;
+            }
+            List<Event> events = new ArrayList<>(Math.min(pending.size(), MAX_BATCH_SIZE));
+            for (Event event : pending.values()) {
+                if (events.size() == MAX_BATCH_SIZE) {
+                    break;
+                }
+                events.add(event);
+            }
+            HttpRequest request;
+            try {
+                request = HttpRequest.newBuilder(uri)
+                    .timeout(properties.timeout())
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(new Batch(sender, events))))
+                    .build();
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot write the invalidations", e);
+            }
+            sending = true;
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> sent(events, response, failure));
+        }
+
+        private synchronized void sent(List<Event> events, HttpResponse<Void> response, Throwable failure) {
+            sending = false;
+            boolean rejected = failure == null && response.statusCode() == HttpStatus.BAD_REQUEST.value();
+            if (failure == null && response.statusCode() / 100 == 2 || rejected) {
+                if (rejected) {
+                    log.warn("{} rejected {} invalidations, dropping them", uri, events.size());
+                }
+                // the invalidations queued again meanwhile have a new event, still to be sent
+                events.forEach(event -> pending.remove(new Invalidation(event.cache(), event.key()), event));
+                retryIntervalNanos = properties.flushInterval().toNanos();
+                return;
+            }
+            log.debug("Could not send {} invalidations to {}: {}", events.size(), uri,
+                failure != null ? failure.toString() : "status " + response.statusCode());
+            nextAttemptNanos = System.nanoTime() + retryIntervalNanos;
+            retryIntervalNanos = Math.min(retryIntervalNanos * 2, MAX_RETRY_INTERVAL.toNanos());
+        }
+    }
+}
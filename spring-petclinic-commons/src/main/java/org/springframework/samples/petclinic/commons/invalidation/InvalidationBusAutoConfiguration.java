@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
+
+/**
+ * Sets up the {@link InvalidationBus} of a service, named by {@code spring.application.name}, and
+ * the endpoint receiving its invalidations.
+ */
+@AutoConfiguration(after = JacksonAutoConfiguration.class)
+@ConditionalOnWebApplication
+@EnableConfigurationProperties(InvalidationBusProperties.class)
+public class InvalidationBusAutoConfiguration {
+
+    @Bean
+    InvalidationBus invalidationBus(ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                                    InvalidationBusProperties properties, Environment environment,
+                                    ObjectProvider<Registration> registration, ObjectProvider<DiscoveryClient> discoveryClient) {
+        return new InvalidationBus(eventPublisher, objectMapper, registration::getIfAvailable, serviceId -> {
+            DiscoveryClient client = discoveryClient.getIfAvailable();
+            return client != null ? client.getInstances(serviceId) : List.of();
+        }, environment.getRequiredProperty("spring.application.name"), properties);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class ServletConfiguration {
+
+        @Bean
+        InvalidationBusController invalidationBusController(InvalidationBus invalidationBus) {
+            return new InvalidationBusController(invalidationBus);
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class ReactiveConfiguration {
+
+        @Bean
+        ReactiveInvalidationBusController invalidationBusController(InvalidationBus invalidationBus) {
+            return new ReactiveInvalidationBusController(invalidationBus);
+        }
+    }
+}
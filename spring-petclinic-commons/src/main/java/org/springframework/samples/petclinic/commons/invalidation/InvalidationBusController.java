@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Receives the invalidations sent by the other instances to a servlet application, see
+ * {@link InvalidationBus}.
+ */
+@RestController
+public class InvalidationBusController {
+
+    private final InvalidationBus invalidationBus;
+
+    public InvalidationBusController(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    @PostMapping(InvalidationBus.PATH)
+    public ResponseEntity<Void> receive(@RequestBody InvalidationBus.Batch batch, HttpServletRequest request) {
+        return ResponseEntity.status(invalidationBus.receive(batch, remoteAddress(request))).build();
+    }
+
+    private static InetAddress remoteAddress(HttpServletRequest request) {
+        try {
+            // an IP address, never looked up
+            return InetAddress.getByName(request.getRemoteAddr());
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings of the invalidations sent to the other instances, see {@link InvalidationBus}.
+ *
+ * @param flushInterval how often the invalidations queued are sent, the longer the more are batched
+ * @param timeout       how long to wait for an instance to acknowledge a batch before sending it again
+ * @param retention     how long the invalidations of an instance missing from the registry are kept
+ * @param subscribers   Eureka names of the other services getting the invalidations published here
+ * @param publishers    Eureka names of the other services whose invalidations are accepted here
+ */
+@ConfigurationProperties(prefix = "petclinic.invalidation-bus")
+public record InvalidationBusProperties(
+    @DefaultValue("50ms") Duration flushInterval,
+    @DefaultValue("2s") Duration timeout,
+    @DefaultValue("10m") Duration retention,
+    @DefaultValue List<String> subscribers,
+    @DefaultValue List<String> publishers
+) {
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Receives the invalidations sent by the other instances to a reactive application, see
+ * {@link InvalidationBus}.
+ */
+@RestController
+public class ReactiveInvalidationBusController {
+
+    private final InvalidationBus invalidationBus;
+
+    public ReactiveInvalidationBusController(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    @PostMapping(InvalidationBus.PATH)
+    public ResponseEntity<Void> receive(@RequestBody InvalidationBus.Batch batch, ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return ResponseEntity.status(invalidationBus.receive(batch, remoteAddress != null ? remoteAddress.getAddress() : null))
+            .build();
+    }
+}
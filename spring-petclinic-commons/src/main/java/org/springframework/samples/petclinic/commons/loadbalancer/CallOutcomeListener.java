@@ -0,0 +1,31 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Notified of the outcome of every request tracked by the {@link LoadBalancerStats}, e.g. to eject the
+ * instances failing too often.
+ */
+@FunctionalInterface
+public interface CallOutcomeListener {
+
+    /**
+     * @param failed whether the request ended with a 5xx status or an error such as a timeout
+     */
+    void record(ServiceInstance instance, boolean failed);
+}
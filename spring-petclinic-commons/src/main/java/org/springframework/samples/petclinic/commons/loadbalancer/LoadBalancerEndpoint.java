@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats.InstanceScore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/loadbalancer}: latency, requests in flight and score of the instances of every
+ * service, as seen by the {@link PeakEwmaLoadBalancer}.
+ */
+@Endpoint(id = "loadbalancer")
+public class LoadBalancerEndpoint {
+
+    private final LoadBalancerStats stats;
+
+    public LoadBalancerEndpoint(LoadBalancerStats stats) {
+        this.stats = stats;
+    }
+
+    @ReadOperation
+    public Map<String, List<InstanceScore>> scores() {
+        return stats.scores();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Latency and requests in flight of every downstream service instance, scored for the
+ * {@link PeakEwmaLoadBalancer}.
+ * <p>
+ * The latency is a peak exponentially weighted moving average: a slower request replaces it at once,
+ * faster ones pull it down gradually, and it decays while the instance is not used so that a formerly
+ * slow instance gets probed again. The score of an instance is its latency times the requests in
+ * flight plus one, the expected wait of a new request.
+ * <p>
+ * Instances are identified by host and port, which is all the WebClients still know about them once
+ * the load balancer rewrote the request URL. Instances not used for {@value #IDLE_MINUTES} minutes,
+ * e.g. gone from discovery, are forgotten. The outcome of every request is passed on to the
+ * {@link CallOutcomeListener}s.
+ */
+public class LoadBalancerStats {
+
+    private static final long IDLE_MINUTES = 10;
+
+    // cost of an instance whose latency is unknown while requests are in flight, above any real latency
+    private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+    private final Cache<String, InstanceStats> instances = Caffeine.newBuilder()
+        .expireAfterAccess(Duration.ofMinutes(IDLE_MINUTES))
+        .build();
+
+    private final double decayNanos;
+
+    private final long failurePenaltyNanos;
+
+    private final List<CallOutcomeListener> listeners;
+
+    public LoadBalancerStats(LoadBalancingProperties properties) {
+        this(properties, List.of());
+    }
+
+    public LoadBalancerStats(LoadBalancingProperties properties, List<CallOutcomeListener> listeners) {
+        this.decayNanos = properties.decayTime().toNanos();
+        this.failurePenaltyNanos = properties.failurePenalty().toNanos();
+        this.listeners = List.copyOf(listeners);
+    }
+
+    public InstanceStats of(ServiceInstance instance) {
+        InstanceStats stats = instances.get(key(instance.getHost(), instance.getPort()), key -> new InstanceStats());
+        stats.instance = instance;
+        return stats;
+    }
+
+    /**
+     * Tracks the calls of a load-balanced {@link org.springframework.web.reactive.function.client.WebClient},
+     * added after the load balancer so that it sees the URL of the chosen instance. The call is measured
+     * until the response headers arrived.
+     */
+    public ExchangeFilterFunction exchangeFilter() {
+        return (request, next) -> Mono.defer(() -> {
+            InstanceStats stats = instances.getIfPresent(key(request.url()));
+            if (stats == null) {
+                return next.exchange(request);
+            }
+            Call call = stats.start();
+            return next.exchange(request)
+                .doOnNext(response -> {
+                    if (response.statusCode().is5xxServerError()) {
+                        call.failed();
+                    } else {
+                        call.succeeded();
+                    }
+                })
+                .doOnError(throwable -> call.failed())
+                .doFinally(signal -> call.cancelled());
+        });
+    }
+
+    /**
+     * @return scores of the known instances by service id, best first
+     */
+    public Map<String, List<InstanceScore>> scores() {
+        long now = System.nanoTime();
+        return instances.asMap().values().stream()
+            .filter(stats -> stats.instance != null)
+            .map(stats -> stats.score(now))
+            .sorted(Comparator.comparingDouble(InstanceScore::score))
+            .collect(groupingBy(InstanceScore::serviceId, TreeMap::new, toList()));
+    }
+
+    private static String key(URI url) {
+        int port = url.getPort();
+        if (port == -1) {
+            port = "https".equals(url.getScheme()) ? 443 : 80;
+        }
+        return key(url.getHost(), port);
+    }
+
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    public record InstanceScore(String serviceId, String instanceId, String uri, int inFlight,
+                                double latencyMillis, double score) {
+    }
+
+    public final class InstanceStats {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private volatile ServiceInstance instance;
+
+        private double costNanos;
+
+        private long stamp = System.nanoTime();
+
+        private InstanceStats() {
+        }
+
+        /**
+         * @return expected wait of a new request, the lower the better
+         */
+        public double cost(long now) {
+            int pending = inFlight.get();
+            double cost = decayedCost(now);
+            if (cost == 0 && pending > 0) {
+                return PENALTY + pending;
+            }
+            return cost * (pending + 1);
+        }
+
+        public Call start() {
+            inFlight.incrementAndGet();
+            return new Call(this);
+        }
+
+        private synchronized double decayedCost(long now) {
+            return costNanos * Math.exp(-Math.max(now - stamp, 0) / decayNanos);
+        }
+
+        private synchronized void observe(long rttNanos, long now) {
+            double weight = Math.exp(-Math.max(now - stamp, 0) / decayNanos);
+            stamp = now;
+            if (rttNanos > costNanos) {
+                costNanos = rttNanos;
+            } else {
+                costNanos = costNanos * weight + rttNanos * (1 - weight);
+            }
+        }
+
+        private InstanceScore score(long now) {
+            ServiceInstance current = instance;
+            return new InstanceScore(current.getServiceId(), current.getInstanceId(), current.getUri().toString(),
+                inFlight.get(), decayedCost(now) / 1_000_000, cost(now) / 1_000_000);
+        }
+    }
+
+    /**
+     * A request sent to an instance. Only the first of {@link #succeeded()}, {@link #failed()} and
+     * {@link #cancelled()} has an effect.
+     */
+    public final class Call {
+
+        private final InstanceStats stats;
+
+        private final long start = System.nanoTime();
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Call(InstanceStats stats) {
+            this.stats = stats;
+        }
+
+        public void succeeded() {
+            complete(false);
+        }
+
+        public void failed() {
+            complete(true);
+        }
+
+        /**
+         * The request was cancelled, it says nothing about the latency of the instance.
+         */
+        public void cancelled() {
+            if (completed.compareAndSet(false, true)) {
+                stats.inFlight.decrementAndGet();
+            }
+        }
+
+        private void complete(boolean failed) {
+            if (completed.compareAndSet(false, true)) {
+                long now = System.nanoTime();
+                long rtt = now - start;
+                stats.observe(failed ? Math.max(rtt, failurePenaltyNanos) : rtt, now);
+                stats.inFlight.decrementAndGet();
+                for (CallOutcomeListener listener : listeners) {
+                    listener.record(stats.instance, failed);
+                }
+            }
+        }
+    }
+}
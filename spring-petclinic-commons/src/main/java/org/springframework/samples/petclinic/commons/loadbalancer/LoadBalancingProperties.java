@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the latency-aware load balancing, see {@link PeakEwmaLoadBalancer}.
+ *
+ * @param decayTime      how fast the latency of an instance is forgotten: a sample weighs half as much
+ *                       after about 0.7 times this duration, and an idle instance is probed again
+ * @param failurePenalty latency accounted for a failed request when it failed faster, so that an
+ *                       instance refusing connections does not look like the fastest one
+ */
+@ConfigurationProperties(prefix = "petclinic.load-balancer")
+public record LoadBalancingProperties(
+    @DefaultValue("10s") Duration decayTime,
+    @DefaultValue("1s") Duration failurePenalty
+) {
+}
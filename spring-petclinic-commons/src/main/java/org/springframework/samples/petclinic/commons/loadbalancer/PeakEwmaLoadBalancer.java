@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.util.function.SingletonSupplier;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices: picks two distinct instances at random and sends the request to the one with
+ * the lower {@link LoadBalancerStats score}, so that a degraded instance gets less traffic while the
+ * others are not all piled onto the single best one.
+ * <p>
+ * Subclasses may narrow the {@link #candidates candidates} of a request, e.g. leave out unhealthy
+ * instances, and act on the instance {@link #chosen chosen} for it.
+ */
+public class PeakEwmaLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private static final Log log = LogFactory.getLog(PeakEwmaLoadBalancer.class);
+
+    private final String serviceId;
+
+    private final SingletonSupplier<ServiceInstanceListSupplier> serviceInstanceListSupplier;
+
+    private final LoadBalancerStats stats;
+
+    public PeakEwmaLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+                                String serviceId, LoadBalancerStats stats) {
+        this.serviceId = serviceId;
+        this.serviceInstanceListSupplier = SingletonSupplier
+            .of(() -> serviceInstanceListSupplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new));
+        this.stats = stats;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplier.obtain();
+        return Mono.deferContextual(context -> supplier.get(request)
+            .next()
+            .map(instances -> {
+                Response<ServiceInstance> response = getInstanceResponse(candidates(instances, context));
+                if (response.hasServer()) {
+                    chosen(response.getServer(), context);
+                    if (supplier instanceof SelectedInstanceCallback callback) {
+                        callback.selectedServiceInstance(response.getServer());
+                    }
+                }
+                return response;
+            }));
+    }
+
+    /**
+     * @param instances the instances of the service found by discovery
+     * @param context   the Reactor context of the request
+     * @return the instances the request may be sent to, all of them by default
+     */
+    protected List<ServiceInstance> candidates(List<ServiceInstance> instances, ContextView context) {
+        return instances;
+    }
+
+    /**
+     * Called with the instance the request is sent to, does nothing by default.
+     */
+    protected void chosen(ServiceInstance instance, ContextView context) {
+    }
+
+    protected String getServiceId() {
+        return serviceId;
+    }
+
+    Response<ServiceInstance> getInstanceResponse(List<ServiceInstance> instances) {
+        if (instances.isEmpty()) {
+            log.warn("No servers available for service: " + serviceId);
+            return new EmptyResponse();
+        }
+        if (instances.size() == 1) {
+            stats.of(instances.get(0));
+            return new DefaultResponse(instances.get(0));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(instances.size());
+        int second = random.nextInt(instances.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        long now = System.nanoTime();
+        double firstCost = stats.of(instances.get(first)).cost(now);
+        double secondCost = stats.of(instances.get(second)).cost(now);
+        return new DefaultResponse(instances.get(firstCost <= secondCost ? first : second));
+    }
+}
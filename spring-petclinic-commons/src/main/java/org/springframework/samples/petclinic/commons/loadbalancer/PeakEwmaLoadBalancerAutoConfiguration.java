@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+/**
+ * Sets up the {@link LoadBalancerStats} shared by the {@link PeakEwmaLoadBalancer}s of an application
+ * and its {@code loadbalancer} actuator endpoint. The application opts in to the load balancer itself
+ * with {@link PeakEwmaLoadBalancerConfiguration}, and feeds the stats with its requests, e.g. through
+ * {@link LoadBalancerStats#exchangeFilter()}.
+ */
+@AutoConfiguration
+@ConditionalOnClass({ReactorServiceInstanceLoadBalancer.class, ExchangeFilterFunction.class, Caffeine.class})
+@EnableConfigurationProperties(LoadBalancingProperties.class)
+public class PeakEwmaLoadBalancerAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    LoadBalancerStats loadBalancerStats(LoadBalancingProperties properties, ObjectProvider<CallOutcomeListener> listeners) {
+        return new LoadBalancerStats(properties, listeners.orderedStream().toList());
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(Endpoint.class)
+    static class EndpointConfiguration {
+
+        @Bean
+        @ConditionalOnAvailableEndpoint
+        LoadBalancerEndpoint loadBalancerEndpoint(LoadBalancerStats stats) {
+            return new LoadBalancerEndpoint(stats);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Load balancer of every service, replacing round robin for the load-balanced clients:
+ * <pre>
+ * &#64;LoadBalancerClients(defaultConfiguration = PeakEwmaLoadBalancerConfiguration.class)
+ * </pre>
+ * Registered through {@code @LoadBalancerClients} in the child context that Spring Cloud LoadBalancer
+ * creates per service, hence not annotated with {@code @Configuration}: it must stay out of the
+ * component scan of the application context. The {@link LoadBalancerStats} shared by all the services
+ * come from the application context, see {@link PeakEwmaLoadBalancerAutoConfiguration}.
+ */
+public class PeakEwmaLoadBalancerConfiguration {
+
+    @Bean
+    ReactorLoadBalancer<ServiceInstance> reactorServiceInstanceLoadBalancer(Environment environment,
+                                                                           LoadBalancerClientFactory loadBalancerClientFactory,
+                                                                           LoadBalancerStats loadBalancerStats) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new PeakEwmaLoadBalancer(
+            loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class), serviceId,
+            loadBalancerStats);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.timing;
+
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocation;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phases of a request reported to the api-gateway in the {@value #HEADER} response header when it asks
+ * for them with the {@value #REQUEST_HEADER} header:
+ * <ul>
+ * <li>{@code controller}: from the arrival of the request until its response body is written, minus
+ * the repository calls</li>
+ * <li>{@code repository}: the Spring Data repository calls, including their transactions</li>
+ * <li>{@code serialization}: writing the response body</li>
+ * </ul>
+ */
+public final class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+
+    public static final String REQUEST_HEADER = "X-Server-Timing";
+
+    static final String ATTRIBUTE = ServerTiming.class.getName();
+
+    private final long start = System.nanoTime();
+
+    private long repositoryNanos;
+
+    private int repositoryCalls;
+
+    private long bodyWriteStart;
+
+    ServerTiming() {
+    }
+
+    /**
+     * @return the timing of the request bound to the current thread, {@code null} when it is not timed
+     */
+    static ServerTiming current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null
+            ? (ServerTiming) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+            : null;
+    }
+
+    static void repositoryInvoked(RepositoryMethodInvocation invocation) {
+        ServerTiming serverTiming = current();
+        if (serverTiming != null) {
+            serverTiming.repositoryInvoked(invocation.getDuration(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    synchronized void repositoryInvoked(long nanos) {
+        repositoryNanos += nanos;
+        repositoryCalls++;
+    }
+
+    synchronized void bodyWriteStarted() {
+        if (bodyWriteStart == 0) {
+            bodyWriteStart = System.nanoTime();
+        }
+    }
+
+    synchronized String toHeaderValue() {
+        long end = System.nanoTime();
+        long handled = bodyWriteStart != 0 ? bodyWriteStart : end;
+        return String.format(Locale.ROOT,
+            "controller;dur=%.1f, repository;dur=%.1f;desc=\"%d %s\", serialization;dur=%.1f",
+            Math.max(handled - start - repositoryNanos, 0) / 1e6, repositoryNanos / 1e6,
+            repositoryCalls, repositoryCalls == 1 ? "call" : "calls", (end - handled) / 1e6);
+    }
+}
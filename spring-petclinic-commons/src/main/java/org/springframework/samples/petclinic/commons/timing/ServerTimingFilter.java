@@ -0,0 +1,246 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.timing;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.samples.petclinic.commons.transport.MediaStreams;
+import org.springframework.util.FastByteArrayOutputStream;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Times the requests asking for their {@link ServerTiming}. The response is buffered so that the
+ * header can still be set once its body is written; streams are never timed. The streams asked for
+ * with their {@code Accept} header are not even buffered, the others stop being buffered when their
+ * handler starts asynchronous processing, as a {@code StreamingResponseBody} or a
+ * {@code DeferredResult} does, see {@link #stopTiming(NativeWebRequest)}.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE + 20)
+class ServerTimingFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(ServerTiming.REQUEST_HEADER) == null
+            || MediaStreams.isRequested(request.getHeader(HttpHeaders.ACCEPT));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        ServerTiming serverTiming = new ServerTiming();
+        request.setAttribute(ServerTiming.ATTRIBUTE, serverTiming);
+        ServerTimingResponse timedResponse = new ServerTimingResponse(response);
+        try {
+            filterChain.doFilter(request, timedResponse);
+        } finally {
+            if (timedResponse.isBuffering()) {
+                timedResponse.setHeader(ServerTiming.HEADER, serverTiming.toHeaderValue());
+                timedResponse.copyBodyToResponse();
+            }
+        }
+    }
+
+    /**
+     * Stops timing a request whose response is written asynchronously, after this filter has returned:
+     * what is already buffered is written and the rest goes straight to the client.
+     */
+    static void stopTiming(NativeWebRequest request) throws IOException {
+        ServerTimingResponse timedResponse = request.getNativeResponse(ServerTimingResponse.class);
+        if (timedResponse != null && timedResponse.isBuffering()) {
+            request.removeAttribute(ServerTiming.ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            timedResponse.stopBuffering();
+        }
+    }
+
+    /**
+     * Buffers the response until told otherwise. Its output stream and writer look the buffer up on
+     * every write, so that the ones taken before {@link #stopBuffering()}, as the handlers of a
+     * {@code StreamingResponseBody} do, then write to the client.
+     */
+    static class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final FastByteArrayOutputStream buffer = new FastByteArrayOutputStream(1024);
+
+        private volatile boolean buffering = true;
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        ServerTimingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        boolean isBuffering() {
+            return buffering;
+        }
+
+        synchronized void stopBuffering() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            buffering = false;
+            if (buffer.size() > 0) {
+                buffer.writeTo(getResponse().getOutputStream());
+                buffer.reset();
+            }
+        }
+
+        void copyBodyToResponse() throws IOException {
+            if (!isCommitted()) {
+                if (writer != null) {
+                    writer.flush();
+                }
+                getResponse().setContentLength(buffer.size());
+            }
+            stopBuffering();
+        }
+
+        @Override
+        public synchronized ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new SwitchingOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public synchronized PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (!buffering) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            if (!buffering) {
+                super.setContentLength(len);
+            }
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (!buffering) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            buffer.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            buffer.reset();
+            super.reset();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            discardBuffer();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            discardBuffer();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            discardBuffer();
+            super.sendRedirect(location);
+        }
+
+        private synchronized void discardBuffer() {
+            buffering = false;
+            buffer.reset();
+        }
+
+        /**
+         * Writes to the buffer while the response is buffered, to the client afterwards.
+         */
+        private class SwitchingOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                synchronized (ServerTimingResponse.this) {
+                    if (buffering) {
+                        buffer.write(b);
+                        return;
+                    }
+                }
+                getResponse().getOutputStream().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                synchronized (ServerTimingResponse.this) {
+                    if (buffering) {
+                        buffer.write(b, off, len);
+                        return;
+                    }
+                }
+                getResponse().getOutputStream().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (!buffering) {
+                    getResponse().getOutputStream().flush();
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException("Timed responses are written blocking");
+            }
+        }
+    }
+}
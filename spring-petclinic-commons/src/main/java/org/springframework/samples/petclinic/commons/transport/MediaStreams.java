@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.transport;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+/**
+ * The media types of the responses streamed to the clients, such as {@code /api/gateway/owners/stream}:
+ * they last as long as there is data to send, so they are neither buffered, time limited nor held to
+ * a latency objective.
+ */
+public final class MediaStreams {
+
+    public static final List<MediaType> MEDIA_TYPES = List.of(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM);
+
+    private MediaStreams() {
+    }
+
+    /**
+     * @param accept the {@code Accept} header of a request
+     * @return whether the request asks for a stream
+     */
+    public static boolean isRequested(List<MediaType> accept) {
+        return accept.stream().anyMatch(type -> MEDIA_TYPES.stream().anyMatch(type::equalsTypeAndSubtype));
+    }
+
+    /**
+     * @param accept the {@code Accept} header of a request, unparsed, may be {@code null}
+     * @return whether the request asks for a stream, {@code false} when the header is malformed
+     */
+    public static boolean isRequested(String accept) {
+        try {
+            return isRequested(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param contentType the {@code Content-Type} of a response, may be {@code null}
+     * @return whether the response is a stream
+     */
+    public static boolean isStream(MediaType contentType) {
+        return contentType != null && MEDIA_TYPES.stream().anyMatch(type -> type.isCompatibleWith(contentType));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.transport;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.http2.Http2Protocol;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Listens on the Unix domain socket {@code petclinic.unix-socket.path} besides the TCP port, for the
+ * api-gateway running on the same host. The instance advertises the socket and its host in its Eureka
+ * metadata, and the gateway only uses it when that host is its own.
+ * <p>
+ * The socket speaks the same protocols as the TCP port, cleartext HTTP/2 included, and is created
+ * with the {@code petclinic.unix-socket.permissions}, by default {@code rw-rw----}: only the user and
+ * the group of the service may connect, so the gateway has to run as either. A socket left over by a
+ * previous run is deleted before binding, see {@link UnixSocketProperties}.
+ */
+@AutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnClass(Connector.class)
+@ConditionalOnProperty("petclinic.unix-socket.path")
+@EnableConfigurationProperties(UnixSocketProperties.class)
+public class UnixSocketAutoConfiguration {
+
+    @Bean
+    UnixSocketConnectorCustomizer unixSocketConnectorCustomizer(UnixSocketProperties properties) {
+        return new UnixSocketConnectorCustomizer(properties.path(), properties.permissions());
+    }
+
+    /**
+     * Runs after the customizers of Spring Boot, so the socket connector gets all their settings.
+     */
+    static class UnixSocketConnectorCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>, Ordered {
+
+        private final Path path;
+
+        private final String permissions;
+
+        UnixSocketConnectorCustomizer(Path path, String permissions) {
+            this.path = path;
+            this.permissions = permissions;
+        }
+
+        @Override
+        public void customize(TomcatServletWebServerFactory factory) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete the stale socket " + path, e);
+            }
+            Connector connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
+            connector.setProperty("unixDomainSocketPath", path.toString());
+            connector.setProperty("unixDomainSocketPathPermissions", permissions);
+            if (factory.getHttp2() != null && factory.getHttp2().isEnabled()) {
+                connector.addUpgradeProtocol(new Http2Protocol());
+            }
+            for (TomcatConnectorCustomizer customizer : factory.getTomcatConnectorCustomizers()) {
+                customizer.customize(connector);
+            }
+            factory.addAdditionalTomcatConnectors(connector);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
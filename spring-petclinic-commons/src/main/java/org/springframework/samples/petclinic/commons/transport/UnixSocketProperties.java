@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.commons.transport;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the Unix domain socket listened on besides the TCP port, see {@link UnixSocketAutoConfiguration}.
+ *
+ * @param path        where the socket is created, a file left there by a previous run is deleted
+ * @param permissions POSIX permissions of the socket, which users may connect to it
+ */
+@ConfigurationProperties(prefix = "petclinic.unix-socket")
+public record UnixSocketProperties(
+    Path path,
+    @DefaultValue("rw-rw----") String permissions
+) {
+}
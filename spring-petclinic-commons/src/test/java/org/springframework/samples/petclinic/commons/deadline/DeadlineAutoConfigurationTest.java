@@ -0,0 +1,162 @@
+package org.springframework.samples.petclinic.commons.deadline;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizationAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.samples.petclinic.commons.deadline.DeadlineAutoConfiguration.DeadlineTransactionManager;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class DeadlineAutoConfigurationTest {
+
+    private final WebApplicationContextRunner webContextRunner = new WebApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(WebMvcAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class, DeadlineAutoConfiguration.class))
+        .withUserConfiguration(AsyncController.class)
+        .withPropertyValues("spring.mvc.async.request-timeout=30s");
+
+    private final ApplicationContextRunner jpaContextRunner = new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            TransactionManagerCustomizationAutoConfiguration.class, TransactionAutoConfiguration.class,
+            DeadlineAutoConfiguration.class));
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldTimeOutAsyncRequestsAtTheirDeadline() {
+        webContextRunner.run(context -> {
+            MockMvc mockMvc = mockMvc(context);
+            for (String path : new String[]{"/callable", "/deferred", "/stream"}) {
+                MvcResult result = mockMvc.perform(get(path).header(RequestDeadline.HEADER, System.currentTimeMillis() + 5_000))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+                assertThat(result.getRequest().getAsyncContext().getTimeout()).as(path).isBetween(1L, 5_000L);
+            }
+        });
+    }
+
+    @Test
+    void shouldKeepConfiguredAsyncTimeoutWithoutDeadline() {
+        webContextRunner.run(context -> {
+            MockMvc mockMvc = mockMvc(context);
+            for (String path : new String[]{"/callable", "/deferred", "/stream"}) {
+                MvcResult result = mockMvc.perform(get(path))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+                assertThat(result.getRequest().getAsyncContext().getTimeout()).as(path).isEqualTo(30_000L);
+            }
+        });
+    }
+
+    @Test
+    void shouldNotFilterOutsideServletApplications() {
+        new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(DeadlineAutoConfiguration.class))
+            .run(context -> assertThat(context).doesNotHaveBean(DeadlineFilter.class)
+                .doesNotHaveBean(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void shouldCustomizeTransactionManagerLikeSpringBoot() {
+        jpaContextRunner
+            .withPropertyValues("spring.transaction.default-timeout=7")
+            .run(context -> {
+                assertThat(context).hasSingleBean(EntityManagerFactory.class);
+                DeadlineTransactionManager transactionManager = context.getBean(DeadlineTransactionManager.class);
+                assertThat(transactionManager.getDefaultTimeout()).isEqualTo(7);
+                DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+
+                assertThat(transactionManager.determineTimeout(definition)).isEqualTo(7);
+                bindDeadline(System.currentTimeMillis() + 1_500);
+                assertThat(transactionManager.determineTimeout(definition)).isBetween(1, 2);
+                bindDeadline(System.currentTimeMillis() + 60_000);
+                assertThat(transactionManager.determineTimeout(definition)).isEqualTo(7);
+            });
+    }
+
+    @Test
+    void shouldLimitTransactionsToRemainingTime() {
+        jpaContextRunner.run(context -> {
+            DeadlineTransactionManager transactionManager = context.getBean(DeadlineTransactionManager.class);
+            DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+
+            bindDeadline(System.currentTimeMillis() + 60_000);
+            assertThat(transactionManager.determineTimeout(definition)).isBetween(59, 60);
+            bindDeadline(System.currentTimeMillis() - 1);
+            assertThatThrownBy(() -> transactionManager.determineTimeout(definition))
+                .isInstanceOf(DeadlineExceededException.class);
+        });
+    }
+
+    @Test
+    void shouldKeepTransactionManagerOfApplication() {
+        jpaContextRunner
+            .withBean("transactionManager", PlatformTransactionManager.class,
+                () -> Mockito.mock(PlatformTransactionManager.class))
+            .run(context -> assertThat(context).doesNotHaveBean(DeadlineTransactionManager.class));
+    }
+
+    private static MockMvc mockMvc(WebApplicationContext context) {
+        return MockMvcBuilders.webAppContextSetup(context)
+            .addFilters(context.getBean(DeadlineFilter.class))
+            .build();
+    }
+
+    private static void bindDeadline(long deadline) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(RequestDeadline.ATTRIBUTE, deadline);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @RestController
+    static class AsyncController {
+
+        @GetMapping("/callable")
+        Callable<String> callable() {
+            return () -> "callable";
+        }
+
+        @GetMapping("/deferred")
+        DeferredResult<String> deferred() {
+            return new DeferredResult<>();
+        }
+
+        @GetMapping("/stream")
+        StreamingResponseBody stream() {
+            return outputStream -> outputStream.write('s');
+        }
+    }
+}
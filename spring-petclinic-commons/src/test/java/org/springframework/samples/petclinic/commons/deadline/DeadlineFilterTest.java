@@ -0,0 +1,52 @@
+package org.springframework.samples.petclinic.commons.deadline;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeadlineFilterTest {
+
+    private final DeadlineFilter filter = new DeadlineFilter();
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    private final MockFilterChain chain = new MockFilterChain();
+
+    @Test
+    void shouldRejectRequestPastItsDeadline() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/owners/1");
+        request.addHeader(RequestDeadline.HEADER, System.currentTimeMillis() - 1);
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.GATEWAY_TIMEOUT.value());
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void shouldKeepDeadlineOfRequest() throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/owners/1");
+        request.addHeader(RequestDeadline.HEADER, deadline);
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(chain.getRequest()).isSameAs(request);
+        assertThat(request.getAttribute(RequestDeadline.ATTRIBUTE)).isEqualTo(deadline);
+    }
+
+    @Test
+    void shouldIgnoreInvalidDeadline() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/owners/1");
+        request.addHeader(RequestDeadline.HEADER, "tomorrow");
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(chain.getRequest()).isSameAs(request);
+        assertThat(request.getAttribute(RequestDeadline.ATTRIBUTE)).isNull();
+    }
+}
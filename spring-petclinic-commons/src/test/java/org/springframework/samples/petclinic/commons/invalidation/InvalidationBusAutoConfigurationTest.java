@@ -0,0 +1,63 @@
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvalidationBusAutoConfigurationTest {
+
+    private static final AutoConfigurations CONFIGURATIONS =
+        AutoConfigurations.of(JacksonAutoConfiguration.class, InvalidationBusAutoConfiguration.class);
+
+    @Test
+    void shouldReceiveInvalidationsInServletApplication() {
+        new WebApplicationContextRunner()
+            .withConfiguration(CONFIGURATIONS)
+            .withPropertyValues("spring.application.name=customers-service",
+                "petclinic.invalidation-bus.subscribers=api-gateway", "petclinic.invalidation-bus.retention=1m")
+            .run(context -> {
+                assertThat(context).hasSingleBean(InvalidationBus.class);
+                assertThat(context).hasSingleBean(InvalidationBusController.class);
+                assertThat(context).doesNotHaveBean(ReactiveInvalidationBusController.class);
+                InvalidationBusProperties properties = context.getBean(InvalidationBusProperties.class);
+                assertThat(properties.subscribers()).containsExactly("api-gateway");
+                assertThat(properties.publishers()).isEmpty();
+                assertThat(properties.retention()).isEqualTo(Duration.ofMinutes(1));
+                // no discovery client, no other instance
+                context.getBean(InvalidationBus.class).refresh();
+            });
+    }
+
+    @Test
+    void shouldReceiveInvalidationsInReactiveApplication() {
+        DiscoveryClient discoveryClient = Mockito.mock(DiscoveryClient.class);
+        new ReactiveWebApplicationContextRunner()
+            .withConfiguration(CONFIGURATIONS)
+            .withBean(DiscoveryClient.class, () -> discoveryClient)
+            .withPropertyValues("spring.application.name=api-gateway")
+            .run(context -> {
+                assertThat(context).hasSingleBean(InvalidationBus.class);
+                context.getBean(InvalidationBus.class).refresh();
+                Mockito.verify(discoveryClient).getInstances("api-gateway");
+                assertThat(context).hasSingleBean(ReactiveInvalidationBusController.class);
+                assertThat(context).doesNotHaveBean(InvalidationBusController.class);
+            });
+    }
+
+    @Test
+    void shouldNotApplyOutsideWebApplications() {
+        new ApplicationContextRunner()
+            .withConfiguration(CONFIGURATIONS)
+            .withPropertyValues("spring.application.name=customers-service")
+            .run(context -> assertThat(context).doesNotHaveBean(InvalidationBus.class));
+    }
+}
@@ -0,0 +1,73 @@
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Batch;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Event;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Invalidation;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvalidationBusControllerTest {
+
+    private static final Batch BATCH = new Batch("api-gateway-1", List.of(new Event(1, "owner-details", "1")));
+
+    private final Queue<Invalidation> received = new ConcurrentLinkedQueue<>();
+
+    private final InvalidationBus invalidationBus = new InvalidationBus(event -> received.add((Invalidation) event),
+        new ObjectMapper(), () -> null,
+        serviceId -> List.of(new DefaultServiceInstance("api-gateway-1", "api-gateway", "127.0.0.1", 8080, false)),
+        "api-gateway", new InvalidationBusProperties(Duration.ofMillis(50), Duration.ofSeconds(2), Duration.ofMinutes(10),
+            List.of(), List.of()));
+
+    @BeforeEach
+    void refresh() {
+        invalidationBus.refresh();
+    }
+
+    @Test
+    void shouldReceiveBatchesFromRegisteredInstances() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("127.0.0.1");
+
+        assertThat(new InvalidationBusController(invalidationBus).receive(BATCH, request).getStatusCode())
+            .isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(received).containsExactly(new Invalidation("owner-details", "1"));
+    }
+
+    @Test
+    void shouldRejectBatchesFromOtherAddresses() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("192.0.2.1");
+
+        assertThat(new InvalidationBusController(invalidationBus).receive(BATCH, request).getStatusCode())
+            .isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(received).isEmpty();
+    }
+
+    @Test
+    void shouldReceiveBatchesReactively() {
+        ReactiveInvalidationBusController controller = new ReactiveInvalidationBusController(invalidationBus);
+
+        assertThat(controller.receive(BATCH, MockServerHttpRequest.post(InvalidationBus.PATH)
+            .remoteAddress(new InetSocketAddress("192.0.2.1", 40000))
+            .build()).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(controller.receive(BATCH, MockServerHttpRequest.post(InvalidationBus.PATH).build()).getStatusCode())
+            .isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(controller.receive(BATCH, MockServerHttpRequest.post(InvalidationBus.PATH)
+            .remoteAddress(new InetSocketAddress("127.0.0.1", 40000))
+            .build()).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(received).containsExactly(new Invalidation("owner-details", "1"));
+    }
+}
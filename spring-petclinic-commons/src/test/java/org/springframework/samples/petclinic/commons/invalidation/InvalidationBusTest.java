@@ -0,0 +1,248 @@
+package org.springframework.samples.petclinic.commons.invalidation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Batch;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Event;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus.Invalidation;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvalidationBusTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Queue<Invalidation> published = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Invalidation> received = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Batch> batches = new ConcurrentLinkedQueue<>();
+
+    private final InvalidationBus receiver = new InvalidationBus(event -> received.add((Invalidation) event), objectMapper, () -> null,
+        serviceId -> serviceId.equals("customers-service") ? List.of(instance(1)) : List.of(), "customers-service",
+        properties(Duration.ofMinutes(1)));
+
+    private final List<ServiceInstance> registered = new CopyOnWriteArrayList<>();
+
+    private HttpServer peer;
+
+    private volatile boolean peerAvailable = true;
+
+    private InvalidationBus bus;
+
+    @BeforeEach
+    void start() throws IOException {
+        peer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        peer.createContext(InvalidationBus.PATH, exchange -> {
+            if (peerAvailable) {
+                Batch batch = objectMapper.readValue(exchange.getRequestBody(), Batch.class);
+                batches.add(batch);
+                receiver.receive(batch);
+            }
+            exchange.sendResponseHeaders(peerAvailable ? 204 : 503, -1);
+            exchange.close();
+        });
+        peer.start();
+        registered.addAll(List.of(instance(1), instance(peer.getAddress().getPort())));
+        bus = bus(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void stop() {
+        bus.stop();
+        peer.stop(0);
+    }
+
+    @Test
+    void shouldRaiseInvalidationsOnEveryInstance() throws InterruptedException {
+        bus.start();
+
+        bus.publish("owners", 1);
+
+        assertThat(published).containsExactly(new Invalidation("owners", "1"));
+        await(() -> !received.isEmpty());
+        assertThat(received).containsExactly(new Invalidation("owners", "1"));
+    }
+
+    @Test
+    void shouldSendInvalidationsOfSameKeyOnce() throws InterruptedException {
+        bus.publish("owners", 1);
+        bus.publish("owners", 2);
+        bus.publish("owners", 1);
+
+        bus.start();
+
+        await(() -> received.size() == 2);
+        assertThat(received).containsExactly(new Invalidation("owners", "2"), new Invalidation("owners", "1"));
+        assertThat(batches).singleElement()
+            .satisfies(batch -> assertThat(batch.events()).extracting(Event::sequence).containsExactly(2L, 3L));
+    }
+
+    @Test
+    void shouldSendInvalidationsAgainUntilAcknowledged() throws InterruptedException {
+        peerAvailable = false;
+        bus.start();
+        bus.publish("owners", 1);
+        Thread.sleep(100);
+        assertThat(received).isEmpty();
+
+        peerAvailable = true;
+
+        await(() -> !received.isEmpty());
+        assertThat(received).containsExactly(new Invalidation("owners", "1"));
+    }
+
+    @Test
+    void shouldIgnoreInvalidationsAlreadyReceived() {
+        receiver.receive(new Batch("customers-service-1", List.of(new Event(1, "owners", "1"), new Event(2, "owners", "2"))));
+        receiver.receive(new Batch("customers-service-1", List.of(new Event(2, "owners", "2"), new Event(3, "pets", "7"))));
+        receiver.receive(new Batch("customers-service-3", List.of(new Event(1, "owners", "1"))));
+
+        assertThat(received).containsExactly(
+            new Invalidation("owners", "1"),
+            new Invalidation("owners", "2"),
+            new Invalidation("pets", "7"),
+            new Invalidation("owners", "1"));
+    }
+
+    @Test
+    void shouldKeepInvalidationsOfInstanceMissingForAWhile() throws InterruptedException {
+        peerAvailable = false;
+        bus.publish("owners", 1);
+        bus.flush();
+        ServiceInstance other = registered.remove(1);
+        bus.publish("owners", 2);
+        bus.flush();
+
+        peerAvailable = true;
+        registered.add(other);
+        bus.start();
+
+        await(() -> received.size() == 2);
+        assertThat(received).containsExactly(new Invalidation("owners", "1"), new Invalidation("owners", "2"));
+    }
+
+    @Test
+    void shouldSendToInstanceBackAfterRetention() throws InterruptedException {
+        bus = bus(Duration.ZERO);
+        bus.publish("owners", 1);
+        bus.flush();
+        await(() -> received.size() == 1);
+
+        ServiceInstance other = registered.remove(1);
+        Thread.sleep(1);
+        bus.flush();
+        registered.add(other);
+        bus.publish("owners", 2);
+        bus.flush();
+
+        // numbered from the start again, under another sender
+        await(() -> received.size() == 2);
+        assertThat(received).containsExactly(new Invalidation("owners", "1"), new Invalidation("owners", "2"));
+        assertThat(batches).extracting(Batch::sender).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shouldSendToSubscribedServices() throws InterruptedException {
+        ServiceInstance gateway = registered.remove(1);
+        bus = new InvalidationBus(event -> published.add((Invalidation) event), objectMapper, () -> registered.get(0),
+            serviceId -> serviceId.equals("api-gateway") ? List.of(gateway) : registered, "customers-service",
+            new InvalidationBusProperties(Duration.ofMillis(10), Duration.ofSeconds(1), Duration.ofMinutes(1),
+                List.of("api-gateway"), List.of()));
+        bus.start();
+
+        bus.publish("owners", 1);
+
+        await(() -> !received.isEmpty());
+        assertThat(received).containsExactly(new Invalidation("owners", "1"));
+    }
+
+    @Test
+    void shouldForgetOldestSenders() {
+        for (int sender = 0; sender <= 1024; sender++) {
+            receiver.receive(new Batch("customers-service-" + sender, List.of(new Event(1, "owners", "1"))));
+        }
+        received.clear();
+
+        receiver.receive(new Batch("customers-service-1024", List.of(new Event(1, "owners", "1"))));
+        receiver.receive(new Batch("customers-service-0", List.of(new Event(1, "owners", "1"))));
+
+        assertThat(received).containsExactly(new Invalidation("owners", "1"));
+    }
+
+    @Test
+    void shouldOnlyAcceptBatchesFromRegisteredInstances() throws IOException {
+        receiver.refresh();
+        Batch batch = new Batch("customers-service-1", List.of(new Event(1, "owners", "1")));
+
+        assertThat(receiver.receive(batch, InetAddress.getByName("192.0.2.1"))).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(receiver.receive(batch, null)).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(received).isEmpty();
+        assertThat(receiver.receive(new Batch(null, List.of()), InetAddress.getLoopbackAddress())).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(receiver.receive(batch, InetAddress.getLoopbackAddress())).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(received).containsExactly(new Invalidation("owners", "1"));
+    }
+
+    @Test
+    void shouldSkipInvalidationsThatFail() {
+        InvalidationBus failing = new InvalidationBus(event -> {
+            Invalidation invalidation = (Invalidation) event;
+            if (invalidation.key().equals("George")) {
+                throw new NumberFormatException(invalidation.key());
+            }
+            received.add(invalidation);
+        }, objectMapper, () -> null, serviceId -> List.of(), "customers-service", properties(Duration.ofMinutes(1)));
+
+        failing.receive(new Batch("customers-service-1", List.of(new Event(1, "owners", "George"), new Event(2, null, "1"),
+            new Event(3, "owners", "3"))));
+        failing.receive(new Batch("customers-service-1", List.of(new Event(1, "owners", "George"), new Event(4, "owners", "4"))));
+
+        assertThat(received).containsExactly(new Invalidation("owners", "3"), new Invalidation("owners", "4"));
+    }
+
+    @Test
+    void shouldOnlyRaiseInvalidationsLocallyWhenNotRegistered() {
+        receiver.publish("owners", 1);
+
+        assertThat(received).containsExactly(new Invalidation("owners", "1"));
+        assertThat(batches).isEmpty();
+    }
+
+    private InvalidationBus bus(Duration retention) {
+        return new InvalidationBus(event -> published.add((Invalidation) event), objectMapper, () -> registered.get(0),
+            serviceId -> registered, "customers-service", properties(retention));
+    }
+
+    private static InvalidationBusProperties properties(Duration retention) {
+        return new InvalidationBusProperties(Duration.ofMillis(10), Duration.ofSeconds(1), retention, List.of(), List.of());
+    }
+
+    private static ServiceInstance instance(int port) {
+        return new DefaultServiceInstance("customers-service-" + port, "customers-service", "localhost", port, false);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
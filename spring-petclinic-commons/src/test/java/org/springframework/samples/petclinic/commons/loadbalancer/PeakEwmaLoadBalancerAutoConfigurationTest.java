@@ -0,0 +1,92 @@
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.FilteredClassLoader;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactiveLoadBalancer;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.cloud.loadbalancer.config.LoadBalancerAutoConfiguration;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeakEwmaLoadBalancerAutoConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(LoadBalancerAutoConfiguration.class,
+            PeakEwmaLoadBalancerAutoConfiguration.class))
+        .withUserConfiguration(LoadBalancing.class);
+
+    @Test
+    void shouldBindLoadBalancingProperties() {
+        contextRunner
+            .withPropertyValues("petclinic.load-balancer.decay-time=30s")
+            .run(context -> {
+                LoadBalancingProperties properties = context.getBean(LoadBalancingProperties.class);
+                assertThat(properties.decayTime()).isEqualTo(Duration.ofSeconds(30));
+                assertThat(properties.failurePenalty()).isEqualTo(Duration.ofSeconds(1));
+            });
+    }
+
+    @Test
+    void shouldBalanceEveryServiceOnLatency() {
+        contextRunner.run(context -> {
+            LoadBalancerClientFactory factory = context.getBean(LoadBalancerClientFactory.class);
+
+            ReactiveLoadBalancer<ServiceInstance> customers = factory.getInstance("customers-service");
+            ReactiveLoadBalancer<ServiceInstance> vets = factory.getInstance("vets-service");
+
+            assertThat(customers).isInstanceOf(PeakEwmaLoadBalancer.class);
+            assertThat(vets).isInstanceOf(PeakEwmaLoadBalancer.class).isNotSameAs(customers);
+        });
+    }
+
+    @Test
+    void shouldPassOutcomesOnToListenerBeans() {
+        contextRunner
+            .withUserConfiguration(ListenerConfiguration.class)
+            .run(context -> {
+                ServiceInstance instance = new DefaultServiceInstance("vets-1", "vets-service", "10.0.0.1", 8083, false);
+
+                context.getBean(LoadBalancerStats.class).of(instance).start().failed();
+
+                assertThat(context.getBean(ListenerConfiguration.class).failures).containsExactly(instance);
+            });
+    }
+
+    @Test
+    void shouldNotApplyWithoutReactiveClient() {
+        contextRunner
+            .withClassLoader(new FilteredClassLoader(ExchangeFilterFunction.class))
+            .run(context -> assertThat(context).doesNotHaveBean(LoadBalancerStats.class));
+    }
+
+    @LoadBalancerClients(defaultConfiguration = PeakEwmaLoadBalancerConfiguration.class)
+    static class LoadBalancing {
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class ListenerConfiguration {
+
+        private final List<ServiceInstance> failures = new ArrayList<>();
+
+        @Bean
+        CallOutcomeListener failedInstances() {
+            return (instance, failed) -> {
+                if (failed) {
+                    failures.add(instance);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.springframework.samples.petclinic.commons.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+import org.springframework.cloud.loadbalancer.support.SimpleObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats.Call;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats.InstanceScore;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeakEwmaLoadBalancerTest {
+
+    private final ServiceInstance healthy = new DefaultServiceInstance("vets-1", "vets-service", "10.0.0.1", 8083, false);
+
+    private final ServiceInstance degraded = new DefaultServiceInstance("vets-2", "vets-service", "10.0.0.2", 8083, false);
+
+    private final List<String> outcomes = new ArrayList<>();
+
+    private final LoadBalancerStats stats = new LoadBalancerStats(
+        new LoadBalancingProperties(Duration.ofSeconds(10), Duration.ofSeconds(1)),
+        List.of((instance, failed) -> outcomes.add(instance.getInstanceId() + (failed ? " failed" : " succeeded"))));
+
+    private final PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(
+        new SimpleObjectProvider<>(ServiceInstanceListSuppliers.from("vets-service", healthy, degraded)),
+        "vets-service", stats);
+
+    @Test
+    void shouldAvoidInstanceWithHigherLatency() throws InterruptedException {
+        Call slow = stats.of(degraded).start();
+        Call fast = stats.of(healthy).start();
+        fast.succeeded();
+        Thread.sleep(20);
+        slow.succeeded();
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.choose().block().getServer()).isEqualTo(healthy);
+        }
+    }
+
+    @Test
+    void shouldAvoidInstanceWithMoreRequestsInFlight() throws InterruptedException {
+        Call first = stats.of(degraded).start();
+        Call second = stats.of(healthy).start();
+        Thread.sleep(10);
+        first.succeeded();
+        second.succeeded();
+        for (int i = 0; i < 3; i++) {
+            stats.of(degraded).start();
+        }
+
+        assertThat(loadBalancer.choose().block().getServer()).isEqualTo(healthy);
+    }
+
+    @Test
+    void shouldAvoidUnknownInstanceWithRequestsInFlight() {
+        stats.of(healthy).start().succeeded();
+        stats.of(degraded).start();
+
+        assertThat(loadBalancer.choose().block().getServer()).isEqualTo(healthy);
+    }
+
+    @Test
+    void shouldChooseNothingWithoutInstances() {
+        assertThat(loadBalancer.getInstanceResponse(List.of()).hasServer()).isFalse();
+        assertThat(loadBalancer.getInstanceResponse(List.of(degraded)).getServer()).isEqualTo(degraded);
+    }
+
+    @Test
+    void shouldPenalizeFailuresAndForgetThemOverTime() {
+        stats.of(healthy).start().succeeded();
+        stats.of(degraded).start().failed();
+        long now = System.nanoTime();
+
+        assertThat(stats.of(degraded).cost(now)).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(900));
+        assertThat(stats.of(degraded).cost(now + TimeUnit.MINUTES.toNanos(5))).isLessThan(1);
+    }
+
+    @Test
+    void shouldPassOutcomesOnToListeners() {
+        Call call = stats.of(healthy).start();
+        call.succeeded();
+        call.failed();
+        stats.of(degraded).start().failed();
+        stats.of(degraded).start().cancelled();
+
+        assertThat(outcomes).containsExactly("vets-1 succeeded", "vets-2 failed");
+    }
+
+    @Test
+    void shouldNotCountCancelledRequests() {
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> Mono.never())
+            .filter(stats.exchangeFilter())
+            .build();
+        stats.of(healthy);
+
+        webClient.get().uri("http://10.0.0.1:8083/vets").retrieve().toBodilessEntity().subscribe().dispose();
+
+        assertThat(scoreOf(healthy).inFlight()).isZero();
+        assertThat(scoreOf(healthy).latencyMillis()).isZero();
+    }
+
+    @Test
+    void shouldCountServerErrorsOfWebClientAsFailures() {
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build()))
+            .filter(stats.exchangeFilter())
+            .build();
+        stats.of(healthy);
+
+        webClient.get().uri("http://10.0.0.1:8083/vets").exchangeToMono(response -> response.releaseBody()).block();
+
+        assertThat(scoreOf(healthy).latencyMillis()).isGreaterThan(900);
+    }
+
+    @Test
+    void shouldReportScoresBestFirstThroughTheEndpoint() throws InterruptedException {
+        Call slow = stats.of(degraded).start();
+        stats.of(healthy).start().succeeded();
+        Thread.sleep(10);
+        slow.succeeded();
+
+        assertThat(new LoadBalancerEndpoint(stats).scores().get("vets-service"))
+            .extracting(InstanceScore::instanceId)
+            .containsExactly("vets-1", "vets-2");
+    }
+
+    private InstanceScore scoreOf(ServiceInstance instance) {
+        return stats.scores().get(instance.getServiceId()).stream()
+            .filter(score -> score.instanceId().equals(instance.getInstanceId()))
+            .findFirst()
+            .orElseThrow();
+    }
+}
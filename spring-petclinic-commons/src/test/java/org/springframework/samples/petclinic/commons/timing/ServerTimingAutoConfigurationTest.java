@@ -0,0 +1,188 @@
+package org.springframework.samples.petclinic.commons.timing;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ServerTimingAutoConfigurationTest {
+
+    private final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class,
+            WebMvcAutoConfiguration.class, ServerTimingAutoConfiguration.class))
+        .withUserConfiguration(TimedController.class);
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldReportPhasesWhenAsked() {
+        contextRunner.run(context -> mockMvc(context)
+            .perform(get("/owners").header(ServerTiming.REQUEST_HEADER, "true").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].name").value("George"))
+            .andExpect(header().string(ServerTiming.HEADER, matchesPattern(
+                "controller;dur=[0-9.]+, repository;dur=0.0;desc=\"0 calls\", serialization;dur=[0-9.]+"))));
+    }
+
+    @Test
+    void shouldNotReportPhasesByDefault() {
+        contextRunner.run(context -> mockMvc(context)
+            .perform(get("/owners").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(ServerTiming.HEADER)));
+    }
+
+    @Test
+    void shouldNotTimeStreamsAskedFor() {
+        contextRunner.run(context -> {
+            MockMvc mockMvc = mockMvc(context);
+            for (MediaType stream : List.of(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM)) {
+                MvcResult result = mockMvc.perform(get("/owners/stream").header(ServerTiming.REQUEST_HEADER, "true").accept(stream))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+                assertThat(result.getRequest().getAttribute(ServerTiming.ATTRIBUTE)).isNull();
+            }
+        });
+    }
+
+    @Test
+    void shouldStreamWithoutBuffering() {
+        contextRunner.run(context -> {
+            MvcResult result = mockMvc(context)
+                .perform(get("/owners/stream").header(ServerTiming.REQUEST_HEADER, "true").accept(MediaType.ALL))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+            result.getAsyncResult();
+
+            assertThat(result.getRequest().getAttribute(ServerTiming.ATTRIBUTE)).isNull();
+            assertThat(result.getResponse().getContentAsString(StandardCharsets.UTF_8)).isEqualTo("{\"name\":\"George\"}\n");
+            assertThat(result.getResponse().getHeader(ServerTiming.HEADER)).isNull();
+        });
+    }
+
+    @Test
+    void shouldWriteDeferredResultsWithoutBuffering() {
+        contextRunner.run(context -> {
+            MockMvc mockMvc = mockMvc(context);
+            MvcResult result = mockMvc
+                .perform(get("/owners/deferred").header(ServerTiming.REQUEST_HEADER, "true").accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"name\":\"George\"}"))
+                .andExpect(header().doesNotExist(ServerTiming.HEADER));
+        });
+    }
+
+    @Test
+    void shouldTimeRepositoryCalls() {
+        contextRunner
+            .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+                JpaRepositoriesAutoConfiguration.class))
+            .withUserConfiguration(RepositoryConfiguration.class)
+            .run(context -> {
+                ServerTiming serverTiming = new ServerTiming();
+                MockHttpServletRequest request = new MockHttpServletRequest();
+                request.setAttribute(ServerTiming.ATTRIBUTE, serverTiming);
+                RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+                context.getBean(OwnerRepository.class).count();
+
+                assertThat(serverTiming.toHeaderValue()).contains("desc=\"1 call\"");
+            });
+    }
+
+    @Test
+    void shouldNotApplyOutsideServletApplications() {
+        new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(ServerTimingAutoConfiguration.class))
+            .run(context -> assertThat(context).doesNotHaveBean(ServerTimingFilter.class));
+    }
+
+    private static MockMvc mockMvc(WebApplicationContext context) {
+        return MockMvcBuilders.webAppContextSetup(context)
+            .addFilters(context.getBean(ServerTimingFilter.class))
+            .build();
+    }
+
+    @RestController
+    static class TimedController {
+
+        @GetMapping("/owners")
+        List<Map<String, String>> owners() {
+            return List.of(Map.of("name", "George"));
+        }
+
+        @GetMapping("/owners/stream")
+        StreamingResponseBody stream() {
+            return outputStream -> outputStream.write("{\"name\":\"George\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @GetMapping("/owners/deferred")
+        DeferredResult<Map<String, String>> deferred() {
+            DeferredResult<Map<String, String>> result = new DeferredResult<>();
+            result.setResult(Map.of("name", "George"));
+            return result;
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EntityScan(basePackageClasses = Owner.class)
+    @EnableJpaRepositories(basePackageClasses = OwnerRepository.class, considerNestedRepositories = true)
+    static class RepositoryConfiguration {
+    }
+
+    @Entity
+    static class Owner {
+
+        @Id
+        Integer id;
+    }
+
+    interface OwnerRepository extends CrudRepository<Owner, Integer> {
+    }
+}
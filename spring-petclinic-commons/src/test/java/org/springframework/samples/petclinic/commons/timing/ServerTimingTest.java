@@ -0,0 +1,78 @@
+package org.springframework.samples.petclinic.commons.timing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocation;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerTimingTest {
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldNotTimeOutsideRequests() throws Exception {
+        assertThat(ServerTiming.current()).isNull();
+
+        ServerTiming.repositoryInvoked(invocation(TimeUnit.MILLISECONDS.toNanos(5)));
+    }
+
+    @Test
+    void shouldNotTimeRequestsNotAskingForIt() throws Exception {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        assertThat(ServerTiming.current()).isNull();
+        ServerTiming.repositoryInvoked(invocation(TimeUnit.MILLISECONDS.toNanos(5)));
+    }
+
+    @Test
+    void shouldCountRepositoryCallsOfCurrentRequest() throws Exception {
+        ServerTiming serverTiming = bindServerTiming();
+
+        ServerTiming.repositoryInvoked(invocation(TimeUnit.MILLISECONDS.toNanos(5)));
+        assertThat(serverTiming.toHeaderValue()).contains("repository;dur=5.0;desc=\"1 call\"");
+
+        ServerTiming.repositoryInvoked(invocation(TimeUnit.MILLISECONDS.toNanos(3)));
+        assertThat(serverTiming.toHeaderValue()).contains("repository;dur=8.0;desc=\"2 calls\"");
+    }
+
+    @Test
+    void shouldReportNoSerializationWithoutBody() {
+        ServerTiming serverTiming = new ServerTiming();
+
+        assertThat(serverTiming.toHeaderValue())
+            .matches("controller;dur=[0-9.]+, repository;dur=0.0;desc=\"0 calls\", serialization;dur=0.0");
+    }
+
+    @Test
+    void shouldKeepStartOfFirstBodyWrite() throws Exception {
+        ServerTiming serverTiming = new ServerTiming();
+        serverTiming.bodyWriteStarted();
+        Thread.sleep(20);
+        serverTiming.bodyWriteStarted();
+
+        String serialization = serverTiming.toHeaderValue().replaceAll(".*serialization;dur=", "");
+        assertThat(Double.parseDouble(serialization)).isGreaterThanOrEqualTo(20);
+    }
+
+    private static ServerTiming bindServerTiming() {
+        ServerTiming serverTiming = new ServerTiming();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(ServerTiming.ATTRIBUTE, serverTiming);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        return serverTiming;
+    }
+
+    private static RepositoryMethodInvocation invocation(long nanos) throws NoSuchMethodException {
+        return new RepositoryMethodInvocation(CrudRepository.class, CrudRepository.class.getMethod("count"), null, nanos);
+    }
+}
@@ -0,0 +1,45 @@
+package org.springframework.samples.petclinic.commons.transport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+import java.util.Date;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CborAutoConfigurationTest {
+
+    private static final AutoConfigurations CONFIGURATIONS =
+        AutoConfigurations.of(JacksonAutoConfiguration.class, CborAutoConfiguration.class);
+
+    @Test
+    void shouldWriteCborLikeTheJsonResponses() {
+        new WebApplicationContextRunner()
+            .withConfiguration(CONFIGURATIONS)
+            .run(context -> {
+                MappingJackson2CborHttpMessageConverter converter = context.getBean(MappingJackson2CborHttpMessageConverter.class);
+                assertThat(converter.getSupportedMediaTypes()).contains(MediaType.APPLICATION_CBOR);
+
+                byte[] cbor = converter.getObjectMapper().writeValueAsBytes(Map.of("birthDate", new Date(0)));
+
+                JsonNode pet = new ObjectMapper(new CBORFactory()).readTree(cbor);
+                assertThat(pet.get("birthDate").asText()).startsWith("1970-01-01T00:00:00");
+            });
+    }
+
+    @Test
+    void shouldNotApplyToReactiveApplications() {
+        new ReactiveWebApplicationContextRunner()
+            .withConfiguration(CONFIGURATIONS)
+            .run(context -> assertThat(context).doesNotHaveBean(MappingJackson2CborHttpMessageConverter.class));
+    }
+}
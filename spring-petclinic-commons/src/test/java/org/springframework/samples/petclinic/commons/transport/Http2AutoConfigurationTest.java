@@ -0,0 +1,61 @@
+package org.springframework.samples.petclinic.commons.transport;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.boot.web.servlet.context.AnnotationConfigServletWebServerApplicationContext;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Http2AutoConfigurationTest {
+
+    @Test
+    void shouldAcceptCleartextHttp2() {
+        new WebApplicationContextRunner(AnnotationConfigServletWebServerApplicationContext::new)
+            .withConfiguration(AutoConfigurations.of(ServletWebServerFactoryAutoConfiguration.class,
+                DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class, Http2AutoConfiguration.class))
+            .withUserConfiguration(PingController.class)
+            .withPropertyValues("server.port=0", "server.http2.enabled=true")
+            .run(context -> {
+                int port = context.getSourceApplicationContext(ServletWebServerApplicationContext.class).getWebServer().getPort();
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+
+                HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ping")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+                assertThat(response.statusCode()).isEqualTo(200);
+                assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_2);
+                assertThat(response.body()).isEqualTo("pong");
+            });
+    }
+
+    @Test
+    void shouldNotApplyOutsideServletApplications() {
+        new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(Http2AutoConfiguration.class))
+            .run(context -> assertThat(context).doesNotHaveBean(TomcatConnectorCustomizer.class));
+    }
+
+    @RestController
+    static class PingController {
+
+        @GetMapping("/ping")
+        String ping() {
+            return "pong";
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.springframework.samples.petclinic.commons.transport;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MediaStreamsTest {
+
+    @Test
+    void shouldRecognizeRequestedStreams() {
+        assertThat(MediaStreams.isRequested("application/json, application/x-ndjson;q=0.9")).isTrue();
+        assertThat(MediaStreams.isRequested(List.of(MediaType.TEXT_EVENT_STREAM))).isTrue();
+    }
+
+    @Test
+    void shouldNotTakeWildcardsOrMalformedHeadersForStreams() {
+        assertThat(MediaStreams.isRequested("*/*")).isFalse();
+        assertThat(MediaStreams.isRequested("application/*")).isFalse();
+        assertThat(MediaStreams.isRequested("application/x-ndjson;q")).isFalse();
+        assertThat(MediaStreams.isRequested((String) null)).isFalse();
+    }
+
+    @Test
+    void shouldRecognizeStreamedResponses() {
+        assertThat(MediaStreams.isStream(MediaType.parseMediaType("text/event-stream;charset=UTF-8"))).isTrue();
+        assertThat(MediaStreams.isStream(MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(MediaStreams.isStream(null)).isFalse();
+    }
+}
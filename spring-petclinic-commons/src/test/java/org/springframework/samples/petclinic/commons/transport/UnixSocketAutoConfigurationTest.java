@@ -0,0 +1,86 @@
+package org.springframework.samples.petclinic.commons.transport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.servlet.context.AnnotationConfigServletWebServerApplicationContext;
+import org.springframework.samples.petclinic.commons.transport.UnixSocketAutoConfiguration.UnixSocketConnectorCustomizer;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.InputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UnixSocketAutoConfigurationTest {
+
+    private final WebApplicationContextRunner contextRunner =
+        new WebApplicationContextRunner(AnnotationConfigServletWebServerApplicationContext::new)
+            .withConfiguration(AutoConfigurations.of(PropertyPlaceholderAutoConfiguration.class, ServletWebServerFactoryAutoConfiguration.class,
+                DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class, UnixSocketAutoConfiguration.class))
+            .withUserConfiguration(PingController.class)
+            .withPropertyValues("server.port=0");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldServeRequestsOnTheSocket() {
+        Path socket = directory.resolve("service.sock");
+        contextRunner
+            .withPropertyValues("petclinic.unix-socket.path=" + socket)
+            .run(context -> {
+                assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(socket))).isEqualTo("rw-rw----");
+
+                try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+                    channel.write(ByteBuffer.wrap((
+                        "GET /ping HTTP/1.1\r\n" +
+                        "Host: service\r\n" +
+                        "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII)));
+                    InputStream response = Channels.newInputStream(channel);
+
+                    assertThat(new String(response.readAllBytes(), StandardCharsets.UTF_8))
+                        .startsWith("HTTP/1.1 200")
+                        .endsWith("pong");
+                }
+            });
+    }
+
+    @Test
+    void shouldReplaceStaleSocket() throws Exception {
+        Path socket = Files.createFile(directory.resolve("service.sock"));
+        contextRunner
+            .withPropertyValues("petclinic.unix-socket.path=" + socket, "petclinic.unix-socket.permissions=rw-------")
+            .run(context -> {
+                assertThat(context).hasNotFailed();
+                assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(socket))).isEqualTo("rw-------");
+            });
+    }
+
+    @Test
+    void shouldOnlyListenOnTcpWithoutPath() {
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(UnixSocketConnectorCustomizer.class));
+    }
+
+    @RestController
+    static class PingController {
+
+        @GetMapping("/ping")
+        String ping() {
+            return "pong";
+        }
+    }
+}
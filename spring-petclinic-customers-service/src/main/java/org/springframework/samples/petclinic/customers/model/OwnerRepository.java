@@ -15,8 +15,17 @@
  */
 package org.springframework.samples.petclinic.customers.model;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 /**
  * Repository class for <code>Owner</code> domain objects All method names are compliant with Spring Data naming
@@ -28,6 +37,20 @@ import java.util.List;
  * @author Michael Isvy
  * @author Maciej Szarlinski
  */
+@Transactional(readOnly = true)
 public interface OwnerRepository extends JpaRepository<Owner, Integer> {
     List<Owner> findByLastName(String lastName);
+
+    /**
+     * Streams all owners with their pets, reading the result set with a database cursor instead of
+     * loading it at once. Must be consumed inside a transaction and closed afterwards.
+     * <p>
+     * With MySQL, the JDBC URL needs {@code useCursorFetch=true} for the fetch size to be honored.
+     */
+    @Query("select distinct o from Owner o left join fetch o.pets p left join fetch p.type order by o.id")
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "200"),
+        @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    Stream<Owner> streamAll();
 }
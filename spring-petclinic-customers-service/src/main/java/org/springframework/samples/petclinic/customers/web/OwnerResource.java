@@ -15,19 +15,33 @@
  */
 package org.springframework.samples.petclinic.customers.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
 import org.springframework.samples.petclinic.customers.web.mapper.OwnerEntityMapper;
 import org.springframework.samples.petclinic.customers.model.Owner;
 import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * @author Juergen Hoeller
@@ -43,12 +57,25 @@ class OwnerResource {
 
     private static final Logger log = LoggerFactory.getLogger(OwnerResource.class);
 
+    private static final int STREAM_FLUSH_INTERVAL = 100;
+
     private final OwnerRepository ownerRepository;
     private final OwnerEntityMapper ownerEntityMapper;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+    private final EntityManager entityManager;
+    private final InvalidationBus invalidationBus;
 
-    OwnerResource(OwnerRepository ownerRepository, OwnerEntityMapper ownerEntityMapper) {
+    OwnerResource(OwnerRepository ownerRepository, OwnerEntityMapper ownerEntityMapper, ObjectMapper objectMapper,
+                  PlatformTransactionManager transactionManager, EntityManager entityManager,
+                  InvalidationBus invalidationBus) {
         this.ownerRepository = ownerRepository;
         this.ownerEntityMapper = ownerEntityMapper;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.entityManager = entityManager;
+        this.invalidationBus = invalidationBus;
     }
 
     /**
@@ -78,6 +105,40 @@ class OwnerResource {
         return ownerRepository.findAll();
     }
 
+    /**
+     * Stream all Owners as newline-delimited JSON. Owners are read with a cursor and written one per
+     * line as they are read, so neither the list nor the JSON array is ever held in memory.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        final ObjectWriter ownerWriter = objectMapper.writerFor(Owner.class);
+        StreamingResponseBody body = outputStream -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<Owner> owners = ownerRepository.streamAll()) {
+                writeOwners(owners.iterator(), ownerWriter, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+
+    private void writeOwners(Iterator<Owner> owners, ObjectWriter ownerWriter, OutputStream outputStream) throws IOException {
+        int written = 0;
+        while (owners.hasNext()) {
+            Owner owner = owners.next();
+            outputStream.write(ownerWriter.writeValueAsBytes(owner));
+            outputStream.write('\n');
+            // written owners are not needed anymore: keep the persistence context small
+            entityManager.detach(owner);
+            if (++written % STREAM_FLUSH_INTERVAL == 0) {
+                outputStream.flush();
+            }
+        }
+        outputStream.flush();
+    }
+
     /**
      * Update Owner
      */
@@ -90,6 +151,7 @@ class OwnerResource {
         ownerEntityMapper.map(ownerModel, ownerRequest);
         log.info("Saving owner {}", ownerModel);
         ownerRepository.save(ownerModel);
+        invalidationBus.publish("owners", ownerId);
     }
 
     @GetMapping("/search")
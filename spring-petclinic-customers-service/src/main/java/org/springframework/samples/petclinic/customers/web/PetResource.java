@@ -21,6 +21,7 @@ import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
 import org.springframework.samples.petclinic.customers.model.*;
 import org.springframework.web.bind.annotation.*;
 
@@ -41,10 +42,12 @@ class PetResource {
 
     private final PetRepository petRepository;
     private final OwnerRepository ownerRepository;
+    private final InvalidationBus invalidationBus;
 
-    PetResource(PetRepository petRepository, OwnerRepository ownerRepository) {
+    PetResource(PetRepository petRepository, OwnerRepository ownerRepository, InvalidationBus invalidationBus) {
         this.petRepository = petRepository;
         this.ownerRepository = ownerRepository;
+        this.invalidationBus = invalidationBus;
     }
 
     @GetMapping("/petTypes")
@@ -72,6 +75,8 @@ class PetResource {
         int petId = petRequest.id();
         Pet pet = findPetById(petId);
         save(pet, petRequest);
+        // the pets are part of the owner
+        invalidationBus.publish("owners", pet.getOwner().getId());
     }
 
     private Pet save(final Pet pet, final PetRequest petRequest) {
@@ -2,8 +2,16 @@ package org.springframework.samples.petclinic.customers;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.test.context.TestPropertySource;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @TestPropertySource(properties = {
     "spring.cloud.discovery.enabled=false",
@@ -15,11 +23,26 @@ import org.springframework.test.context.TestPropertySource;
 })
 class CustomersServiceApplicationTest {
 
+    @LocalServerPort
+    int port;
+
     @Test
     void contextLoads() {
         // This test verifies that the Spring context loads successfully
     }
 
+    @Test
+    void shouldAcceptCleartextHttp2() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/owners")).build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_2);
+    }
+
     @Test
     void mainMethodStartsApplication() {
         // This test verifies that the main method can be called without throwing exceptions
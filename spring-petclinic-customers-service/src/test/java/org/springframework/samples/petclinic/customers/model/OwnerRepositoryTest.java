@@ -0,0 +1,36 @@
+package org.springframework.samples.petclinic.customers.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class OwnerRepositoryTest {
+
+    @Autowired
+    private OwnerRepository ownerRepository;
+
+    @Test
+    void shouldStreamEveryOwnerOnceWithPets() {
+        List<Owner> expected = ownerRepository.findAll();
+
+        List<Owner> streamed;
+        try (Stream<Owner> owners = ownerRepository.streamAll()) {
+            streamed = owners.toList();
+        }
+
+        assertThat(streamed).extracting(Owner::getId)
+            .doesNotHaveDuplicates()
+            .containsExactlyInAnyOrderElementsOf(expected.stream().map(Owner::getId).toList());
+        assertThat(streamed).extracting(Owner::getId).isSorted();
+        Owner withSeveralPets = streamed.stream().filter(owner -> owner.getPets().size() > 1).findFirst().orElseThrow();
+        assertThat(withSeveralPets.getPets()).allSatisfy(pet -> assertThat(pet.getType()).isNotNull());
+    }
+}
@@ -2,17 +2,23 @@ package org.springframework.samples.petclinic.customers.web;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
 import org.springframework.samples.petclinic.customers.model.Owner;
 import org.springframework.samples.petclinic.customers.model.OwnerRepository;
 import org.springframework.samples.petclinic.customers.model.Pet;
 import org.springframework.samples.petclinic.customers.model.PetType;
 import org.springframework.samples.petclinic.customers.web.mapper.OwnerEntityMapper;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
@@ -22,7 +28,9 @@ import java.util.List;
 import java.util.Optional;
 import java.sql.Date;
 import java.time.LocalDate;
+import java.util.stream.Stream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -42,6 +50,18 @@ public class OwnerResourceUnitTest {
     @Mock
     private OwnerEntityMapper ownerEntityMapper;
 
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
     @InjectMocks
     private OwnerResource ownerResource;
 
@@ -135,6 +155,7 @@ public class OwnerResourceUnitTest {
                 .andExpect(status().isNoContent());
         
         verify(ownerRepository).save(any(Owner.class));
+        verify(invalidationBus).publish("owners", 1);
     }
 
     @Test
@@ -192,6 +213,7 @@ public class OwnerResourceUnitTest {
                 .andExpect(status().isNotFound());
         
         verify(ownerRepository, never()).save(any(Owner.class));
+        verifyNoInteractions(invalidationBus);
     }
 
     @Test
@@ -315,4 +337,33 @@ public class OwnerResourceUnitTest {
 
         return owner;
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldStreamOwnersAsNdjson() throws Exception {
+        Owner owner1 = new Owner();
+        owner1.setId(1);
+        owner1.setFirstName("John");
+        owner1.setLastName("Doe");
+        Owner owner2 = new Owner();
+        owner2.setId(2);
+        owner2.setFirstName("Jane");
+        owner2.setLastName("Smith");
+        when(ownerRepository.streamAll()).thenReturn(Stream.of(owner1, owner2));
+
+        MvcResult result = mockMvc.perform(get("/owners/stream")
+                .accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+            .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).get("firstName").asText()).isEqualTo("John");
+        assertThat(objectMapper.readTree(lines[1]).get("firstName").asText()).isEqualTo("Jane");
+        verify(entityManager).detach(owner1);
+        verify(entityManager).detach(owner2);
+    }
+}
@@ -10,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
 import org.springframework.samples.petclinic.customers.model.*;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -36,6 +37,9 @@ public class PetResourceUnitTest {
     @Mock
     private OwnerRepository ownerRepository;
 
+    @Mock
+    private InvalidationBus invalidationBus;
+
     @InjectMocks
     private PetResource petResource;
 
@@ -138,6 +142,8 @@ public class PetResourceUnitTest {
                 .andExpect(status().isNoContent());
         
         verify(petRepository).save(any(Pet.class));
+        verify(invalidationBus).publish("owners", 1);
+        verifyNoMoreInteractions(invalidationBus);
     }
 
     @Test
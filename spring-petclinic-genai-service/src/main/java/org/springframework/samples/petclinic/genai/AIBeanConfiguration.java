@@ -5,17 +5,27 @@ import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats;
+import org.springframework.samples.petclinic.genai.DownstreamServicesProperties.Pool;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 /**
  * A Configuration class for beans used by the Chat Client.
  *
  * @author Oded Shopen
  */
 @Configuration
+@EnableConfigurationProperties(DownstreamServicesProperties.class)
 public class AIBeanConfiguration {
 
 	@Bean
@@ -33,4 +43,60 @@ public class AIBeanConfiguration {
     public WebClient.Builder loadBalancedWebClientBuilder() {
         return WebClient.builder();
     }
+
+	@Bean(destroyMethod = "dispose")
+	ConnectionProvider customersServiceConnectionProvider(DownstreamServicesProperties properties) {
+		return connectionProvider("customers-service", properties.customersService());
+	}
+
+	@Bean(destroyMethod = "dispose")
+	ConnectionProvider vetsServiceConnectionProvider(DownstreamServicesProperties properties) {
+		return connectionProvider("vets-service", properties.vetsService());
+	}
+
+	/**
+	 * Long-lived client towards customers-service, with its own connection pool.
+	 */
+	@Bean
+	WebClient customersServiceWebClient(@LoadBalanced WebClient.Builder webClientBuilder,
+			@Qualifier("customersServiceConnectionProvider") ConnectionProvider connectionProvider,
+			DownstreamServicesProperties properties, LoadBalancerStats loadBalancerStats) {
+		return webClient(webClientBuilder, connectionProvider, properties.customersService(), loadBalancerStats);
+	}
+
+	/**
+	 * Long-lived client towards vets-service, with its own connection pool.
+	 */
+	@Bean
+	WebClient vetsServiceWebClient(@LoadBalanced WebClient.Builder webClientBuilder,
+			@Qualifier("vetsServiceConnectionProvider") ConnectionProvider connectionProvider,
+			DownstreamServicesProperties properties, LoadBalancerStats loadBalancerStats) {
+		return webClient(webClientBuilder, connectionProvider, properties.vetsService(), loadBalancerStats);
+	}
+
+	// metrics(true) publishes the reactor.netty.connection.provider.* pool gauges and the
+	// pending acquire timer to the global Micrometer registry
+	private static ConnectionProvider connectionProvider(String name, Pool pool) {
+		return ConnectionProvider.builder(name)
+			.maxConnections(pool.maxConnections())
+			.pendingAcquireMaxCount(pool.pendingAcquireMaxCount())
+			.pendingAcquireTimeout(pool.pendingAcquireTimeout())
+			.maxIdleTime(pool.maxIdleTime())
+			.maxLifeTime(pool.maxLifeTime())
+			.evictInBackground(pool.evictionInterval())
+			.metrics(true)
+			.build();
+	}
+
+	// the stats filter runs after the load balancer, once the URL points to the chosen instance
+	private static WebClient webClient(WebClient.Builder webClientBuilder, ConnectionProvider connectionProvider, Pool pool,
+			LoadBalancerStats loadBalancerStats) {
+		HttpClient httpClient = HttpClient.create(connectionProvider)
+			.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.connectTimeout().toMillis())
+			.responseTimeout(pool.responseTimeout());
+		return webClientBuilder.clone()
+			.clientConnector(new ReactorClientHttpConnector(httpClient))
+			.filter(loadBalancerStats.exchangeFilter())
+			.build();
+	}
 }
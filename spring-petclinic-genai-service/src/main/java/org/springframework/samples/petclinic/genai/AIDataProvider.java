@@ -5,6 +5,7 @@ import java.util.List;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.samples.petclinic.genai.dto.OwnerDetails;
 import org.springframework.samples.petclinic.genai.dto.PetDetails;
@@ -29,8 +30,8 @@ public class AIDataProvider {
     private final WebClient webClient;
 
 
-	public AIDataProvider(WebClient.Builder webClientBuilder, VectorStore vectorStore) {
-		this.webClient = webClientBuilder.build();
+	public AIDataProvider(@Qualifier("customersServiceWebClient") WebClient webClient, VectorStore vectorStore) {
+		this.webClient = webClient;
 		this.vectorStore = vectorStore;
 	}
 
@@ -0,0 +1,41 @@
+package org.springframework.samples.petclinic.genai;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Connection pools of the WebClients used to call the other petclinic services, one per service.
+ *
+ * @param customersService pool towards customers-service
+ * @param vetsService pool towards vets-service
+ */
+@ConfigurationProperties(prefix = "genai.downstream")
+public record DownstreamServicesProperties(
+	@DefaultValue Pool customersService,
+	@DefaultValue Pool vetsService
+) {
+
+	/**
+	 * @param maxConnections maximum number of connections opened to the service
+	 * @param pendingAcquireMaxCount maximum number of requests waiting for a connection
+	 * @param pendingAcquireTimeout how long a request may wait for a connection
+	 * @param maxIdleTime idle connections are closed after this time
+	 * @param maxLifeTime connections are recycled after this time
+	 * @param evictionInterval how often idle and expired connections are evicted in the background
+	 * @param connectTimeout TCP connect timeout
+	 * @param responseTimeout maximum time to wait for the response after the request was sent
+	 */
+	public record Pool(
+		@DefaultValue("20") int maxConnections,
+		@DefaultValue("100") int pendingAcquireMaxCount,
+		@DefaultValue("2s") Duration pendingAcquireTimeout,
+		@DefaultValue("15s") Duration maxIdleTime,
+		@DefaultValue("5m") Duration maxLifeTime,
+		@DefaultValue("30s") Duration evictionInterval,
+		@DefaultValue("2s") Duration connectTimeout,
+		@DefaultValue("10s") Duration responseTimeout
+	) {
+	}
+}
@@ -18,12 +18,15 @@ package org.springframework.samples.petclinic.genai;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.samples.petclinic.commons.loadbalancer.PeakEwmaLoadBalancerConfiguration;
 
 /**
  * @author Oded Shopen
  */
 @EnableDiscoveryClient
 @SpringBootApplication
+@LoadBalancerClients(defaultConfiguration = PeakEwmaLoadBalancerConfiguration.class)
 public class GenAIServiceApplication {
 
 	public static void main(String[] args) {
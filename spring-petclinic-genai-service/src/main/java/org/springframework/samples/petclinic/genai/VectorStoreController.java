@@ -9,6 +9,7 @@ import org.springframework.ai.document.DocumentReader;
 import org.springframework.ai.reader.JsonReader;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.ParameterizedTypeReference;
@@ -41,8 +42,8 @@ public class VectorStoreController {
 	private final VectorStore vectorStore;
     private final WebClient webClient;
 
-    public VectorStoreController(VectorStore vectorStore, WebClient.Builder webClientBuilder) {
-		this.webClient = webClientBuilder.build();
+    public VectorStoreController(VectorStore vectorStore, @Qualifier("vetsServiceWebClient") WebClient webClient) {
+		this.webClient = webClient;
 		this.vectorStore = vectorStore;
 	}
 
@@ -0,0 +1,71 @@
+package org.springframework.samples.petclinic.genai;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats;
+import org.springframework.samples.petclinic.commons.loadbalancer.LoadBalancerStats.InstanceScore;
+import org.springframework.samples.petclinic.commons.loadbalancer.PeakEwmaLoadBalancerAutoConfiguration;
+import org.springframework.samples.petclinic.commons.loadbalancer.PeakEwmaLoadBalancerConfiguration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PeakEwmaLoadBalancerConfigurationTest {
+
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+		.withConfiguration(AutoConfigurations.of(PeakEwmaLoadBalancerAutoConfiguration.class))
+		.withUserConfiguration(AIBeanConfiguration.class)
+		.withBean(EmbeddingModel.class, () -> mock(EmbeddingModel.class));
+
+	@Test
+	void shouldBalanceEveryServiceOnLatency() {
+		assertThat(GenAIServiceApplication.class.getAnnotation(LoadBalancerClients.class).defaultConfiguration())
+			.containsExactly(PeakEwmaLoadBalancerConfiguration.class);
+	}
+
+	@Test
+	void shouldFeedTheStatsWithTheCallsOfTheWebClients() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/owners/1", exchange -> {
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			contextRunner.run(context -> {
+				ServiceInstance instance = new DefaultServiceInstance("customers-1", "customers-service", "localhost",
+						server.getAddress().getPort(), false);
+				LoadBalancerStats stats = context.getBean(LoadBalancerStats.class);
+				stats.of(instance);
+				WebClient webClient = context.getBean("customersServiceWebClient", WebClient.class);
+
+				webClient.get()
+					.uri("http://localhost:" + server.getAddress().getPort() + "/owners/1")
+					.retrieve()
+					.toBodilessEntity()
+					.block();
+
+				List<InstanceScore> scores = stats.scores().get("customers-service");
+				assertThat(scores).singleElement().satisfies(score -> {
+					assertThat(score.inFlight()).isZero();
+					assertThat(score.latencyMillis()).isPositive();
+				});
+			});
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+}
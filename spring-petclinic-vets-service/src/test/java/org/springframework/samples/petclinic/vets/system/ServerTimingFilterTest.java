@@ -0,0 +1,49 @@
+package org.springframework.samples.petclinic.vets.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.commons.timing.ServerTiming;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+    "spring.cloud.config.enabled=false",
+    "eureka.client.enabled=false"
+})
+class ServerTimingFilterTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void shouldReportPhasesWhenAsked() throws Exception {
+        mvc.perform(get("/vets")
+                .header(ServerTiming.REQUEST_HEADER, "true")
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].firstName").value("James"))
+            .andExpect(header().string(ServerTiming.HEADER, matchesPattern(
+                "controller;dur=[0-9.]+, repository;dur=[0-9.]+;desc=\"1 call\", serialization;dur=[0-9.]+")));
+    }
+
+    @Test
+    void shouldNotReportPhasesByDefault() throws Exception {
+        mvc.perform(get("/vets")
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(ServerTiming.HEADER));
+    }
+}
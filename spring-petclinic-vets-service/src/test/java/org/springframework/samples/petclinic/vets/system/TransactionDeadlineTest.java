@@ -0,0 +1,81 @@
+package org.springframework.samples.petclinic.vets.system;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.samples.petclinic.commons.deadline.DeadlineAutoConfiguration;
+import org.springframework.samples.petclinic.commons.deadline.DeadlineExceededException;
+import org.springframework.samples.petclinic.commons.deadline.RequestDeadline;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@ImportAutoConfiguration(DeadlineAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionDeadlineTest {
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    VetRepository vetRepository;
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldLimitTransactionToRemainingTime() {
+        bindDeadline(System.currentTimeMillis() + 1500);
+
+        TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.getResource(entityManagerFactory);
+            assertThat(holder.getTimeToLiveInSeconds()).isBetween(1, 2);
+        } finally {
+            transactionManager.rollback(transaction);
+        }
+    }
+
+    @Test
+    void shouldNotQueryPastDeadline() {
+        bindDeadline(System.currentTimeMillis() - 1);
+
+        assertThatThrownBy(() -> vetRepository.findAll())
+            .isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    void shouldQueryBeforeDeadline() {
+        bindDeadline(System.currentTimeMillis() + 10_000);
+
+        assertThat(vetRepository.findAll()).isNotEmpty();
+    }
+
+    private static void bindDeadline(long deadline) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(RequestDeadline.ATTRIBUTE, deadline);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+}
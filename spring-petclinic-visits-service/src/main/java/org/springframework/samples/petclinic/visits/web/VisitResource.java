@@ -15,7 +15,10 @@
  */
 package org.springframework.samples.petclinic.visits.web;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 
@@ -23,6 +26,7 @@ import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
 import org.springframework.samples.petclinic.visits.model.Visit;
 import org.springframework.samples.petclinic.visits.model.VisitRepository;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -51,9 +55,11 @@ class VisitResource {
     private static final Logger log = LoggerFactory.getLogger(VisitResource.class);
 
     private final VisitRepository visitRepository;
+    private final InvalidationBus invalidationBus;
 
-    VisitResource(VisitRepository visitRepository) {
+    VisitResource(VisitRepository visitRepository, InvalidationBus invalidationBus) {
         this.visitRepository = visitRepository;
+        this.invalidationBus = invalidationBus;
     }
 
     @PostMapping("owners/*/pets/{petId}/visits")
@@ -73,7 +79,9 @@ class VisitResource {
         try {
             visit.setPetId(petId);
             log.info("Saving visit {}", visit);
-            return visitRepository.save(visit);
+            Visit saved = visitRepository.save(visit);
+            invalidationBus.publish("visits", petId);
+            return saved;
         } catch (IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
@@ -93,6 +101,24 @@ class VisitResource {
 
     @GetMapping("pets/visits")
     public Visits read(@RequestParam("petId") List<Integer> petIds) {
+        return new Visits(findVisits(petIds));
+    }
+
+    /**
+     * Same lookup as {@link #read(List)}, but with the visits already grouped by pet id so that
+     * callers do not have to scan the whole list for each pet.
+     */
+    @GetMapping(value = "pets/visits", params = "groupBy=petId")
+    public GroupedVisits readGroupedByPetId(@RequestParam("petId") List<Integer> petIds) {
+        final List<Visit> visits = findVisits(petIds);
+        final Map<Integer, List<Visit>> byPetId = new LinkedHashMap<>((int) (petIds.size() / 0.75f) + 1);
+        for (Visit visit : visits) {
+            byPetId.computeIfAbsent(visit.getPetId(), petId -> new ArrayList<>()).add(visit);
+        }
+        return new GroupedVisits(byPetId);
+    }
+
+    private List<Visit> findVisits(List<Integer> petIds) {
         if (petIds == null || petIds.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one pet ID must be provided");
         }
@@ -103,9 +129,10 @@ class VisitResource {
             }
         }
 
-        final List<Visit> byPetIdIn = visitRepository.findByPetIdIn(petIds);
-        return new Visits(byPetIdIn);
+        return visitRepository.findByPetIdIn(petIds);
     }
 
     record Visits(List<Visit> items) {}
+
+    record GroupedVisits(Map<Integer, List<Visit>> byPetId) {}
 }
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.commons.invalidation.InvalidationBus;
 import org.springframework.samples.petclinic.visits.model.Visit;
 import org.springframework.samples.petclinic.visits.model.VisitRepository;
 import org.springframework.test.context.ActiveProfiles;
@@ -19,6 +20,8 @@ import java.util.List;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -35,6 +38,9 @@ class VisitResourceTest {
     VisitRepository visitRepository;
     // test
 
+    @MockBean
+    InvalidationBus invalidationBus;
+
     @Test
     void shouldCreateVisit() throws Exception {
         Visit visit = new Visit();
@@ -49,6 +55,8 @@ class VisitResourceTest {
                 .accept(MediaType.APPLICATION_JSON)
                 .contentType(MediaType.APPLICATION_JSON))
             .andExpect(status().isCreated());
+
+        verify(invalidationBus).publish("visits", 1);
     }
 
     @Test
@@ -146,6 +154,31 @@ class VisitResourceTest {
             .andExpect(jsonPath("$.items[1].description").value("Emergency visit"));
     }
 
+    @Test
+    void shouldFetchVisitsGroupedByPetId() throws Exception {
+        Visit visit1 = new Visit();
+        visit1.setPetId(1);
+        visit1.setDescription("Regular checkup");
+
+        Visit visit2 = new Visit();
+        visit2.setPetId(2);
+        visit2.setDescription("Emergency visit");
+
+        Visit visit3 = new Visit();
+        visit3.setPetId(1);
+        visit3.setDescription("Vaccination");
+
+        given(visitRepository.findByPetIdIn(Arrays.asList(1, 2))).willReturn(Arrays.asList(visit1, visit2, visit3));
+
+        mvc.perform(get("/pets/visits?petId=1,2&groupBy=petId")
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items").doesNotExist())
+            .andExpect(jsonPath("$.byPetId.1.length()").value(2))
+            .andExpect(jsonPath("$.byPetId.1[1].description").value("Vaccination"))
+            .andExpect(jsonPath("$.byPetId.2[0].description").value("Emergency visit"));
+    }
+
     @Test
     void shouldRejectEmptyPetIdsList() throws Exception {
         mvc.perform(get("/pets/visits")
@@ -159,4 +192,14 @@ class VisitResourceTest {
                 .accept(MediaType.APPLICATION_JSON))
             .andExpect(status().isBadRequest());
     }
+
+    @Test
+    void shouldRejectRequestPastItsDeadline() throws Exception {
+        mvc.perform(get("/pets/visits?petId=1,2")
+                .header("X-Request-Deadline", System.currentTimeMillis() - 1)
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isGatewayTimeout());
+
+        verifyNoInteractions(visitRepository);
+    }
 }